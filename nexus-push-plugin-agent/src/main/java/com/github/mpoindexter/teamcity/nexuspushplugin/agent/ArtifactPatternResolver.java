@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+
+import jetbrains.buildServer.log.Loggers;
+import jetbrains.buildServer.util.pathMatcher.AntPatternFileCollector;
+
+/**
+ * Resolves the Ant-style artifact patterns of all Nexus push features of a build with a single walk of the checkout
+ * directory, matching every pattern against each file visited.  Directories that no pattern can match below are not
+ * descended into.  Like TeamCity, the walk follows symbolic links and matches with the case sensitivity of the file
+ * system.  Absolute patterns and patterns leaving the checkout directory with <code>..</code> are resolved separately
+ * with {@link AntPatternFileCollector}.
+ */
+public class ArtifactPatternResolver {
+    private static final Logger LOG = Loggers.AGENT;
+
+    public static Result resolve(File baseDirectory, Collection<String> patterns) {
+        long start = System.currentTimeMillis();
+        Map<String, List<File>> matches = new LinkedHashMap<>();
+        List<CompiledPattern> walkPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (matches.containsKey(pattern)) {
+                continue;
+            }
+            matches.put(pattern, new ArrayList<>());
+            CompiledPattern compiled = CompiledPattern.compile(pattern);
+            if (compiled == null) {
+                matches.get(pattern).addAll(AntPatternFileCollector.scanDir(baseDirectory, new String[] { pattern }, new AntPatternFileCollector.ScanOption[]{}));
+            } else {
+                walkPatterns.add(compiled);
+            }
+        }
+
+        Walker walker = new Walker(baseDirectory.toPath(), walkPatterns, matches);
+        if (!walkPatterns.isEmpty() && baseDirectory.isDirectory()) {
+            try {
+                Files.walkFileTree(baseDirectory.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, walker);
+            } catch (IOException e) {
+                LOG.warn("Error scanning " + baseDirectory + " for Nexus artifacts: " + e.getMessage());
+            }
+        }
+
+        int matchCount = 0;
+        for (List<File> files : matches.values()) {
+            Collections.sort(files);
+            matchCount += files.size();
+        }
+        return new Result(matches, walker.directoryCount, walker.skippedCount, walker.fileCount, matchCount, System.currentTimeMillis() - start);
+    }
+
+    public static class Result {
+        private final Map<String, List<File>> matches;
+        private final int directoryCount;
+        private final int skippedCount;
+        private final int fileCount;
+        private final int matchCount;
+        private final long duration;
+
+        private Result(Map<String, List<File>> matches, int directoryCount, int skippedCount, int fileCount, int matchCount, long duration) {
+            this.matches = matches;
+            this.directoryCount = directoryCount;
+            this.skippedCount = skippedCount;
+            this.fileCount = fileCount;
+            this.matchCount = matchCount;
+            this.duration = duration;
+        }
+
+        public List<File> getMatches(String pattern) {
+            List<File> files = matches.get(pattern);
+            return files == null ? Collections.emptyList() : files;
+        }
+
+        public String describe() {
+            return "Resolved " + matches.size() + " artifact patterns in " + duration + "ms (walked " + directoryCount + " directories, skipped "
+                + skippedCount + ", visited " + fileCount + " files, " + matchCount + " files matched)";
+        }
+    }
+
+    private static class Walker extends SimpleFileVisitor<Path> {
+        private final Path baseDirectory;
+        private final List<CompiledPattern> patterns;
+        private final Map<String, List<File>> matches;
+        private int directoryCount;
+        private int skippedCount;
+        private int fileCount;
+
+        private Walker(Path baseDirectory, List<CompiledPattern> patterns, Map<String, List<File>> matches) {
+            this.baseDirectory = baseDirectory;
+            this.patterns = patterns;
+            this.matches = matches;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            String[] segments = segments(dir);
+            for (CompiledPattern pattern : patterns) {
+                if (pattern.canMatchBelow(segments)) {
+                    directoryCount++;
+                    return FileVisitResult.CONTINUE;
+                }
+            }
+            skippedCount++;
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isDirectory()) {
+                // Only reported for directories below the maximum depth, which is never reached
+                return FileVisitResult.CONTINUE;
+            }
+            fileCount++;
+            String[] segments = segments(file);
+            for (CompiledPattern pattern : patterns) {
+                if (pattern.matches(segments)) {
+                    matches.get(pattern.pattern).add(file.toFile());
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            if (e instanceof FileSystemLoopException) {
+                LOG.debug("Not following " + file + " while scanning for Nexus artifacts, it links to a directory above it");
+            } else {
+                LOG.debug("Cannot read " + file + " while scanning for Nexus artifacts: " + e.getMessage());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        private String[] segments(Path path) {
+            String value = baseDirectory.relativize(path).toString().replace(File.separatorChar, '/');
+            return value.isEmpty() ? new String[0] : value.split("/");
+        }
+    }
+
+    private static class CompiledPattern {
+        private final String pattern;
+        // null stands for **
+        private final Pattern[] segments;
+
+        private CompiledPattern(String pattern, Pattern[] segments) {
+            this.pattern = pattern;
+            this.segments = segments;
+        }
+
+        /**
+         * Compiles a pattern relative to the checkout directory, or returns null if it has to be resolved with
+         * {@link AntPatternFileCollector}.
+         */
+        private static CompiledPattern compile(String pattern) {
+            if (new File(pattern).isAbsolute()) {
+                return null;
+            }
+            String normalized = pattern.replace('\\', '/');
+            if (normalized.endsWith("/")) {
+                normalized += "**";
+            }
+            List<Pattern> segments = new ArrayList<>();
+            for (String part : normalized.split("/")) {
+                if (part.isEmpty() || ".".equals(part)) {
+                    continue;
+                }
+                if ("..".equals(part)) {
+                    return null;
+                }
+                if ("**".equals(part)) {
+                    if (segments.isEmpty() || segments.get(segments.size() - 1) != null) {
+                        segments.add(null);
+                    }
+                } else {
+                    segments.add(compileSegment(part));
+                }
+            }
+            return new CompiledPattern(pattern, segments.toArray(new Pattern[0]));
+        }
+
+        private boolean matches(String[] path) {
+            return match(0, path, 0, false);
+        }
+
+        /**
+         * Whether a file somewhere below the directory with the given path could match this pattern.
+         */
+        private boolean canMatchBelow(String[] directory) {
+            return match(0, directory, 0, true);
+        }
+
+        private boolean match(int patternIndex, String[] path, int pathIndex, boolean prefix) {
+            while (patternIndex < segments.length) {
+                if (pathIndex == path.length) {
+                    return prefix;
+                }
+                if (segments[patternIndex] == null) {
+                    if (prefix) {
+                        // ** can take up the rest of the directory path, so anything below may still match
+                        return true;
+                    }
+                    for (int i = pathIndex; i <= path.length; i++) {
+                        if (match(patternIndex + 1, path, i, false)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (!segments[patternIndex].matcher(path[pathIndex]).matches()) {
+                    return false;
+                }
+                patternIndex++;
+                pathIndex++;
+            }
+            return !prefix && pathIndex == path.length;
+        }
+
+        private static Pattern compileSegment(String segment) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : segment.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString(), SystemInfo.isFileSystemCaseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+    }
+}
\ No newline at end of file
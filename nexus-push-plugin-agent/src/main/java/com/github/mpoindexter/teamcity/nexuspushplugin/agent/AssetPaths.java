@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactUploadSettings;
+import com.intellij.openapi.util.text.StringUtil;
+
+/**
+ * Works out where Nexus stores a file uploaded with the components API, so an existing asset is only taken for the
+ * upload if it is at the same place.  For raw and yum uploads and Maven uploads with explicit coordinates the path
+ * follows from the parameters.  Other formats take the coordinates from the uploaded package itself, so a
+ * byte-identical package has the same coordinates.
+ */
+class AssetPaths {
+    // Formats whose components API uploads read the coordinates from the uploaded file
+    private static final Set<String> CONTENT_COORDINATE_FORMATS = new HashSet<>(Arrays.asList("npm", "nuget", "pypi", "rubygems", "apt"));
+
+    private AssetPaths() {
+    }
+
+    /**
+     * Returns an asset path without leading slashes, as Nexus reports it.
+     */
+    static String normalize(String path) {
+        if (path == null) {
+            return null;
+        }
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        return path.substring(start);
+    }
+
+    /**
+     * Returns the path of the asset a file parameter of a components API upload is stored at, or null if it does not
+     * follow from the parameters.
+     *
+     * @param key the key of the file parameter, e.g. raw.asset1
+     * @param values the values of the other parameters of the upload
+     */
+    static String componentAssetPath(String key, Map<String, String> values) {
+        String format = format(key);
+        int assetNumber = ArtifactUploadSettings.getAssetNumber(key);
+        if ("raw".equals(format) && assetNumber >= 0) {
+            return join(values.get("raw.directory"), values.get(key + ".filename"));
+        }
+        if ("yum".equals(format) && assetNumber < 0) {
+            return join(values.get("yum.directory"), values.get(key + ".filename"));
+        }
+        if ("maven2".equals(format) && assetNumber >= 0) {
+            String groupId = values.get("maven2.groupId");
+            String artifactId = values.get("maven2.artifactId");
+            String version = values.get("maven2.version");
+            String extension = values.get(key + ".extension");
+            String classifier = values.get(key + ".classifier");
+            if (StringUtil.isEmptyOrSpaces(groupId) || StringUtil.isEmptyOrSpaces(artifactId) || StringUtil.isEmptyOrSpaces(version)
+                || StringUtil.isEmptyOrSpaces(extension) || version.endsWith("-SNAPSHOT")) {
+                // Snapshots are stored under a timestamped name
+                return null;
+            }
+            return groupId.trim().replace('.', '/') + "/" + artifactId.trim() + "/" + version.trim() + "/" + artifactId.trim() + "-" + version.trim()
+                + (StringUtil.isEmptyOrSpaces(classifier) ? "" : "-" + classifier.trim()) + "." + extension.trim();
+        }
+        return null;
+    }
+
+    /**
+     * Whether the coordinates of the component a file parameter uploads are read from the uploaded files, so a
+     * component holding byte-identical assets has the same coordinates.
+     */
+    static boolean hasContentCoordinates(String key, Map<String, String> values) {
+        String format = format(key);
+        if ("maven2".equals(format)) {
+            // Without explicit coordinates they come from the uploaded POM
+            return StringUtil.isEmptyOrSpaces(values.get("maven2.groupId")) && StringUtil.isEmptyOrSpaces(values.get("maven2.artifactId"))
+                && StringUtil.isEmptyOrSpaces(values.get("maven2.version"));
+        }
+        return CONTENT_COORDINATE_FORMATS.contains(format);
+    }
+
+    private static String format(String key) {
+        int index = key.indexOf('.');
+        return index < 0 ? key : key.substring(0, index);
+    }
+
+    private static String join(String directory, String fileName) {
+        if (StringUtil.isEmptyOrSpaces(fileName)) {
+            return null;
+        }
+        String trimmed = directory == null ? "" : normalize(directory.trim());
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed.isEmpty() ? fileName.trim() : trimmed + "/" + fileName.trim();
+    }
+}
\ No newline at end of file
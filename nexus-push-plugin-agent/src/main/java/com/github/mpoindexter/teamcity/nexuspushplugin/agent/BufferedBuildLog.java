@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jetbrains.buildServer.BuildProblemData;
+import jetbrains.buildServer.agent.BuildProgressLogger;
+
+/**
+ * Collects build log output produced on an upload thread so it can be written to the real build log in feature order.
+ */
+public class BufferedBuildLog {
+    private final List<Entry> entries = new ArrayList<>();
+
+    public synchronized void message(String message) {
+        entries.add(new Entry(EntryType.MESSAGE, message, null));
+    }
+
+    public synchronized void error(String message) {
+        entries.add(new Entry(EntryType.ERROR, message, null));
+    }
+
+    public synchronized void buildProblem(BuildProblemData problem) {
+        entries.add(new Entry(EntryType.PROBLEM, null, problem));
+    }
+
+    public synchronized void replay(BuildProgressLogger buildLog) {
+        for (Entry entry : entries) {
+            switch (entry.type) {
+                case MESSAGE:
+                    buildLog.message(entry.message);
+                    break;
+                case ERROR:
+                    buildLog.error(entry.message);
+                    break;
+                case PROBLEM:
+                    buildLog.logBuildProblem(entry.problem);
+                    break;
+            }
+        }
+        entries.clear();
+    }
+
+    private enum EntryType {
+        MESSAGE, ERROR, PROBLEM
+    }
+
+    private static class Entry {
+        private final EntryType type;
+        private final String message;
+        private final BuildProblemData problem;
+
+        private Entry(EntryType type, String message, BuildProblemData problem) {
+            this.type = type;
+            this.message = message;
+            this.problem = problem;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import org.jetbrains.annotations.NotNull;
+
+import jetbrains.buildServer.agent.BuildAgentConfiguration;
+import jetbrains.buildServer.log.Loggers;
+
+/**
+ * Persistent cache of file digests keyed by canonical path, length, modification time and file key (inode where the
+ * platform provides one).  The cache is kept in the agent cache directory and is merged with the on-disk copy under a
+ * file lock when flushed, so agents sharing a cache directory do not lose each other's entries.
+ */
+public class ChecksumCache {
+    private static final Logger LOG = Loggers.AGENT;
+
+    private static final String CACHE_DIRECTORY = "nexus-push";
+    private static final String CACHE_FILE = "checksums.cache";
+    private static final String LOCK_FILE = "checksums.lock";
+    private static final int MAX_ENTRIES = 20000;
+    private static final ExecutorService HASH_EXECUTOR = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), new HashThreadFactory());
+
+    private final BuildAgentConfiguration agentConfiguration;
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean loaded;
+    private boolean dirty;
+
+    public ChecksumCache(@NotNull BuildAgentConfiguration agentConfiguration) {
+        this.agentConfiguration = agentConfiguration;
+    }
+
+    /**
+     * Returns the digests of the file, from the cache if the file is unchanged since it was last hashed, otherwise by
+     * reading the file.
+     */
+    public FileDigests getDigests(File file, List<String> algorithms) throws IOException {
+        FileStat stat = FileStat.of(file);
+        FileDigests cached = get(stat, algorithms);
+        if (cached != null) {
+            return cached;
+        }
+        FileDigests digests = FileDigests.compute(file, algorithms);
+        put(stat, digests);
+        return digests;
+    }
+
+    /**
+     * Returns the digests of several files in the order given.  Files that are not cached are hashed in parallel on a
+     * small pool shared by all builds on the agent.
+     */
+    public List<FileDigests> getDigests(List<File> files, List<String> algorithms) throws IOException, InterruptedException {
+        if (files.size() == 1) {
+            return Collections.singletonList(getDigests(files.get(0), algorithms));
+        }
+        List<Future<FileDigests>> futures = new ArrayList<>();
+        for (File file : files) {
+            futures.add(HASH_EXECUTOR.submit(() -> getDigests(file, algorithms)));
+        }
+        List<FileDigests> result = new ArrayList<>();
+        try {
+            for (Future<FileDigests> future : futures) {
+                result.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            for (Future<FileDigests> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records digests computed elsewhere, e.g. while uploading, provided the file has not changed since stat was taken.
+     */
+    public void put(FileStat stat, FileDigests digests) {
+        try {
+            if (!stat.equals(FileStat.of(stat.file))) {
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        if (stat.path.indexOf('\t') >= 0 || stat.path.indexOf('\n') >= 0) {
+            return;
+        }
+        synchronized (this) {
+            ensureLoaded();
+            entries.put(stat.path, new CacheEntry(stat, digests.asMap(), System.currentTimeMillis()));
+            trim(entries);
+            dirty = true;
+        }
+    }
+
+    private synchronized FileDigests get(FileStat stat, List<String> algorithms) {
+        ensureLoaded();
+        CacheEntry entry = entries.get(stat.path);
+        if (entry == null || !entry.matches(stat) || !entry.digests.keySet().containsAll(algorithms)) {
+            return null;
+        }
+        // Recency alone does not make the cache dirty, it is saved with the next added entry
+        entry.lastUsed = System.currentTimeMillis();
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String algorithm : algorithms) {
+            values.put(algorithm, entry.digests.get(algorithm));
+        }
+        return new FileDigests(values);
+    }
+
+    /**
+     * Merges the in-memory entries with the cache file and writes the result back.
+     */
+    public synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        File directory = getCacheDirectory();
+        try (RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+             FileChannel channel = lockFile.getChannel();
+             FileLock lock = channel.lock()) {
+            LinkedHashMap<String, CacheEntry> merged = new LinkedHashMap<>(16, 0.75f, true);
+            for (CacheEntry entry : read(new File(directory, CACHE_FILE))) {
+                merged.put(entry.path, entry);
+            }
+            for (CacheEntry entry : entries.values()) {
+                CacheEntry existing = merged.get(entry.path);
+                if (existing == null || existing.lastUsed <= entry.lastUsed) {
+                    merged.remove(entry.path);
+                    merged.put(entry.path, entry);
+                }
+            }
+            List<CacheEntry> sorted = new ArrayList<>(merged.values());
+            sorted.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+            entries.clear();
+            for (CacheEntry entry : sorted) {
+                entries.put(entry.path, entry);
+            }
+            trim(entries);
+            write(directory, entries);
+            dirty = false;
+        } catch (IOException e) {
+            LOG.warn("Cannot save Nexus checksum cache: " + e.getMessage());
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File directory = getCacheDirectory();
+        try (RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+             FileChannel channel = lockFile.getChannel();
+             FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            for (CacheEntry entry : read(new File(directory, CACHE_FILE))) {
+                entries.put(entry.path, entry);
+            }
+            trim(entries);
+        } catch (IOException e) {
+            LOG.warn("Cannot read Nexus checksum cache: " + e.getMessage());
+        }
+    }
+
+    private File getCacheDirectory() {
+        File directory = agentConfiguration.getCacheDirectory(CACHE_DIRECTORY);
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static void trim(LinkedHashMap<String, CacheEntry> entries) {
+        Iterator<CacheEntry> it = entries.values().iterator();
+        while (entries.size() > MAX_ENTRIES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static List<CacheEntry> read(File cacheFile) throws IOException {
+        List<CacheEntry> result = new ArrayList<>();
+        if (!cacheFile.exists()) {
+            return result;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                CacheEntry entry = CacheEntry.parse(line);
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void write(File directory, Map<String, CacheEntry> entries) throws IOException {
+        File tempFile = File.createTempFile(CACHE_FILE, ".tmp", directory);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                for (CacheEntry entry : entries.values()) {
+                    writer.write(entry.format());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile.toPath(), new File(directory, CACHE_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    public static class FileStat {
+        public static FileStat of(File file) throws IOException {
+            File canonicalFile = file.getCanonicalFile();
+            BasicFileAttributes attributes = Files.readAttributes(canonicalFile.toPath(), BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            return new FileStat(canonicalFile, attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey == null ? "" : fileKey.toString());
+        }
+
+        private final File file;
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final String fileKey;
+
+        private FileStat(File file, long length, long lastModified, String fileKey) {
+            this.file = file;
+            this.path = file.getPath();
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FileStat)) {
+                return false;
+            }
+            FileStat other = (FileStat) o;
+            return path.equals(other.path) && length == other.length && lastModified == other.lastModified && fileKey.equals(other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+    private static class CacheEntry {
+        private static CacheEntry parse(String line) {
+            String[] parts = line.split("\t");
+            if (parts.length != 6) {
+                return null;
+            }
+            try {
+                Map<String, String> digests = new LinkedHashMap<>();
+                for (String digest : parts[5].split(",")) {
+                    int index = digest.indexOf('=');
+                    if (index > 0) {
+                        digests.put(digest.substring(0, index), digest.substring(index + 1));
+                    }
+                }
+                return new CacheEntry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], digests, Long.parseLong(parts[4]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final String fileKey;
+        private final Map<String, String> digests;
+        private long lastUsed;
+
+        private CacheEntry(FileStat stat, Map<String, String> digests, long lastUsed) {
+            this(stat.path, stat.length, stat.lastModified, stat.fileKey, digests, lastUsed);
+        }
+
+        private CacheEntry(String path, long length, long lastModified, String fileKey, Map<String, String> digests, long lastUsed) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.digests = digests;
+            this.lastUsed = lastUsed;
+        }
+
+        private boolean matches(FileStat stat) {
+            return length == stat.length && lastModified == stat.lastModified && fileKey.equals(stat.fileKey);
+        }
+
+        private String format() {
+            StringBuilder digestList = new StringBuilder();
+            for (Map.Entry<String, String> digest : digests.entrySet()) {
+                if (digestList.length() > 0) {
+                    digestList.append(',');
+                }
+                digestList.append(digest.getKey()).append('=').append(digest.getValue());
+            }
+            return path + "\t" + length + "\t" + lastModified + "\t" + fileKey + "\t" + lastUsed + "\t" + digestList;
+        }
+    }
+
+    private static class HashThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Nexus checksum " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+
+public class FeatureUploadResult {
+    private final BufferedBuildLog log;
+    private final UploadMetrics metrics;
+    private final List<ArtifactMetadata> artifacts = new ArrayList<>();
+
+    public FeatureUploadResult(BufferedBuildLog log, UploadMetrics metrics) {
+        this.log = log;
+        this.metrics = metrics;
+    }
+
+    public BufferedBuildLog getLog() {
+        return log;
+    }
+
+    public UploadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public List<ArtifactMetadata> getArtifacts() {
+        return artifacts;
+    }
+
+    public void addArtifact(ArtifactMetadata artifact) {
+        artifacts.add(artifact);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,869 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactUploadSettings;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.AssetBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+
+
+import jetbrains.buildServer.BuildProblemData;
+import jetbrains.buildServer.agent.AgentRunningBuild;
+import jetbrains.buildServer.log.Loggers;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+
+/**
+ * Performs the upload for a single Nexus push feature.  Build log output is buffered so that features can be
+ * uploaded concurrently while the build log still shows each feature's output together, in feature order.
+ */
+public class FeatureUploader implements Callable<FeatureUploadResult> {
+    private static final Logger LOG = Loggers.AGENT;
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final AgentRunningBuild build;
+    private final Map<String, String> parameters;
+    private final UploadThrottle throttle;
+    private final ExecutorService transferExecutor;
+    private final ChecksumCache checksumCache;
+    private final UploadSpool spool;
+    private final ArtifactPatternResolver.Result resolvedPatterns;
+    private final BufferedBuildLog buildLog = new BufferedBuildLog();
+    private final UploadMetrics metrics = new UploadMetrics();
+    private final FeatureUploadResult result = new FeatureUploadResult(buildLog, metrics);
+    private final boolean artifactUploadMandatory;
+    private final boolean spoolFailedUploads;
+    private final boolean detached;
+    // Files of an eager upload as they were when found ready, null otherwise
+    private final List<ChecksumCache.FileStat> readyFiles;
+
+    // Set once the feature settings have been validated
+    private String serverId;
+    private NexusServerSettings serverSettings;
+    private String repositoryId;
+    private List<String> checksumAlgorithms;
+    private String deleteArtifactOnCleanup;
+    private boolean putMode;
+    private boolean skipExistingArtifacts;
+    private NexusClient client;
+    private RetryPolicy retryPolicy;
+
+    public FeatureUploader(AgentRunningBuild build, Map<String, String> parameters, UploadThrottle throttle, ExecutorService transferExecutor,
+                           ChecksumCache checksumCache, UploadSpool spool, ArtifactPatternResolver.Result resolvedPatterns,
+                           List<ChecksumCache.FileStat> readyFiles) {
+        this.build = build;
+        this.parameters = parameters;
+        this.throttle = throttle;
+        this.transferExecutor = transferExecutor;
+        this.checksumCache = checksumCache;
+        this.spool = spool;
+        this.resolvedPatterns = resolvedPatterns;
+        this.readyFiles = readyFiles;
+        this.artifactUploadMandatory = "true".equals(parameters.get(Constants.ARTIFACT_UPLOAD_MANDATORY));
+        this.spoolFailedUploads = "true".equals(parameters.get(Constants.SPOOL_FAILED_UPLOADS));
+        // A mandatory upload must finish before the build does, so it can fail the build
+        this.detached = "true".equals(parameters.get(Constants.UPLOAD_DETACHED)) && !artifactUploadMandatory;
+    }
+
+    @Override
+    public FeatureUploadResult call() {
+        metrics.started();
+        try {
+            upload();
+        } catch (RuntimeException e) {
+            LOG.error("Unexpected error pushing artifact to Nexus", e);
+            errorOrFail("Cannot push artifact to Nexus:  Upload failed - " + e.getMessage());
+        } finally {
+            metrics.finished();
+        }
+        return result;
+    }
+
+    private void upload() {
+        serverId = parameters.get(Constants.NEXUS_SERVER_ID);
+        serverSettings = NexusServerSettings.getServerSettings(build, serverId);
+        if (serverSettings == null) {
+            errorOrFail("Cannot push artifact to Nexus:  Invalid server");
+            return;
+        }
+        spool.registerServer(serverSettings);
+
+        repositoryId = parameters.get(Constants.REPOSITORY_ID);
+        if (StringUtil.isEmptyOrSpaces(repositoryId)) {
+            errorOrFail("Cannot push artifact to Nexus:  Invalid repository ID");
+            return;
+        }
+
+        String artifactUploadSettingsSpec = parameters.get(Constants.ARTIFACT_UPLOAD_SETTINGS);
+        if (StringUtil.isEmptyOrSpaces(artifactUploadSettingsSpec)) {
+            errorOrFail("Cannot push artifact to Nexus:  Invalid artifact upload settings");
+            return;
+        }
+
+        ArtifactUploadSettings artifactUploadSettings = ArtifactUploadSettings.parse(artifactUploadSettingsSpec);
+        if (artifactUploadSettings == null) {
+            errorOrFail("Cannot push artifact to Nexus:  Invalid artifact upload settings");
+            return;
+        }
+
+        checksumAlgorithms = Checksums.parseAlgorithms(parameters.get(Constants.ADDITIONAL_CHECKSUMS));
+        if (checksumAlgorithms == null) {
+            errorOrFail("Cannot push artifact to Nexus:  Invalid additional checksums");
+            return;
+        }
+
+        deleteArtifactOnCleanup = parameters.get(Constants.DELETE_ARTIFACT_ON_CLEANUP);
+        putMode = Constants.UPLOAD_MODE_PUT.equals(parameters.get(Constants.UPLOAD_MODE));
+        skipExistingArtifacts = "true".equals(parameters.get(Constants.SKIP_EXISTING_ARTIFACTS));
+        client = new NexusClient(serverSettings, metrics);
+        retryPolicy = RetryPolicy.forFeature(serverSettings, parameters, metrics);
+
+        if ("true".equals(parameters.get(Constants.FAN_OUT))) {
+            fanOut(artifactUploadSettings.getUploadParameters());
+        } else {
+            List<ResolvedParameter> resolvedParameters = resolveParameters(artifactUploadSettings.getUploadParameters(), null, null, null);
+            if (resolvedParameters != null) {
+                for (ArtifactMetadata artifact : uploadComponent(resolvedParameters, true)) {
+                    result.addArtifact(artifact);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads one component for each file matched by the first file pattern, several at a time.  Parameter names and
+     * values may refer to the matched file with {@link TemplateVariables}.
+     */
+    private void fanOut(List<ArtifactUploadSettings.UploadParameter> uploadParameters) {
+        ArtifactUploadSettings.UploadParameter fanOutParameter = null;
+        for (ArtifactUploadSettings.UploadParameter param : uploadParameters) {
+            if (param.isFile) {
+                fanOutParameter = param;
+                break;
+            }
+        }
+        if (fanOutParameter == null) {
+            errorOrFail("Cannot push artifact to Nexus:  Uploading each matched file requires a file pattern");
+            return;
+        }
+
+        List<File> matchedFiles = resolvedPatterns.getMatches(fanOutParameter.value);
+        if (matchedFiles.isEmpty()) {
+            errorOrFail("Cannot push artifact to Nexus:  Pattern " + fanOutParameter.value + " did not match any files");
+            return;
+        }
+        // The other parameters resolve the same way for every file, so their errors are only reported once
+        boolean hasError = false;
+        for (ArtifactUploadSettings.UploadParameter param : uploadParameters) {
+            if (param != fanOutParameter && !canResolve(param)) {
+                hasError = true;
+            }
+        }
+        if (hasError) {
+            return;
+        }
+        buildLog.message("Pattern " + fanOutParameter.value + " matched " + matchedFiles.size() + " files, uploading each file separately");
+
+        List<List<ResolvedParameter>> components = new ArrayList<>();
+        for (File file : matchedFiles) {
+            TemplateVariables variables = new TemplateVariables(build.getCheckoutDirectory(), file);
+            List<ResolvedParameter> resolvedParameters = resolveParameters(uploadParameters, fanOutParameter, file, variables);
+            if (resolvedParameters != null) {
+                components.add(resolvedParameters);
+            }
+        }
+
+        if (!putMode && "true".equals(parameters.get(Constants.BATCH_ASSETS))) {
+            int maxAssets = NexusServerSettings.parsePositiveInt(parameters.get(Constants.BATCH_MAX_ASSETS), Constants.DEFAULT_BATCH_MAX_ASSETS);
+            long maxBytes = NexusServerSettings.parsePositiveInt(parameters.get(Constants.BATCH_MAX_SIZE), Constants.DEFAULT_BATCH_MAX_SIZE) * 1024L * 1024L;
+            int count = components.size();
+            components = batchComponents(components, maxAssets, maxBytes);
+            buildLog.message("Combined " + count + " uploads into " + components.size() + " multi-asset uploads");
+        }
+
+        List<Future<List<ArtifactMetadata>>> uploads = new ArrayList<>();
+        for (List<ResolvedParameter> component : components) {
+            uploads.add(transferExecutor.submit(() -> uploadComponent(component, false)));
+        }
+
+        try {
+            for (Future<List<ArtifactMetadata>> upload : uploads) {
+                try {
+                    for (ArtifactMetadata artifact : upload.get()) {
+                        result.addArtifact(artifact);
+                    }
+                } catch (ExecutionException e) {
+                    LOG.error("Unexpected error pushing artifact to Nexus", e.getCause());
+                    errorOrFail("Cannot push artifact to Nexus:  Upload failed - " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<List<ArtifactMetadata>> upload : uploads) {
+                upload.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            errorOrFail("Cannot push artifact to Nexus:  Upload interrupted");
+        }
+    }
+
+    /**
+     * Combines uploads with the same component parameters into multi-asset uploads of at most maxAssets assets and
+     * maxBytes bytes, renumbering their assets.  An upload larger than maxBytes is uploaded on its own.  Uploads with
+     * file parameters that are not components API assets (&lt;format&gt;.assetN) are not combined.
+     */
+    private List<List<ResolvedParameter>> batchComponents(List<List<ResolvedParameter>> components, int maxAssets, long maxBytes) {
+        List<List<ResolvedParameter>> batched = new ArrayList<>();
+        Map<List<String>, UploadBatch> openBatches = new HashMap<>();
+        for (List<ResolvedParameter> component : components) {
+            List<String> componentParameters = new ArrayList<>();
+            // Original asset number to its position within this upload
+            Map<Integer, Integer> assetNumbers = new LinkedHashMap<>();
+            long bytes = 0;
+            boolean batchable = true;
+            for (ResolvedParameter param : component) {
+                int assetNumber = ArtifactUploadSettings.getAssetNumber(param.key);
+                if (assetNumber < 0) {
+                    batchable &= param.file == null;
+                    componentParameters.add(param.key + "=" + param.value);
+                } else {
+                    assetNumbers.putIfAbsent(assetNumber, assetNumbers.size());
+                    bytes += param.file == null ? 0 : param.file.length();
+                }
+            }
+            if (!batchable || assetNumbers.isEmpty()) {
+                batched.add(component);
+                continue;
+            }
+
+            UploadBatch batch = openBatches.get(componentParameters);
+            if (batch == null || batch.assetCount + assetNumbers.size() > maxAssets || batch.bytes + bytes > maxBytes) {
+                batch = new UploadBatch();
+                for (ResolvedParameter param : component) {
+                    if (ArtifactUploadSettings.getAssetNumber(param.key) < 0) {
+                        batch.parameters.add(param);
+                    }
+                }
+                openBatches.put(componentParameters, batch);
+                batched.add(batch.parameters);
+            }
+            for (ResolvedParameter param : component) {
+                int assetNumber = ArtifactUploadSettings.getAssetNumber(param.key);
+                if (assetNumber >= 0) {
+                    String key = ArtifactUploadSettings.renumberAsset(param.key, batch.assetCount + assetNumbers.get(assetNumber) + 1);
+                    batch.parameters.add(new ResolvedParameter(key, param.value, param.file));
+                }
+            }
+            batch.assetCount += assetNumbers.size();
+            batch.bytes += bytes;
+        }
+        return batched;
+    }
+
+    /**
+     * Matches the file parameters to files and expands template variables.  The fan-out parameter, if any, is bound
+     * to the given file; all other file patterns must match exactly one file.
+     *
+     * @return the resolved parameters, or null if a pattern could not be resolved
+     */
+    private List<ResolvedParameter> resolveParameters(List<ArtifactUploadSettings.UploadParameter> uploadParameters,
+                                                      ArtifactUploadSettings.UploadParameter fanOutParameter, File fanOutFile,
+                                                      TemplateVariables variables) {
+        List<ResolvedParameter> resolvedParameters = new ArrayList<>();
+        boolean hasError = false;
+        for (ArtifactUploadSettings.UploadParameter param : uploadParameters) {
+            String key = variables == null ? param.key : variables.expand(param.key);
+            if (param == fanOutParameter) {
+                resolvedParameters.add(new ResolvedParameter(key, variables.getRelativePath(), fanOutFile));
+            } else if (!canResolve(param)) {
+                hasError = true;
+            } else if (param.isFile) {
+                resolvedParameters.add(new ResolvedParameter(key, param.value, resolvedPatterns.getMatches(param.value).get(0)));
+            } else {
+                String value = param.value == null ? "" : param.value;
+                resolvedParameters.add(new ResolvedParameter(key, variables == null ? value : variables.expand(value), null));
+            }
+        }
+        return hasError ? null : resolvedParameters;
+    }
+
+    /**
+     * Whether a parameter other than the fan-out parameter can be resolved, reporting why not otherwise.
+     */
+    private boolean canResolve(ArtifactUploadSettings.UploadParameter param) {
+        if (param.isFile) {
+            List<File> matchedFiles = resolvedPatterns.getMatches(param.value);
+            if (matchedFiles.size() > 1) {
+                errorOrFail("Cannot push artifact to Nexus:  Pattern " + param.value + " matched multiple files");
+                return false;
+            } else if (matchedFiles.isEmpty()) {
+                errorOrFail("Cannot push artifact to Nexus:  Pattern " + param.value + " did not match any files");
+                return false;
+            }
+        } else if (putMode) {
+            errorOrFail("Cannot push artifact to Nexus:  Parameter " + param.key + " is not a file, only files can be uploaded with PUT");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Uploads a single component, or with PUT its files, and returns the metadata of the uploaded artifacts.
+     */
+    private List<ArtifactMetadata> uploadComponent(List<ResolvedParameter> resolvedParameters, boolean parallelPut) {
+        MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.FORM);
+        List<ResolvedArtifact> resolvedArtifacts = new ArrayList<>();
+        String uploadMessage = "Uploading artifacts to Nexus with the following config:\n";
+        Map<String, String> values = new HashMap<>();
+        for (ResolvedParameter param : resolvedParameters) {
+            if (param.file == null) {
+                values.put(param.key, param.value);
+            }
+        }
+        for (ResolvedParameter param : resolvedParameters) {
+            uploadMessage += "\t" + param.key + "=";
+            if (param.file != null) {
+                File artifact = param.file;
+                if (putMode) {
+                    // A key ending with a slash names a directory in the repository
+                    String assetPath = param.key.endsWith("/") ? param.key + artifact.getName() : param.key;
+                    resolvedArtifacts.add(new ResolvedArtifact(param.value, artifact, null, assetPath, AssetPaths.normalize(assetPath), false, statOrNull(artifact)));
+                } else {
+                    HashingRequestBody body = new HashingRequestBody(OCTET_STREAM, artifact, checksumAlgorithms);
+                    builder.addFormDataPart(param.key, artifact.getName(), body);
+                    resolvedArtifacts.add(new ResolvedArtifact(param.value, artifact, body, null, AssetPaths.componentAssetPath(param.key, values),
+                        AssetPaths.hasContentCoordinates(param.key, values), statOrNull(artifact)));
+                }
+                uploadMessage += "File <" + artifact.getName() + ">\n";
+            } else {
+                builder.addFormDataPart(param.key, param.value);
+                uploadMessage += param.value + "\n";
+            }
+        }
+
+        buildLog.message(uploadMessage);
+        if (!isStillReady(resolvedArtifacts)) {
+            return Collections.emptyList();
+        }
+
+        List<ResolvedArtifact> uploadedArtifacts = resolvedArtifacts;
+        try {
+            // The spool computes the digests of detached uploads while copying the files
+            boolean spooled = detached && spool(resolvedParameters, resolvedArtifacts, true);
+            if (!spooled && (putMode || skipExistingArtifacts)) {
+                // These need the digests before or without a multipart upload, which would otherwise compute them
+                computeDigests(resolvedArtifacts);
+            }
+            if (spooled) {
+                buildLog.message("Snapshotted " + resolvedArtifacts.size() + " artifacts, they are uploaded to Nexus in the background after the build");
+            } else if (skipExistingArtifacts && findExistingComponents(resolvedArtifacts)) {
+                buildLog.message("Artifacts already exist in Nexus repository " + repositoryId + ", skipping upload");
+            } else if (putMode) {
+                uploadedArtifacts = putArtifacts(resolvedArtifacts, parallelPut);
+            } else {
+                // The multipart body streams its file parts from disk on every write, so retries never buffer the files.
+                // A POST is not idempotent, after a failure that may have reached Nexus it is only sent again if a
+                // search does not find the uploaded component.
+                MultipartBody body = builder.build();
+                retryPolicy.executeNonIdempotent("Upload", buildLog, () -> throttle.execute(serverSettings, () -> {
+                    client.uploadComponent(repositoryId, body);
+                    return null;
+                }), () -> isUploaded(resolvedArtifacts));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errorOrFail("Cannot push artifact to Nexus:  Upload interrupted");
+            return Collections.emptyList();
+        } catch (Exception e) {
+            if (!canSpool(e) || !spool(resolvedParameters, resolvedArtifacts, false)) {
+                errorOrFail("Cannot push artifact to Nexus:  Upload failed - " + e.getMessage());
+                return Collections.emptyList();
+            }
+            buildLog.message("Cannot reach Nexus (" + e.getMessage() + "), spooled " + resolvedArtifacts.size() + " artifacts to upload after the build");
+            uploadedArtifacts = resolvedArtifacts;
+        }
+
+        uploadedArtifacts = unchangedArtifacts(uploadedArtifacts);
+        resolveUploadedComponents(uploadedArtifacts);
+
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        for (ResolvedArtifact artifact : uploadedArtifacts) {
+            try {
+                File artifactFile = artifact.file;
+                FileDigests digests = artifact.getDigests(checksumAlgorithms);
+                if (artifact.body != null && artifact.body.getDigests() != null && artifact.stat != null) {
+                    checksumCache.put(artifact.stat, digests);
+                }
+                ArtifactMetadata metadata = new ArtifactMetadata()
+                    .setAttribute(ArtifactMetadata.PATH, artifact.path)
+                    .setAttribute(ArtifactMetadata.NAME, artifactFile.getName());
+                for (Map.Entry<String, String> digest : digests.asMap().entrySet()) {
+                    metadata.setAttribute(Checksums.attributeName(digest.getKey()), digest.getValue());
+                }
+                ComponentBean component = artifact.existingComponent != null ? artifact.existingComponent : artifact.uploadedComponent;
+                AssetBean asset = component == null ? null : artifact.findAsset(component, digests.get(Checksums.SHA1));
+                // Tells the component apart from others with byte-identical assets on cleanup
+                String assetPath = artifact.expectedPath != null ? artifact.expectedPath : asset == null ? null : AssetPaths.normalize(asset.getPath());
+                metadata.setAttribute(ArtifactMetadata.SERVER_ID, serverId)
+                    .setAttribute(ArtifactMetadata.SERVER_URL, serverSettings.getUrl())
+                    .setAttribute(ArtifactMetadata.REPOSITORY, repositoryId)
+                    .setAttribute(ArtifactMetadata.ASSET_PATH, assetPath);
+                if (artifact.existingComponent != null) {
+                    // The component belongs to the build that originally uploaded it, so never delete it on cleanup of this one
+                    metadata.setAttribute(ArtifactMetadata.COMPONENT_ID, artifact.existingComponent.getId())
+                        .setAttribute(ArtifactMetadata.REUSED, "true")
+                        .setAttribute(ArtifactMetadata.DELETE_ARTIFACT_ON_CLEANUP, "false");
+                } else {
+                    if (artifact.uploadedComponent != null) {
+                        metadata.setAttribute(ArtifactMetadata.COMPONENT_ID, artifact.uploadedComponent.getId());
+                    }
+                    metadata.setAttribute(ArtifactMetadata.DELETE_ARTIFACT_ON_CLEANUP, deleteArtifactOnCleanup);
+                }
+                if (asset != null) {
+                    metadata.setAttribute(ArtifactMetadata.DOWNLOAD_URL, asset.getDownloadUrl());
+                }
+                if (artifact.spooled) {
+                    metadata.setAttribute(ArtifactMetadata.SPOOLED, "true");
+                }
+                if (artifact.detached) {
+                    metadata.setAttribute(ArtifactMetadata.DETACHED, "true");
+                }
+                artifacts.add(metadata);
+            } catch (IOException e) {
+                LOG.error("Cannot save nexus artifact metadata", e);
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Uploads each artifact with its own PUT request, several at a time if parallel is set.  Artifacts that fail to
+     * upload are reported and left out of the result, so the artifacts that did reach Nexus are still recorded for
+     * cleanup.  Artifacts that fail because Nexus cannot be reached are spooled if enabled.  Uploads that are already
+     * running on the transfer pool, such as fan-out uploads, must not use parallel,
+     * as waiting for other tasks on the same pool could exhaust it.
+     */
+    private List<ResolvedArtifact> putArtifacts(List<ResolvedArtifact> resolvedArtifacts, boolean parallel) throws InterruptedException {
+        List<Future<Object>> uploads = new ArrayList<>();
+        for (ResolvedArtifact artifact : resolvedArtifacts) {
+            RequestBody body = RequestBody.create(artifact.file, OCTET_STREAM);
+            Callable<Object> upload = () -> retryPolicy.execute("Upload of " + artifact.assetPath, buildLog,
+                () -> throttle.execute(serverSettings, () -> {
+                    client.putAsset(repositoryId, artifact.assetPath, body);
+                    return null;
+                }));
+            if (parallel) {
+                uploads.add(transferExecutor.submit(upload));
+            } else {
+                FutureTask<Object> task = new FutureTask<>(upload);
+                task.run();
+                uploads.add(task);
+            }
+        }
+
+        List<ResolvedArtifact> uploadedArtifacts = new ArrayList<>();
+        List<ResolvedArtifact> unreachableArtifacts = new ArrayList<>();
+        Throwable unreachableCause = null;
+        try {
+            for (int i = 0; i < uploads.size(); i++) {
+                ResolvedArtifact artifact = resolvedArtifacts.get(i);
+                try {
+                    uploads.get(i).get();
+                    uploadedArtifacts.add(artifact);
+                } catch (ExecutionException e) {
+                    if (canSpool(e.getCause())) {
+                        unreachableArtifacts.add(artifact);
+                        unreachableCause = e.getCause();
+                    } else {
+                        errorOrFail("Cannot push artifact to Nexus:  Upload of " + artifact.assetPath + " failed - " + e.getCause().getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Object> upload : uploads) {
+                upload.cancel(true);
+            }
+            throw e;
+        }
+
+        if (!unreachableArtifacts.isEmpty()) {
+            if (spool(null, unreachableArtifacts, false)) {
+                buildLog.message("Cannot reach Nexus (" + unreachableCause.getMessage() + "), spooled " + unreachableArtifacts.size() + " artifacts to upload after the build");
+                uploadedArtifacts.addAll(unreachableArtifacts);
+            } else {
+                for (ResolvedArtifact artifact : unreachableArtifacts) {
+                    errorOrFail("Cannot push artifact to Nexus:  Upload of " + artifact.assetPath + " failed - " + unreachableCause.getMessage());
+                }
+            }
+        }
+        return uploadedArtifacts;
+    }
+
+    /**
+     * Whether a failed upload should be spooled, i.e. spooling is enabled and the failure means Nexus could not be
+     * reached rather than that the upload was rejected or a local file could not be read.
+     */
+    private boolean canSpool(Throwable e) {
+        if (!spoolFailedUploads) {
+            return false;
+        }
+        return e instanceof IOException && UploadSpool.isRetryable((IOException) e, putMode);
+    }
+
+    /**
+     * Returns the parameters to spool: the component parameters, or with PUT the asset path and file of each artifact.
+     * Files carry the SHA-1 recorded for them, if it was computed already, so the spool can check that it copied the
+     * same content.
+     */
+    private List<UploadSpool.Parameter> spoolParameters(List<ResolvedParameter> resolvedParameters, List<ResolvedArtifact> resolvedArtifacts) {
+        List<UploadSpool.Parameter> spoolParameters = new ArrayList<>();
+        if (putMode) {
+            for (ResolvedArtifact artifact : resolvedArtifacts) {
+                spoolParameters.add(new UploadSpool.Parameter(artifact.assetPath, artifact.path, artifact.file, artifact.getComputedSha1()));
+            }
+        } else {
+            Map<File, ResolvedArtifact> artifactsByFile = new HashMap<>();
+            for (ResolvedArtifact artifact : resolvedArtifacts) {
+                artifactsByFile.put(artifact.file, artifact);
+            }
+            for (ResolvedParameter param : resolvedParameters) {
+                ResolvedArtifact artifact = param.file == null ? null : artifactsByFile.get(param.file);
+                spoolParameters.add(new UploadSpool.Parameter(param.key, param.value, param.file, artifact == null ? null : artifact.getComputedSha1()));
+            }
+        }
+        return spoolParameters;
+    }
+
+    /**
+     * Hands an upload to the spool and marks its artifacts as spooled.  Detached uploads start right away, uploads that
+     * could not reach Nexus are retried later.  Returns false if the upload cannot be spooled.
+     */
+    private boolean spool(List<ResolvedParameter> resolvedParameters, List<ResolvedArtifact> artifacts, boolean detachedUpload) {
+        try {
+            Map<File, FileDigests> digests = spool.spool(build.getBuildId(), serverId, repositoryId, putMode, spoolParameters(resolvedParameters, artifacts),
+                checksumAlgorithms, detachedUpload);
+            for (ResolvedArtifact artifact : artifacts) {
+                if (artifact.getComputedSha1() == null) {
+                    artifact.digests = digests.get(artifact.file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot spool Nexus upload: " + e.getMessage());
+            return false;
+        }
+        for (ResolvedArtifact artifact : artifacts) {
+            artifact.spooled = true;
+            artifact.detached = detachedUpload;
+        }
+        return true;
+    }
+
+    private void computeDigests(List<ResolvedArtifact> resolvedArtifacts) throws IOException, InterruptedException {
+        List<File> files = new ArrayList<>();
+        for (ResolvedArtifact artifact : resolvedArtifacts) {
+            files.add(artifact.file);
+        }
+        List<FileDigests> digests = checksumCache.getDigests(files, checksumAlgorithms);
+        for (int i = 0; i < resolvedArtifacts.size(); i++) {
+            resolvedArtifacts.get(i).digests = digests.get(i);
+        }
+    }
+
+    /**
+     * Whether all artifacts already exist in the repository where this upload would put them.  Artifacts whose place in
+     * the repository cannot be told are always uploaded.
+     */
+    private boolean findExistingComponents(List<ResolvedArtifact> resolvedArtifacts) throws Exception {
+        if (!canFindStoredComponents(resolvedArtifacts)) {
+            return false;
+        }
+        Map<ResolvedArtifact, ComponentBean> existing;
+        try {
+            existing = findStoredComponents(resolvedArtifacts);
+        } catch (IOException e) {
+            LOG.warn("Cannot search Nexus for existing artifacts: " + e.getMessage());
+            return false;
+        }
+        if (existing == null) {
+            return false;
+        }
+        for (Map.Entry<ResolvedArtifact, ComponentBean> entry : existing.entrySet()) {
+            entry.getKey().existingComponent = entry.getValue();
+        }
+        return true;
+    }
+
+    /**
+     * Whether a component upload that failed after it may have reached Nexus was stored anyway, or null if that cannot
+     * be told.
+     */
+    private Boolean isUploaded(List<ResolvedArtifact> resolvedArtifacts) throws Exception {
+        if (!canFindStoredComponents(resolvedArtifacts)) {
+            return null;
+        }
+        return findStoredComponents(resolvedArtifacts) != null;
+    }
+
+    private static boolean canFindStoredComponents(List<ResolvedArtifact> resolvedArtifacts) {
+        for (ResolvedArtifact artifact : resolvedArtifacts) {
+            if (artifact.expectedPath == null && !artifact.contentCoordinates) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the components holding the artifacts where this upload puts them:  an asset with the same SHA-1 at the same
+     * path, or for formats that read the coordinates from the uploaded files, one component holding all of them.
+     * Returns null if any artifact is not found.
+     */
+    private Map<ResolvedArtifact, ComponentBean> findStoredComponents(List<ResolvedArtifact> resolvedArtifacts) throws Exception {
+        String checksumName = Checksums.attributeName(Checksums.SHA1);
+        Map<ResolvedArtifact, ComponentBean> stored = new HashMap<>();
+        // The components holding all artifacts with content coordinates so far, by ID
+        Map<String, ComponentBean> commonComponents = null;
+        List<ResolvedArtifact> contentArtifacts = new ArrayList<>();
+        for (ResolvedArtifact artifact : resolvedArtifacts) {
+            String sha1 = artifact.getDigests(checksumAlgorithms).get(Checksums.SHA1);
+            List<ComponentBean> components = retryPolicy.execute("Search", buildLog,
+                () -> throttle.execute(serverSettings, () -> client.findComponents(repositoryId, checksumName, sha1)));
+
+            if (artifact.expectedPath != null) {
+                ComponentBean match = null;
+                for (ComponentBean component : components) {
+                    if (component.findAsset(checksumName, sha1, artifact.expectedPath) != null) {
+                        match = component;
+                        break;
+                    }
+                }
+                if (match == null) {
+                    return null;
+                }
+                stored.put(artifact, match);
+            } else {
+                Map<String, ComponentBean> byId = new LinkedHashMap<>();
+                for (ComponentBean component : components) {
+                    if (component.getId() != null) {
+                        byId.put(component.getId(), component);
+                    }
+                }
+                if (commonComponents == null) {
+                    commonComponents = byId;
+                } else {
+                    commonComponents.keySet().retainAll(byId.keySet());
+                }
+                if (commonComponents.isEmpty()) {
+                    return null;
+                }
+                contentArtifacts.add(artifact);
+            }
+        }
+        if (commonComponents != null) {
+            ComponentBean component = commonComponents.values().iterator().next();
+            for (ResolvedArtifact artifact : contentArtifacts) {
+                stored.put(artifact, component);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Looks up the components the artifacts were uploaded to, so cleanup and the report can address them by ID.  Nexus
+     * does not return the component from an upload, so this searches once per component:  the assets of a multipart
+     * upload all resolve to the component found for the first of them.  The lookup is best effort, artifacts without
+     * a component ID fall back to a search by digest later.
+     */
+    private void resolveUploadedComponents(List<ResolvedArtifact> uploadedArtifacts) {
+        String checksumName = Checksums.attributeName(Checksums.SHA1);
+        for (ResolvedArtifact artifact : uploadedArtifacts) {
+            if (artifact.spooled || artifact.existingComponent != null || artifact.uploadedComponent != null) {
+                continue;
+            }
+            try {
+                String sha1 = artifact.getDigests(checksumAlgorithms).get(Checksums.SHA1);
+                List<ComponentBean> components = new ArrayList<>();
+                for (ComponentBean component : retryPolicy.execute("Search", buildLog,
+                        () -> throttle.execute(serverSettings, () -> client.findComponents(repositoryId, checksumName, sha1)))) {
+                    // Other components may hold byte-identical assets elsewhere
+                    if (artifact.findAsset(component, sha1) != null) {
+                        components.add(component);
+                    }
+                }
+                if (components.size() != 1) {
+                    LOG.warn("Found " + components.size() + " components for uploaded artifact " + artifact.file.getName() + ", not recording a component ID");
+                    continue;
+                }
+                ComponentBean component = components.get(0);
+                for (ResolvedArtifact other : uploadedArtifacts) {
+                    if (other.spooled || other.existingComponent != null || other.uploadedComponent != null) {
+                        continue;
+                    }
+                    if (other == artifact || other.findAsset(component, other.getDigests(checksumAlgorithms).get(Checksums.SHA1)) != null) {
+                        other.uploadedComponent = component;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.warn("Cannot look up Nexus component of uploaded artifact " + artifact.file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void errorOrFail(String message) {
+        LOG.error(message);
+        buildLog.error(message);
+        if (artifactUploadMandatory) {
+            String id = Constants.NEXUS_PUSH_FEATURE_TYPE + ".uploadFailed";
+            buildLog.buildProblem(BuildProblemData.createBuildProblem(id, Constants.NEXUS_PUSH_FEATURE_TYPE, message));
+        }
+    }
+
+    /**
+     * Whether the files of an eager upload are unchanged since they were found ready.  A later build step may already
+     * be rewriting them.
+     */
+    private boolean isStillReady(List<ResolvedArtifact> resolvedArtifacts) {
+        if (readyFiles == null) {
+            return true;
+        }
+        Map<String, ChecksumCache.FileStat> ready = new HashMap<>();
+        for (ChecksumCache.FileStat stat : readyFiles) {
+            ready.put(stat.getPath(), stat);
+        }
+        for (ResolvedArtifact artifact : resolvedArtifacts) {
+            ChecksumCache.FileStat readyStat = artifact.stat == null ? null : ready.get(artifact.stat.getPath());
+            if (artifact.stat == null || (readyStat != null && !readyStat.equals(artifact.stat))) {
+                errorOrFail("Cannot push artifact to Nexus:  " + artifact.file.getName() + " changed after it was found ready for upload");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Leaves out the uploaded artifacts whose files changed while they were sent, as Nexus may have received a mix of
+     * old and new content that does not match the recorded digests.  Spooled artifacts are checked by the spool.
+     */
+    private List<ResolvedArtifact> unchangedArtifacts(List<ResolvedArtifact> uploadedArtifacts) {
+        List<ResolvedArtifact> unchanged = new ArrayList<>();
+        for (ResolvedArtifact artifact : uploadedArtifacts) {
+            if (!artifact.spooled && artifact.stat != null && !artifact.stat.equals(statOrNull(artifact.file))) {
+                errorOrFail("Cannot push artifact to Nexus:  " + artifact.file.getName() + " changed while it was uploaded");
+            } else {
+                unchanged.add(artifact);
+            }
+        }
+        return unchanged;
+    }
+
+    private static ChecksumCache.FileStat statOrNull(File file) {
+        try {
+            return ChecksumCache.FileStat.of(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class ResolvedParameter {
+        private final String key;
+        // The pattern, or the file path for fan-out files, if file is set
+        private final String value;
+        private final File file;
+
+        private ResolvedParameter(String key, String value, File file) {
+            this.key = key;
+            this.value = value;
+            this.file = file;
+        }
+    }
+
+    private static class UploadBatch {
+        private final List<ResolvedParameter> parameters = new ArrayList<>();
+        private int assetCount;
+        private long bytes;
+    }
+
+    private class ResolvedArtifact {
+        private final String path;
+        private final File file;
+        private final HashingRequestBody body;
+        private final String assetPath;
+        // Where Nexus stores the artifact, if that follows from the upload parameters
+        private final String expectedPath;
+        // Whether the artifact's component takes its coordinates from the uploaded files
+        private final boolean contentCoordinates;
+        private final ChecksumCache.FileStat stat;
+        private FileDigests digests;
+        private ComponentBean existingComponent;
+        private ComponentBean uploadedComponent;
+        private boolean spooled;
+        private boolean detached;
+
+        private ResolvedArtifact(String path, File file, HashingRequestBody body, String assetPath, String expectedPath, boolean contentCoordinates,
+                                 ChecksumCache.FileStat stat) {
+            this.path = path;
+            this.file = file;
+            this.body = body;
+            this.assetPath = assetPath;
+            this.expectedPath = expectedPath;
+            this.contentCoordinates = contentCoordinates;
+            this.stat = stat;
+        }
+
+        /**
+         * Returns the asset of this artifact in a component, at the expected path if it is known.
+         */
+        private AssetBean findAsset(ComponentBean component, String sha1) {
+            String checksumName = Checksums.attributeName(Checksums.SHA1);
+            return expectedPath != null ? component.findAsset(checksumName, sha1, expectedPath) : component.findAsset(checksumName, sha1);
+        }
+
+        /**
+         * Returns the SHA-1 of the artifact if its digests were computed already, without reading the file.
+         */
+        private String getComputedSha1() {
+            if (digests == null && body != null) {
+                digests = body.getDigests();
+            }
+            return digests == null ? null : digests.get(Checksums.SHA1);
+        }
+
+        private FileDigests getDigests(List<String> checksumAlgorithms) throws IOException {
+            if (digests == null && body != null) {
+                digests = body.getDigests();
+            }
+            if (digests == null) {
+                // Only reached if the digests were not computed up front
+                digests = checksumCache.getDigests(file, checksumAlgorithms);
+            }
+            return digests;
+        }
+    }
+}
\ No newline at end of file
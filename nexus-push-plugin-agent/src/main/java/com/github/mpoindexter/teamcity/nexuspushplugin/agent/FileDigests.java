@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.ByteString;
+
+/**
+ * Digests of a single file, keyed by algorithm name.
+ */
+public class FileDigests {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Computes all digests in a single read of the file.  Each buffer read is fed to every digest while it is still in
+     * the CPU cache, before the next one is read.
+     */
+    public static FileDigests compute(File file, List<String> algorithms) throws IOException {
+        MessageDigest[] digests = createDigests(algorithms);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                update(digests, buffer, read);
+            }
+        }
+        return fromDigests(algorithms, digests);
+    }
+
+    static MessageDigest[] createDigests(List<String> algorithms) {
+        MessageDigest[] digests = new MessageDigest[algorithms.size()];
+        for (int i = 0; i < digests.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(algorithms.get(i));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unsupported checksum algorithm " + algorithms.get(i), e);
+            }
+        }
+        return digests;
+    }
+
+    static void update(MessageDigest[] digests, byte[] buffer, int length) {
+        for (MessageDigest digest : digests) {
+            digest.update(buffer, 0, length);
+        }
+    }
+
+    static FileDigests fromDigests(List<String> algorithms, MessageDigest[] digests) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < digests.length; i++) {
+            values.put(algorithms.get(i), ByteString.of(digests[i].digest()).hex());
+        }
+        return new FileDigests(values);
+    }
+
+    private final Map<String, String> values;
+
+    public FileDigests(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    public String get(String algorithm) {
+        return values.get(algorithm);
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    public boolean containsAll(List<String> algorithms) {
+        return values.keySet().containsAll(algorithms);
+    }
+}
\ No newline at end of file
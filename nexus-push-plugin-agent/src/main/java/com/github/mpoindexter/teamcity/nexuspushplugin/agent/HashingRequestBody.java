@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Streams a file into a request while computing its digests, so that the file only needs to be read once.
+ * The digests are available after the body has been completely written.  If OkHttp writes the body more than
+ * once (e.g. when retrying) the digests are recomputed for each write.
+ */
+public class HashingRequestBody extends RequestBody {
+    private final MediaType contentType;
+    private final File file;
+    private final List<String> algorithms;
+    private volatile FileDigests digests;
+
+    public HashingRequestBody(MediaType contentType, File file, List<String> algorithms) {
+        this.contentType = contentType;
+        this.file = file;
+        this.algorithms = algorithms;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.length();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        digests = null;
+        MessageDigest[] messageDigests = FileDigests.createDigests(algorithms);
+        byte[] buffer = new byte[FileDigests.BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                FileDigests.update(messageDigests, buffer, read);
+                sink.write(buffer, 0, read);
+            }
+        }
+        digests = FileDigests.fromDigests(algorithms, messageDigests);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the digests of the file computed while writing it, or null if the body was not completely written
+     */
+    public FileDigests getDigests() {
+        return digests;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientSettings;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClients;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Keeps one pooled HTTP client per Nexus server for the lifetime of the agent, so connections are reused across
+ * builds.  A server's client is rebuilt when a build brings different HTTP client settings for it.
+ */
+public class HttpClientFactory {
+    private static final Map<String, CachedClient> CLIENTS = new HashMap<>();
+
+    public static OkHttpClient getClient(NexusServerSettings serverSettings) {
+        HttpClientSettings settings = serverSettings.getHttpClientSettings();
+        CachedClient stale;
+        OkHttpClient client;
+        synchronized (CLIENTS) {
+            stale = CLIENTS.get(serverSettings.getId());
+            if (stale != null && stale.settings.equals(settings)) {
+                return stale.client;
+            }
+            client = HttpClients.newBuilder(settings)
+                .eventListenerFactory(UploadMetricsListener.FACTORY)
+                .build();
+            CLIENTS.put(serverSettings.getId(), new CachedClient(settings, client));
+        }
+        if (stale != null) {
+            stale.client.connectionPool().evictAll();
+        }
+        return client;
+    }
+
+    private static class CachedClient {
+        private final HttpClientSettings settings;
+        private final OkHttpClient client;
+
+        private CachedClient(HttpClientSettings settings, OkHttpClient client) {
+            this.settings = settings;
+            this.client = client;
+        }
+    }
+}
\ No newline at end of file
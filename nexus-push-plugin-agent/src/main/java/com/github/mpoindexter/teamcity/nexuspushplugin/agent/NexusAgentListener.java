@@ -11,18 +11,15 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactUploadSettings;
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
 import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.github.mpoindexter.teamcity.nexuspushplugin.MetadataWriter;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.JDOMUtil;
-import com.intellij.openapi.util.Pair;
-import com.intellij.openapi.util.text.StringUtil;
 
-import org.jdom.Document;
-import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
 
 import jetbrains.buildServer.BuildProblemData;
@@ -32,44 +29,68 @@ import jetbrains.buildServer.agent.AgentLifeCycleListener;
 import jetbrains.buildServer.agent.AgentRunningBuild;
 import jetbrains.buildServer.agent.BuildFinishedStatus;
 import jetbrains.buildServer.agent.BuildProgressLogger;
+import jetbrains.buildServer.agent.BuildRunnerContext;
 import jetbrains.buildServer.agent.artifacts.ArtifactsWatcher;
 import jetbrains.buildServer.log.Loggers;
 import jetbrains.buildServer.messages.DefaultMessagesInfo;
 import jetbrains.buildServer.util.EventDispatcher;
-import jetbrains.buildServer.util.pathMatcher.AntPatternFileCollector;
-import okhttp3.Credentials;
-import okhttp3.HttpUrl;
-import okhttp3.MediaType;
-import okhttp3.MultipartBody;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
-import okio.BufferedSource;
-import okio.HashingSink;
-import okio.Okio;
 
 public class NexusAgentListener extends AgentLifeCycleAdapter {
     private static final Logger LOG = Loggers.AGENT;
 
-    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
-        .readTimeout(1, TimeUnit.MINUTES)
-        .connectTimeout(1, TimeUnit.MINUTES)
-        .build();
-
     private final ArtifactsWatcher artifactWatcher;
+    private final ChecksumCache checksumCache;
+    private final UploadSpool spool;
+    private final ExecutorService transferExecutor = UploadSession.newTransferExecutor();
+    private volatile UploadSession session;
 
     public NexusAgentListener(@NotNull final EventDispatcher<AgentLifeCycleListener> agentDispatcher,
-                              @NotNull final ArtifactsWatcher artifactWatcher) {
+                              @NotNull final ArtifactsWatcher artifactWatcher,
+                              @NotNull final ChecksumCache checksumCache,
+                              @NotNull final UploadSpool spool) {
         this.artifactWatcher = artifactWatcher;
+        this.checksumCache = checksumCache;
+        this.spool = spool;
         agentDispatcher.addListener(this);
         LOG.info("Nexus agent listener started");
     }
 
+    @Override
+    public void buildStarted(AgentRunningBuild build) {
+        closeSession();
+        if (!build.getBuildFeaturesOfType(Constants.NEXUS_PUSH_FEATURE_TYPE).isEmpty()) {
+            session = new UploadSession(build, checksumCache, spool, transferExecutor);
+        }
+    }
+
+    @Override
+    public void agentShutdown() {
+        closeSession();
+        transferExecutor.shutdownNow();
+    }
+
+    @Override
+    public void runnerFinished(BuildRunnerContext runner, BuildFinishedStatus status) {
+        UploadSession currentSession = session;
+        if (currentSession != null && !status.isFailed()) {
+            currentSession.dispatchReadyFeatures();
+        }
+    }
+
     @Override
     public void beforeBuildFinish(AgentRunningBuild build, BuildFinishedStatus buildStatus) {
+        UploadSession currentSession = session;
         if (buildStatus.isFailed()) {
             LOG.info("Nexus agent skipping failed build");
+            if (currentSession != null && hasDispatchedUploads(currentSession)) {
+                build.getBuildLogger().activityStarted("Uploading Nexus artifacts", "", DefaultMessagesInfo.BLOCK_TYPE_BUILD_STEP);
+                try {
+                    // artifacts that were already pushed eagerly must still be recorded so they can be cleaned up
+                    uploadArtifacts(build, currentSession.getFeatures(), currentSession.getDispatched());
+                } finally {
+                    build.getBuildLogger().activityFinished("Uploading Nexus artifacts", DefaultMessagesInfo.BLOCK_TYPE_BUILD_STEP);
+                }
+            }
             return;
         }
 
@@ -77,143 +98,115 @@ public class NexusAgentListener extends AgentLifeCycleAdapter {
             LOG.info("Nexus agent found feature: " + f.getType());
         }
 
-        if (build.getBuildFeaturesOfType(Constants.NEXUS_PUSH_FEATURE_TYPE).isEmpty()) {
+        if (currentSession == null || currentSession.getFeatures().isEmpty()) {
             LOG.info("Nexus agent skipping build, no features active");
             return;
         }
 
         build.getBuildLogger().activityStarted("Uploading Nexus artifacts", "", DefaultMessagesInfo.BLOCK_TYPE_BUILD_STEP);
         try {
-            uploadArtifacts(build);
+            uploadArtifacts(build, currentSession.getFeatures(), currentSession.dispatchRemaining());
         } finally {
             build.getBuildLogger().activityFinished("Uploading Nexus artifacts", DefaultMessagesInfo.BLOCK_TYPE_BUILD_STEP);
         }
     }
 
-    private void uploadArtifacts(AgentRunningBuild build) {
-        BuildProgressLogger buildLog = build.getBuildLogger();
-        Document doc = new Document(new Element("artifacts"));
-        Element root = doc.getRootElement();
-        for (AgentBuildFeature feature : build.getBuildFeaturesOfType(Constants.NEXUS_PUSH_FEATURE_TYPE)) {
-            Map<String, String> parameters = feature.getParameters();
-
-            boolean artifactUploadMandatory = "true".equals(parameters.get(Constants.ARTIFACT_UPLOAD_MANDATORY));
-
-            String serverId = parameters.get(Constants.NEXUS_SERVER_ID);
-            NexusServerSettings serverSettings = NexusServerSettings.getServerSettings(build, serverId);
-            if (serverSettings == null) {
-                errorOrFail("Cannot push artifact to Nexus:  Invalid server", buildLog, artifactUploadMandatory);
-                continue;
-            }
+    @Override
+    public void buildFinished(AgentRunningBuild build, BuildFinishedStatus buildStatus) {
+        closeSession();
+    }
 
-            String repositoryId = parameters.get(Constants.REPOSITORY_ID);
-            if (StringUtil.isEmptyOrSpaces(repositoryId)) {
-                errorOrFail("Cannot push artifact to Nexus:  Invalid repository ID", buildLog, artifactUploadMandatory);
-                continue;
-            }
+    private synchronized void closeSession() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+    }
 
-            String artifactUploadSettingsSpec = parameters.get(Constants.ARTIFACT_UPLOAD_SETTINGS);
-            if (StringUtil.isEmptyOrSpaces(artifactUploadSettingsSpec)) {
-                errorOrFail("Cannot push artifact to Nexus:  Invalid artifact upload settings", buildLog, artifactUploadMandatory);
-                continue;
+    private boolean hasDispatchedUploads(UploadSession session) {
+        for (Future<FeatureUploadResult> upload : session.getDispatched()) {
+            if (upload != null) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            ArtifactUploadSettings artifactUploadSettings = ArtifactUploadSettings.parse(artifactUploadSettingsSpec);
-            if (artifactUploadSettings == null) {
-                errorOrFail("Cannot push artifact to Nexus:  Invalid artifact upload settings", buildLog, artifactUploadMandatory);
-                continue;
-            }
+    private void uploadArtifacts(AgentRunningBuild build, List<AgentBuildFeature> features, List<Future<FeatureUploadResult>> results) {
+        BuildProgressLogger buildLog = build.getBuildLogger();
+        List<UploadMetrics> featureMetrics = new ArrayList<>();
+        File output = new File(build.getBuildTempDirectory(), Constants.NEXUS_BUILD_METADATA_FILE);
+        MetadataWriter metadataWriter = null;
+        try {
+            metadataWriter = new MetadataWriter(output);
+        } catch (IOException e) {
+            LOG.error("Cannot save nexus artifact metadata", e);
+        }
 
-            String deleteArtifactOnCleanup = parameters.get(Constants.DELETE_ARTIFACT_ON_CLEANUP);
-
-            File workingDirectory = build.getCheckoutDirectory();
-            MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.FORM);
-            boolean hasError = false;
-            List<Pair<String, File>> resolvedArtifacts = new ArrayList<>();
-            String uploadMessage = "Uploading artifacts to Nexus with the following config:\n";
-            for (ArtifactUploadSettings.UploadParameter param : artifactUploadSettings.getUploadParameters()) {
-                uploadMessage += "\t" + param.key + "=";
-                if (param.isFile) {
-                    List<File> matchedFiles = AntPatternFileCollector.scanDir(workingDirectory, new String[] { param.value }, new AntPatternFileCollector.ScanOption[]{});
-                    if (matchedFiles.size() == 1) {
-                        File artifact = matchedFiles.get(0);
-                        builder.addFormDataPart(param.key, artifact.getName(), RequestBody.create(MediaType.parse("application/octet-stream"), artifact));
-                        resolvedArtifacts.add(Pair.create(param.value, artifact));
-                        uploadMessage += "File <" + artifact.getName() + ">\n";
-                    } else if (matchedFiles.size() > 1) {
-                        errorOrFail("Cannot push artifact to Nexus:  Pattern " + param.value + " matched multiple files", buildLog, artifactUploadMandatory);
-                        hasError = true;
-                    } else {
-                        errorOrFail("Cannot push artifact to Nexus:  Pattern " + param.value + " did not match any files", buildLog, artifactUploadMandatory);
-                        hasError = true;
-                    }
-                } else {
-                    String value = param.value == null ? "" : param.value;
-                    builder.addFormDataPart(param.key, value);
-                    uploadMessage += value + "\n";
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    continue;
+                }
+                try {
+                    FeatureUploadResult result = results.get(i).get();
+                    result.getLog().replay(buildLog);
+                    reportMetrics(buildLog, "Nexus upload for feature " + (i + 1), result.getMetrics(), ".feature" + (i + 1));
+                    featureMetrics.add(result.getMetrics());
+                    metadataWriter = writeMetadata(metadataWriter, result.getArtifacts());
+                } catch (ExecutionException e) {
+                    boolean artifactUploadMandatory = "true".equals(features.get(i).getParameters().get(Constants.ARTIFACT_UPLOAD_MANDATORY));
+                    errorOrFail("Cannot push artifact to Nexus:  Upload failed - " + e.getCause().getMessage(), buildLog, artifactUploadMandatory);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errorOrFail("Cannot push artifact to Nexus:  Upload interrupted", buildLog, false);
+        } finally {
+            checksumCache.flush();
+        }
+        reportMetrics(buildLog, "Nexus upload", UploadMetrics.aggregate(featureMetrics), "");
 
-            if (hasError) {
-                continue;
-            }
-
-            build.getBuildLogger().message(uploadMessage);
-
+        if (metadataWriter != null) {
             try {
-                HttpUrl url = HttpUrl.parse(serverSettings.getUrl()).newBuilder()
-                    .addPathSegments("service/rest/v1/components")
-                    .addQueryParameter("repository", repositoryId)
-                    .build();
-
-                Request request = new Request.Builder()
-                    .url(url)
-                    .addHeader("Authorization", Credentials.basic(serverSettings.getUsername(), serverSettings.getPassword()))
-                    .post(builder.build())
-                    .build();
-                Response response = CLIENT.newCall(request).execute();
-                
-                if (!response.isSuccessful()) {
-                    throw new IOException("Invalid status: " + response.code() + " " + response.body().string());
-                }
+                metadataWriter.close();
+                artifactWatcher.addNewArtifactsPath(output.getAbsolutePath() + "=>.teamcity");
             } catch (IOException e) {
-                errorOrFail("Cannot push artifact to Nexus:  Upload failed - " + e.getMessage(), buildLog, artifactUploadMandatory);
-                continue;
-            }
-
-            // TODO:  get metadata from Nexus upload when it's supported
-            for (Pair<String, File> artifact : resolvedArtifacts) {
-                try {
-                    File artifactFile = artifact.second;
-                    BufferedSource source = Okio.buffer(Okio.source(artifactFile));
-                    HashingSink sink = HashingSink.sha1(Okio.blackhole());
-                    source.readAll(sink);
-                    String artifactHash = sink.hash().hex();
-                    Element artifactElement = new Element("artifact");
-                    artifactElement.setAttribute("path", artifact.first);
-                    artifactElement.setAttribute("name", artifactFile.getName());
-                    artifactElement.setAttribute("sha1", artifactHash);
-                    artifactElement.setAttribute("serverId", serverId);
-                    artifactElement.setAttribute("serverUrl", serverSettings.getUrl());
-                    artifactElement.setAttribute("repository", repositoryId);
-                    if (deleteArtifactOnCleanup != null) {
-                        artifactElement.setAttribute("deleteArtifactOnCleanup", deleteArtifactOnCleanup);
-                    }
-                    root.addContent(artifactElement);
-                } catch (IOException e) {
-                    LOG.error("Cannot save nexus artifact metadata", e);
-                }
+                LOG.error("Cannot save nexus artifact metadata", e);
             }
         }
+    }
 
-        File tempDir = build.getBuildTempDirectory();
+    /**
+     * Writes the artifacts of a feature to the metadata file as soon as the feature is done, so that only one
+     * feature's artifacts are held at a time.  Returns null if the metadata cannot be written.
+     */
+    private MetadataWriter writeMetadata(MetadataWriter metadataWriter, List<ArtifactMetadata> artifacts) {
+        if (metadataWriter == null) {
+            return null;
+        }
         try {
-            File output = new File(tempDir, Constants.NEXUS_BUILD_METADATA_FILE);
-            JDOMUtil.writeDocument(doc, output, "\n");
-            artifactWatcher.addNewArtifactsPath(output.getAbsolutePath() + "=>.teamcity");
+            for (ArtifactMetadata artifact : artifacts) {
+                metadataWriter.write(artifact);
+            }
+            return metadataWriter;
         } catch (IOException e) {
             LOG.error("Cannot save nexus artifact metadata", e);
+            try {
+                metadataWriter.close();
+            } catch (IOException e2) {
+                // already reported
+            }
+            return null;
+        }
+    }
+
+    private void reportMetrics(BuildProgressLogger buildLog, String description, UploadMetrics metrics, String keySuffix) {
+        if (metrics.isEmpty()) {
+            return;
         }
+        buildLog.message(description + " " + metrics.describe());
+        metrics.report(buildLog, keySuffix);
     }
 
     private void errorOrFail(String message, BuildProgressLogger buildLog, boolean fail) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.SearchResponse;
+
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+public class NexusClient {
+    private final NexusServerSettings serverSettings;
+    private final OkHttpClient client;
+    private final UploadMetrics metrics;
+
+    public NexusClient(NexusServerSettings serverSettings, UploadMetrics metrics) {
+        this.serverSettings = serverSettings;
+        this.client = HttpClientFactory.getClient(serverSettings);
+        this.metrics = metrics;
+    }
+
+    public void uploadComponent(String repositoryId, RequestBody body) throws IOException {
+        HttpUrl url = HttpUrl.parse(serverSettings.getUrl()).newBuilder()
+            .addPathSegments("service/rest/v1/components")
+            .addQueryParameter("repository", repositoryId)
+            .build();
+
+        Request request = new Request.Builder()
+            .url(url)
+            .addHeader("Authorization", credentials())
+            .tag(UploadMetrics.class, metrics)
+            .post(body)
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw NexusResponseException.fromResponse(response);
+            }
+        }
+    }
+
+    /**
+     * Uploads a single file directly to a path in a hosted repository.  The request asks the server to confirm the
+     * upload with 100 Continue, so that e.g. authentication failures are reported before the body is sent.
+     */
+    public void putAsset(String repositoryId, String path, RequestBody body) throws IOException {
+        HttpUrl url = HttpUrl.parse(serverSettings.getUrl()).newBuilder()
+            .addPathSegment("repository")
+            .addPathSegment(repositoryId)
+            .addPathSegments(path)
+            .build();
+
+        Request request = new Request.Builder()
+            .url(url)
+            .addHeader("Authorization", credentials())
+            .addHeader("Expect", "100-continue")
+            .tag(UploadMetrics.class, metrics)
+            .put(body)
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw NexusResponseException.fromResponse(response);
+            }
+        }
+    }
+
+    public List<ComponentBean> findComponents(String repositoryId, String checksumName, String checksum) throws IOException {
+        HttpUrl url = HttpUrl.parse(serverSettings.getUrl()).newBuilder()
+            .addPathSegments("service/rest/v1/search")
+            .addQueryParameter("repository", repositoryId)
+            .addQueryParameter(checksumName, checksum)
+            .build();
+
+        Request request = new Request.Builder()
+            .url(url)
+            .addHeader("Accept", "application/json")
+            .addHeader("Authorization", credentials())
+            .get()
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw NexusResponseException.fromResponse(response);
+            }
+            SearchResponse searchResponse = SearchResponse.ADAPTER.fromJson(response.body().source());
+            if (searchResponse == null || searchResponse.getItems() == null) {
+                return Collections.emptyList();
+            }
+            return searchResponse.getItems();
+        }
+    }
+
+    private String credentials() {
+        return Credentials.basic(serverSettings.getUsername(), serverSettings.getPassword());
+    }
+}
\ No newline at end of file
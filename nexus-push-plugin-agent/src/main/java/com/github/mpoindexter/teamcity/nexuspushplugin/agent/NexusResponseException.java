@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.IOException;
+
+import okhttp3.Response;
+
+public class NexusResponseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public static NexusResponseException fromResponse(Response response) throws IOException {
+        return new NexusResponseException(response.code(), response.header("Retry-After"), response.body().string());
+    }
+
+    private final int code;
+    private final String retryAfter;
+
+    public NexusResponseException(int code, String retryAfter, String body) {
+        super("Invalid status: " + code + " " + body);
+        this.code = code;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+}
\ No newline at end of file
@@ -10,6 +10,7 @@ package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
 import java.util.Map;
 
 import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientSettings;
 
 import jetbrains.buildServer.agent.AgentRunningBuild;
 
@@ -18,7 +19,14 @@ public class NexusServerSettings {
         if (serverId == null) {
             return null;
         }
-        Map<String, String> params = build.getSharedConfigParameters();
+        return read(serverId, build.getSharedConfigParameters());
+    }
+
+    /**
+     * Reads the settings of a server from the parameters the server passes to builds, or returns null if they are
+     * incomplete.
+     */
+    static NexusServerSettings read(String serverId, Map<String, String> params) {
         String url = params.get(Constants.AGENT_SERVER_URL_PARAM_PREFIX + serverId);
         String username = params.get(Constants.AGENT_SERVER_USERNAME_PARAM_PREFIX + serverId);
         String password = params.get(Constants.AGENT_SERVER_PASSWORD_PARAM_PREFIX + serverId);
@@ -27,17 +35,61 @@ public class NexusServerSettings {
             return null;
         }
 
-        return new NexusServerSettings(url, username, password);
+        int maxConcurrentUploads = parsePositiveInt(params.get(Constants.AGENT_SERVER_MAX_CONCURRENT_UPLOADS_PARAM_PREFIX + serverId), Constants.DEFAULT_MAX_CONCURRENT_UPLOADS);
+        int retryMaxAttempts = parsePositiveInt(params.get(Constants.AGENT_SERVER_RETRY_MAX_ATTEMPTS_PARAM_PREFIX + serverId), Constants.DEFAULT_RETRY_MAX_ATTEMPTS);
+        int retryInitialDelay = parseNonNegativeInt(params.get(Constants.AGENT_SERVER_RETRY_INITIAL_DELAY_PARAM_PREFIX + serverId), Constants.DEFAULT_RETRY_INITIAL_DELAY);
+        HttpClientSettings httpClientSettings = HttpClientSettings.read(name -> params.get(Constants.AGENT_SERVER_HTTP_PARAM_PREFIX + name + "." + serverId));
+
+        return new NexusServerSettings(serverId, url, username, password, maxConcurrentUploads, retryMaxAttempts, retryInitialDelay, httpClientSettings);
+    }
+
+    static int parsePositiveInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            return result > 0 ? result : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    static int parseNonNegativeInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            return result >= 0 ? result : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
+    private final String id;
     private final String url;
     private final String username;
     private final String password;
+    private final int maxConcurrentUploads;
+    private final int retryMaxAttempts;
+    private final int retryInitialDelay;
+    private final HttpClientSettings httpClientSettings;
 
-    private NexusServerSettings(String url, String username, String password) {
+    private NexusServerSettings(String id, String url, String username, String password, int maxConcurrentUploads,
+                                int retryMaxAttempts, int retryInitialDelay, HttpClientSettings httpClientSettings) {
+        this.id = id;
         this.url = url;
         this.username = username;
         this.password = password;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.retryMaxAttempts = retryMaxAttempts;
+        this.retryInitialDelay = retryInitialDelay;
+        this.httpClientSettings = httpClientSettings;
+    }
+
+    public String getId() {
+        return id;
     }
 
     public String getUrl() {
@@ -51,4 +103,20 @@ public class NexusServerSettings {
     public String getPassword() {
         return password;
     }
+
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    public int getRetryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    public int getRetryInitialDelay() {
+        return retryInitialDelay;
+    }
+
+    public HttpClientSettings getHttpClientSettings() {
+        return httpClientSettings;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+
+/**
+ * Retries calls to Nexus that fail with an I/O error or a status code that indicates a transient condition.  Delays
+ * grow exponentially from the initial delay and are randomized ("full jitter") so that agents finishing builds at the
+ * same time do not retry in lock step.  A Retry-After header from the server is honored when present.
+ *
+ * Calls that are not idempotent, like multipart uploads, are only sent again right away if the server cannot have
+ * processed them:  the connection could not be established, or the server refused the call with 503, or with 429 and a
+ * Retry-After header.  After other transient failures the server may already have processed the call, so it is only
+ * sent again if a check, like a search for the uploaded component, tells that it did not.
+ */
+public class RetryPolicy {
+    private static final long MAX_DELAY = TimeUnit.MINUTES.toMillis(2);
+
+    public static RetryPolicy forFeature(NexusServerSettings serverSettings, Map<String, String> parameters, UploadMetrics metrics) {
+        int maxAttempts = NexusServerSettings.parsePositiveInt(parameters.get(Constants.UPLOAD_MAX_ATTEMPTS), serverSettings.getRetryMaxAttempts());
+        return new RetryPolicy(maxAttempts, serverSettings.getRetryInitialDelay(), metrics);
+    }
+
+    public static boolean isRetryable(int code) {
+        switch (code) {
+            case 408:
+            case 429:
+            case 502:
+            case 503:
+            case 504:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return whether the error happened before the request was sent, while connecting to the server
+     */
+    public static boolean isConnectFailure(IOException e) {
+        if (e instanceof SocketTimeoutException) {
+            String message = e.getMessage();
+            return message != null && message.toLowerCase().contains("connect");
+        }
+        return e instanceof ConnectException || e instanceof NoRouteToHostException || e instanceof UnknownHostException;
+    }
+
+    /**
+     * @return whether the server cannot have processed the request that failed, so even a call that is not idempotent
+     * can be sent again
+     */
+    public static boolean isRefused(IOException e) {
+        if (e instanceof NexusResponseException) {
+            NexusResponseException response = (NexusResponseException) e;
+            return response.getCode() == 503 || (response.getCode() == 429 && response.getRetryAfter() != null);
+        }
+        return isConnectFailure(e);
+    }
+
+    private final int maxAttempts;
+    private final long initialDelay;
+    private final UploadMetrics metrics;
+
+    public RetryPolicy(int maxAttempts, long initialDelay, UploadMetrics metrics) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.metrics = metrics;
+    }
+
+    public <T> T execute(String description, BufferedBuildLog buildLog, Callable<T> call) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                sleep(description, buildLog, attempt, e, delay(e, attempt));
+            }
+        }
+    }
+
+    /**
+     * Executes a call that is not idempotent.  After a transient failure the server may have processed the call, the
+     * call is then only sent again if isProcessed returns false.  If it returns true the call is taken as done, if it
+     * returns null or fails the original failure is thrown.
+     */
+    public void executeNonIdempotent(String description, BufferedBuildLog buildLog, Callable<?> call, Callable<Boolean> isProcessed) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                call.call();
+                return;
+            } catch (IOException e) {
+                boolean refused = isRefused(e);
+                if (attempt >= maxAttempts || (!refused && !isTransient(e))) {
+                    throw e;
+                }
+                if (!refused) {
+                    Boolean processed;
+                    try {
+                        processed = isProcessed.call();
+                    } catch (IOException checkFailure) {
+                        e.addSuppressed(checkFailure);
+                        throw e;
+                    }
+                    if (processed == null) {
+                        throw e;
+                    }
+                    if (processed) {
+                        buildLog.message(description + " failed (" + e.getMessage() + "), but Nexus has processed it, not sending it again");
+                        return;
+                    }
+                }
+                sleep(description, buildLog, attempt, e, delay(e, attempt));
+            }
+        }
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private void sleep(String description, BufferedBuildLog buildLog, int attempt, IOException cause, long delay) throws InterruptedException {
+        buildLog.message(description + " failed (" + cause.getMessage() + "), retrying in " + delay + "ms (attempt " + (attempt + 1) + " of " + maxAttempts + ")");
+        if (metrics != null) {
+            metrics.retried();
+        }
+        Thread.sleep(delay);
+    }
+
+    private static boolean isTransient(IOException e) {
+        return !(e instanceof NexusResponseException) || isRetryable(((NexusResponseException) e).getCode());
+    }
+
+    private long delay(IOException e, int attempt) {
+        return e instanceof NexusResponseException ? retryAfterDelay(((NexusResponseException) e).getRetryAfter(), attempt) : backoffDelay(attempt);
+    }
+
+    long backoffDelay(int attempt) {
+        long ceiling = Math.min(MAX_DELAY, initialDelay << Math.min(attempt - 1, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    long retryAfterDelay(String retryAfter, int attempt) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(MAX_DELAY, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                try {
+                    long date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                    return Math.min(MAX_DELAY, Math.max(0, date - System.currentTimeMillis()));
+                } catch (DateTimeParseException e2) {
+                    // fall back to the computed backoff
+                }
+            }
+        }
+        return backoffDelay(attempt);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Variables describing a file matched by a fan-out pattern, referenced as ${name} in upload parameter names and values.
+ * Unknown variables are left as they are.
+ */
+public class TemplateVariables {
+    private static final Pattern VARIABLE = Pattern.compile("\\$\\{([A-Za-z]+)\\}");
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    public TemplateVariables(File baseDirectory, File file) {
+        String fileName = file.getName();
+        int extensionIndex = fileName.lastIndexOf('.');
+        String relativePath = baseDirectory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+        int dirIndex = relativePath.lastIndexOf('/');
+
+        values.put("fileName", fileName);
+        values.put("baseName", extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName);
+        values.put("extension", extensionIndex > 0 ? fileName.substring(extensionIndex + 1) : "");
+        values.put("relativePath", relativePath);
+        values.put("relativeDir", dirIndex > 0 ? relativePath.substring(0, dirIndex) : "");
+    }
+
+    public String getRelativePath() {
+        return values.get("relativePath");
+    }
+
+    public String expand(String template) {
+        if (template == null || template.indexOf("${") < 0) {
+            return template;
+        }
+        Matcher matcher = VARIABLE.matcher(template);
+        StringBuffer expanded = new StringBuffer();
+        while (matcher.find()) {
+            String value = values.get(matcher.group(1));
+            matcher.appendReplacement(expanded, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(expanded);
+        return expanded.toString();
+    }
+}
\ No newline at end of file
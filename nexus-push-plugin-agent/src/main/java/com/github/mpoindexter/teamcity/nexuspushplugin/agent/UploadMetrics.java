@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jetbrains.buildServer.agent.BuildProgressLogger;
+import jetbrains.buildServer.messages.serviceMessages.ServiceMessage;
+
+/**
+ * Counters for the Nexus requests of one feature, filled in by {@link UploadMetricsListener} and {@link RetryPolicy}
+ * and reported as build statistics.
+ */
+public class UploadMetrics {
+    private static final String STATISTIC_PREFIX = "nexus.upload.";
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong requestTime = new AtomicLong();
+    private final AtomicLong timeToFirstByte = new AtomicLong();
+    private final AtomicLong timeToFirstByteSamples = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final Map<Integer, AtomicLong> responses = new HashMap<>();
+    private volatile long started;
+    private volatile long finished;
+
+    public static UploadMetrics aggregate(List<UploadMetrics> metrics) {
+        UploadMetrics total = new UploadMetrics();
+        for (UploadMetrics m : metrics) {
+            total.requests.addAndGet(m.requests.get());
+            total.failedRequests.addAndGet(m.failedRequests.get());
+            total.bytesSent.addAndGet(m.bytesSent.get());
+            total.requestTime.addAndGet(m.requestTime.get());
+            total.timeToFirstByte.addAndGet(m.timeToFirstByte.get());
+            total.timeToFirstByteSamples.addAndGet(m.timeToFirstByteSamples.get());
+            total.retries.addAndGet(m.retries.get());
+            synchronized (m.responses) {
+                for (Map.Entry<Integer, AtomicLong> entry : m.responses.entrySet()) {
+                    total.responseCounter(entry.getKey()).addAndGet(entry.getValue().get());
+                }
+            }
+            if (m.started > 0 && (total.started == 0 || m.started < total.started)) {
+                total.started = m.started;
+            }
+            total.finished = Math.max(total.finished, m.finished);
+        }
+        return total;
+    }
+
+    public void started() {
+        started = System.currentTimeMillis();
+    }
+
+    public void finished() {
+        finished = System.currentTimeMillis();
+    }
+
+    void requestFinished(long bytes, long timeMillis, long timeToFirstByteMillis, int responseCode) {
+        requests.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+        requestTime.addAndGet(timeMillis);
+        if (timeToFirstByteMillis >= 0) {
+            timeToFirstByte.addAndGet(timeToFirstByteMillis);
+            timeToFirstByteSamples.incrementAndGet();
+        }
+        if (responseCode > 0) {
+            responseCounter(responseCode / 100).incrementAndGet();
+        } else {
+            failedRequests.incrementAndGet();
+        }
+    }
+
+    void retried() {
+        retries.incrementAndGet();
+    }
+
+    private AtomicLong responseCounter(int responseClass) {
+        synchronized (responses) {
+            return responses.computeIfAbsent(responseClass, c -> new AtomicLong());
+        }
+    }
+
+    public boolean isEmpty() {
+        return requests.get() == 0;
+    }
+
+    /**
+     * Returns the statistics by name.  Times are in milliseconds and throughput in bytes per second of request time.
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        long wallTime = started > 0 && finished >= started ? finished - started : 0;
+        statistics.put("bytes", bytesSent.get());
+        statistics.put("wallTime", wallTime);
+        statistics.put("requestTime", requestTime.get());
+        statistics.put("timeToFirstByte", timeToFirstByteSamples.get() == 0 ? 0 : timeToFirstByte.get() / timeToFirstByteSamples.get());
+        statistics.put("throughput", requestTime.get() == 0 ? 0 : bytesSent.get() * 1000 / requestTime.get());
+        statistics.put("requests", requests.get());
+        statistics.put("retries", retries.get());
+        statistics.put("failedRequests", failedRequests.get());
+        synchronized (responses) {
+            for (int responseClass = 2; responseClass <= 5; responseClass++) {
+                AtomicLong count = responses.get(responseClass);
+                statistics.put("responses" + responseClass + "xx", count == null ? 0 : count.get());
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Reports the statistics as buildStatisticValue service messages, with keys like nexus.upload.bytes followed by
+     * the suffix.
+     */
+    public void report(BuildProgressLogger buildLog, String suffix) {
+        for (Map.Entry<String, Long> statistic : getStatistics().entrySet()) {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            attributes.put("key", STATISTIC_PREFIX + statistic.getKey() + suffix);
+            attributes.put("value", String.valueOf(statistic.getValue()));
+            buildLog.message(ServiceMessage.asString("buildStatisticValue", attributes));
+        }
+    }
+
+    public String describe() {
+        Map<String, Long> statistics = getStatistics();
+        return "sent " + statistics.get("bytes") + " bytes in " + statistics.get("requests") + " requests ("
+            + statistics.get("throughput") / 1024 + " KB/s, " + statistics.get("timeToFirstByte") + "ms average time to first byte, "
+            + statistics.get("retries") + " retries), " + statistics.get("wallTime") + "ms total";
+    }
+}
\ No newline at end of file
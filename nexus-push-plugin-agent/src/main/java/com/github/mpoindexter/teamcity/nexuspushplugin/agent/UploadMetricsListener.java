@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.IOException;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Times a single call and records it in the {@link UploadMetrics} attached to its request as a tag.  Calls without
+ * metrics are not instrumented.
+ */
+public class UploadMetricsListener extends EventListener {
+    public static final EventListener.Factory FACTORY = call -> {
+        UploadMetrics metrics = call.request().tag(UploadMetrics.class);
+        return metrics == null ? EventListener.NONE : new UploadMetricsListener(metrics);
+    };
+
+    private final UploadMetrics metrics;
+    private long callStart;
+    private long requestSent = -1;
+    private long firstByte = -1;
+    private long bytes;
+    private int responseCode;
+
+    private UploadMetricsListener(UploadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        requestSent = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        bytes += byteCount;
+        requestSent = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        // With Expect: 100-continue the interim response comes before the body, the final one after it
+        if (requestSent >= 0) {
+            firstByte = System.nanoTime() - requestSent;
+        }
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        responseCode = response.code();
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        finished();
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        responseCode = 0;
+        finished();
+    }
+
+    private void finished() {
+        metrics.requestFinished(bytes, (System.nanoTime() - callStart) / 1000000, firstByte < 0 ? -1 : firstByte / 1000000, responseCode);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactUploadSettings;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+
+import jetbrains.buildServer.agent.AgentBuildFeature;
+import jetbrains.buildServer.agent.AgentRunningBuild;
+import jetbrains.buildServer.log.Loggers;
+
+/**
+ * Tracks the Nexus uploads of a single running build.  Features marked for eager upload are dispatched as soon as all
+ * of their file patterns resolve to a single file (or, for the fan-out pattern, to at least one file) and the files have
+ * not changed across a whole build step and for at least {@link #MIN_STABLE_TIME}; everything else is dispatched when
+ * the build finishes.  The uploader checks the files again before and after sending them.
+ */
+public class UploadSession {
+    private static final Logger LOG = Loggers.AGENT;
+
+    private static final int MAX_PARALLEL_FEATURES = 16;
+    private static final int MAX_PARALLEL_TRANSFERS = 16;
+    private static final long MIN_STABLE_TIME = TimeUnit.SECONDS.toMillis(5);
+
+    private final AgentRunningBuild build;
+    private final ChecksumCache checksumCache;
+    private final UploadSpool spool;
+    private final List<AgentBuildFeature> features;
+    private final UploadThrottle throttle = new UploadThrottle();
+    private final ExecutorService executor;
+    private final ExecutorService transferExecutor;
+    private final Map<Integer, Future<FeatureUploadResult>> dispatched = new HashMap<>();
+    private final Map<Integer, Snapshot> lastSnapshots = new HashMap<>();
+
+    public UploadSession(AgentRunningBuild build, ChecksumCache checksumCache, UploadSpool spool, ExecutorService transferExecutor) {
+        this.build = build;
+        this.checksumCache = checksumCache;
+        this.spool = spool;
+        this.transferExecutor = transferExecutor;
+        this.features = new ArrayList<>(build.getBuildFeaturesOfType(Constants.NEXUS_PUSH_FEATURE_TYPE));
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(features.size(), MAX_PARALLEL_FEATURES)), new UploadThreadFactory("Nexus upload "));
+    }
+
+    /**
+     * Creates the pool that runs the transfers of all builds on the agent, so the number of parallel transfers is
+     * bounded across builds.
+     */
+    public static ExecutorService newTransferExecutor() {
+        return Executors.newFixedThreadPool(MAX_PARALLEL_TRANSFERS, new UploadThreadFactory("Nexus transfer "));
+    }
+
+    public List<AgentBuildFeature> getFeatures() {
+        return features;
+    }
+
+    /**
+     * Dispatches eager features whose artifacts are ready.  Called when a build step finishes, so the files of a
+     * feature are only found ready once a whole step ran without changing them.
+     */
+    public synchronized void dispatchReadyFeatures() {
+        List<Integer> candidates = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            Map<String, String> parameters = features.get(i).getParameters();
+            if (dispatched.containsKey(i) || !"true".equals(parameters.get(Constants.UPLOAD_EAGERLY))) {
+                continue;
+            }
+            candidates.add(i);
+            patterns.addAll(getFilePatterns(parameters));
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        ArtifactPatternResolver.Result resolvedPatterns = ArtifactPatternResolver.resolve(build.getCheckoutDirectory(), patterns);
+        LOG.debug("Nexus eager upload check: " + resolvedPatterns.describe());
+        for (int i : candidates) {
+            List<ChecksumCache.FileStat> files = snapshotArtifacts(features.get(i).getParameters(), resolvedPatterns);
+            if (files == null) {
+                lastSnapshots.remove(i);
+                continue;
+            }
+
+            Snapshot last = lastSnapshots.get(i);
+            if (last == null || !last.files.equals(files)) {
+                lastSnapshots.put(i, new Snapshot(files));
+            } else if (System.currentTimeMillis() - last.taken >= MIN_STABLE_TIME) {
+                build.getBuildLogger().message("Nexus artifacts for feature " + (i + 1) + " are ready, starting upload");
+                dispatch(i, resolvedPatterns, files);
+            }
+        }
+    }
+
+    /**
+     * Dispatches all features that have not been dispatched yet and returns the uploads of all features in feature
+     * order.
+     */
+    public synchronized List<Future<FeatureUploadResult>> dispatchRemaining() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            if (!dispatched.containsKey(i)) {
+                patterns.addAll(getFilePatterns(features.get(i).getParameters()));
+            }
+        }
+        ArtifactPatternResolver.Result resolvedPatterns = ArtifactPatternResolver.resolve(build.getCheckoutDirectory(), patterns);
+        if (!patterns.isEmpty()) {
+            LOG.info("Nexus upload for build " + build.getBuildId() + ": " + resolvedPatterns.describe());
+            build.getBuildLogger().message("Nexus upload: " + resolvedPatterns.describe());
+        }
+
+        List<Future<FeatureUploadResult>> results = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            if (!dispatched.containsKey(i)) {
+                dispatch(i, resolvedPatterns, null);
+            }
+            results.add(dispatched.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the uploads that have already been dispatched, with null for features that were not dispatched.
+     */
+    public synchronized List<Future<FeatureUploadResult>> getDispatched() {
+        List<Future<FeatureUploadResult>> results = new ArrayList<>();
+        for (int i = 0; i < features.size(); i++) {
+            results.add(dispatched.get(i));
+        }
+        return results;
+    }
+
+    public void close() {
+        // Interrupted feature uploads cancel their transfers on the shared pool
+        executor.shutdownNow();
+        checksumCache.flush();
+    }
+
+    private void dispatch(int index, ArtifactPatternResolver.Result resolvedPatterns, List<ChecksumCache.FileStat> readyFiles) {
+        dispatched.put(index, executor.submit(new FeatureUploader(build, features.get(index).getParameters(), throttle, transferExecutor, checksumCache,
+            spool, resolvedPatterns, readyFiles)));
+    }
+
+    private List<ChecksumCache.FileStat> snapshotArtifacts(Map<String, String> parameters, ArtifactPatternResolver.Result resolvedPatterns) {
+        List<String> patterns = getFilePatterns(parameters);
+        if (patterns.isEmpty()) {
+            return null;
+        }
+
+        // With fan-out the first pattern may match any number of files
+        boolean fanOut = "true".equals(parameters.get(Constants.FAN_OUT));
+        List<ChecksumCache.FileStat> snapshots = new ArrayList<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            List<File> matchedFiles = resolvedPatterns.getMatches(patterns.get(i));
+            if (matchedFiles.isEmpty() || (matchedFiles.size() > 1 && !(fanOut && i == 0))) {
+                return null;
+            }
+            for (File file : matchedFiles) {
+                try {
+                    snapshots.add(ChecksumCache.FileStat.of(file));
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        }
+        LOG.debug("Nexus eager upload check found " + snapshots.size() + " artifacts");
+        return snapshots;
+    }
+
+    private static List<String> getFilePatterns(Map<String, String> parameters) {
+        List<String> patterns = new ArrayList<>();
+        String artifactUploadSettingsSpec = parameters.get(Constants.ARTIFACT_UPLOAD_SETTINGS);
+        if (StringUtil.isEmptyOrSpaces(artifactUploadSettingsSpec)) {
+            return patterns;
+        }
+        ArtifactUploadSettings artifactUploadSettings = ArtifactUploadSettings.parse(artifactUploadSettingsSpec);
+        if (artifactUploadSettings == null) {
+            return patterns;
+        }
+        for (ArtifactUploadSettings.UploadParameter param : artifactUploadSettings.getUploadParameters()) {
+            if (param.isFile) {
+                patterns.add(param.value);
+            }
+        }
+        return patterns;
+    }
+
+    private static class Snapshot {
+        private final List<ChecksumCache.FileStat> files;
+        private final long taken = System.currentTimeMillis();
+
+        private Snapshot(List<ChecksumCache.FileStat> files) {
+            this.files = files;
+        }
+    }
+
+    private static class UploadThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private UploadThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.intellij.openapi.diagnostic.Logger;
+
+import org.jetbrains.annotations.NotNull;
+
+import jetbrains.buildServer.agent.BuildAgentConfiguration;
+import jetbrains.buildServer.log.Loggers;
+import jetbrains.buildServer.util.FileUtil;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+
+/**
+ * Durable queue of uploads that failed because Nexus could not be reached.  Each spooled upload is a directory under
+ * the agent work directory holding copies of its files and a properties file with the upload parameters.  The files
+ * are copied rather than linked, as later builds rewrite the same outputs in place; a copy whose content does not
+ * match the digest recorded for the build is not spooled.  A background drainer retries the uploads with exponential
+ * backoff, including the entries left over from before an agent restart.  Detached uploads use the same queue, but are
+ * uploaded as soon as they are spooled.
+ *
+ * Uploads that are rejected, or still fail after {@link Constants#SPOOL_MAX_AGE_DAYS} days, are given up: their files
+ * are deleted, but the entry is kept for as long again with the reason, as a record of what was not uploaded.
+ *
+ * The settings of the Nexus servers, and with them their credentials, are only kept in memory:  after an agent restart
+ * the spooled uploads of a server wait until a build using that server brings its settings again.
+ */
+public class UploadSpool {
+    private static final Logger LOG = Loggers.AGENT;
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private static final String SPOOL_DIRECTORY = "nexus-push-spool";
+    private static final String ENTRY_FILE = "upload.properties";
+    // Held server credentials in earlier versions, removed when found
+    private static final String SERVERS_FILE = "servers.properties";
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final long DRAIN_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final long INITIAL_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_DELAY = TimeUnit.HOURS.toMillis(1);
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(Constants.SPOOL_MAX_AGE_DAYS);
+    private static final int MAX_PARALLEL_UPLOADS = 4;
+
+    private final File spoolDirectory;
+    private final Map<String, NexusServerSettings> servers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Nexus spool drainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService uploadExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_UPLOADS, new SpoolThreadFactory());
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public UploadSpool(@NotNull BuildAgentConfiguration agentConfiguration) {
+        this.spoolDirectory = new File(agentConfiguration.getWorkDirectory(), SPOOL_DIRECTORY);
+        FileUtil.delete(new File(spoolDirectory, SERVERS_FILE));
+        drainer.scheduleWithFixedDelay(this::drain, 0, DRAIN_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes the settings of a Nexus server available for draining its spooled uploads.
+     */
+    public void registerServer(NexusServerSettings serverSettings) {
+        servers.put(serverSettings.getId(), serverSettings);
+    }
+
+    /**
+     * Whether a failed upload can be tried again later.  A component upload that failed after reaching Nexus may have
+     * been stored, so it is only retried if Nexus cannot have processed it.
+     */
+    static boolean isRetryable(IOException e, boolean putMode) {
+        if (e instanceof FileNotFoundException || e instanceof FileSystemException) {
+            return false;
+        }
+        if (!putMode) {
+            return RetryPolicy.isRefused(e);
+        }
+        return !(e instanceof NexusResponseException) || RetryPolicy.isRetryable(((NexusResponseException) e).getCode());
+    }
+
+    /**
+     * Spools an upload.  With PUT the parameter keys are the asset paths; otherwise the parameters are the fields of a
+     * components API upload.  An immediate upload is started right away, otherwise the first attempt is delayed.
+     * Returns the digests of the spooled files with the given algorithms, computed while copying them.
+     */
+    public Map<File, FileDigests> spool(long buildId, String serverId, String repositoryId, boolean putMode, List<Parameter> parameters,
+                                        List<String> algorithms, boolean immediate) throws IOException {
+        Map<File, FileDigests> digests = new HashMap<>();
+        String name = System.currentTimeMillis() + "-" + UUID.randomUUID();
+        File tempDirectory = new File(spoolDirectory, TEMP_PREFIX + name);
+        if (!tempDirectory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + tempDirectory);
+        }
+        try {
+            SpoolEntry entry = new SpoolEntry(new File(spoolDirectory, name));
+            entry.buildId = buildId;
+            entry.serverId = serverId;
+            entry.repositoryId = repositoryId;
+            entry.putMode = putMode;
+            entry.created = System.currentTimeMillis();
+            entry.nextAttempt = immediate ? entry.created : entry.created + INITIAL_DELAY;
+            for (int i = 0; i < parameters.size(); i++) {
+                Parameter param = parameters.get(i);
+                SpooledParameter spooledParameter;
+                if (param.file != null) {
+                    String fileName = "file." + i;
+                    File spooledFile = new File(tempDirectory, fileName);
+                    FileDigests fileDigests = copy(param.file, spooledFile, algorithms);
+                    if (param.sha1 != null && !param.sha1.equalsIgnoreCase(fileDigests.get(Checksums.SHA1))) {
+                        throw new IOException(param.file.getName() + " changed after its digests were computed");
+                    }
+                    digests.put(param.file, fileDigests);
+                    spooledParameter = new SpooledParameter(param.key, param.value, fileName, param.file.getName(), spooledFile.length(), spooledFile.lastModified());
+                } else {
+                    spooledParameter = new SpooledParameter(param.key, param.value, null, null, 0, 0);
+                }
+                entry.parameters.add(spooledParameter);
+            }
+            entry.save(tempDirectory);
+            Files.move(tempDirectory.toPath(), entry.directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            FileUtil.delete(tempDirectory);
+            throw e;
+        }
+        if (immediate) {
+            drainer.execute(this::drain);
+        }
+        return digests;
+    }
+
+    synchronized void drain() {
+        File[] directories = spoolDirectory.listFiles(file -> file.isDirectory() && !file.getName().startsWith(TEMP_PREFIX));
+        if (directories == null) {
+            return;
+        }
+        Arrays.sort(directories);
+        for (File directory : directories) {
+            try {
+                drain(directory);
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error draining Nexus upload spool entry " + directory.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Starts uploading a spooled entry if it is due and not being uploaded already.
+     */
+    private void drain(File directory) {
+        if (inProgress.contains(directory.getName())) {
+            return;
+        }
+        SpoolEntry entry = SpoolEntry.load(directory);
+        if (entry == null) {
+            LOG.warn("Discarding unreadable Nexus upload spool entry " + directory.getName());
+            FileUtil.delete(directory);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry.failure != null) {
+            if (now - entry.finished > MAX_AGE) {
+                FileUtil.delete(directory);
+            }
+            return;
+        }
+        if (now - entry.created > MAX_AGE) {
+            giveUp(entry, "still failing after " + entry.attempts + " attempts over " + Constants.SPOOL_MAX_AGE_DAYS + " days");
+            return;
+        }
+        if (now < entry.nextAttempt) {
+            return;
+        }
+        NexusServerSettings serverSettings = servers.get(entry.serverId);
+        if (serverSettings == null) {
+            LOG.debug("Spooled Nexus upload " + entry.describe() + " is waiting for a build using Nexus server " + entry.serverId);
+            return;
+        }
+
+        inProgress.add(directory.getName());
+        uploadExecutor.execute(() -> {
+            try {
+                attempt(entry, serverSettings);
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error uploading spooled Nexus upload " + entry.describe(), e);
+            } finally {
+                inProgress.remove(directory.getName());
+            }
+        });
+    }
+
+    private void attempt(SpoolEntry entry, NexusServerSettings serverSettings) {
+        File directory = entry.directory;
+        if (!entry.isUnchanged()) {
+            // Nothing else writes the copies, they were damaged or removed
+            giveUp(entry, "its files were modified after they were spooled");
+            return;
+        }
+        try {
+            upload(entry, new NexusClient(serverSettings, null));
+            LOG.info("Uploaded spooled Nexus upload " + entry.describe());
+            FileUtil.delete(directory);
+        } catch (IOException e) {
+            if (isRetryable(e, entry.putMode)) {
+                reschedule(entry, e);
+            } else {
+                giveUp(entry, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops retrying an upload, deleting its files but keeping the entry with the reason.
+     */
+    private void giveUp(SpoolEntry entry, String reason) {
+        LOG.warn("Giving up on spooled Nexus upload " + entry.describe() + ": " + reason);
+        for (SpooledParameter param : entry.parameters) {
+            if (param.fileName != null) {
+                FileUtil.delete(new File(entry.directory, param.fileName));
+            }
+        }
+        entry.failure = reason == null ? "unknown error" : reason;
+        entry.finished = System.currentTimeMillis();
+        try {
+            entry.save(entry.directory);
+        } catch (IOException e) {
+            LOG.warn("Cannot update Nexus upload spool entry " + entry.directory.getName() + ": " + e.getMessage());
+            FileUtil.delete(entry.directory);
+        }
+    }
+
+    private void upload(SpoolEntry entry, NexusClient client) throws IOException {
+        if (entry.putMode) {
+            // Remember each uploaded asset so a later attempt does not upload it again
+            while (!entry.parameters.isEmpty()) {
+                SpooledParameter param = entry.parameters.get(0);
+                client.putAsset(entry.repositoryId, param.key, RequestBody.create(new File(entry.directory, param.fileName), OCTET_STREAM));
+                entry.parameters.remove(0);
+                entry.save(entry.directory);
+            }
+        } else {
+            MultipartBody.Builder builder = new MultipartBody.Builder().setType(MultipartBody.FORM);
+            for (SpooledParameter param : entry.parameters) {
+                if (param.fileName != null) {
+                    builder.addFormDataPart(param.key, param.originalName, RequestBody.create(new File(entry.directory, param.fileName), OCTET_STREAM));
+                } else {
+                    builder.addFormDataPart(param.key, param.value);
+                }
+            }
+            client.uploadComponent(entry.repositoryId, builder.build());
+        }
+    }
+
+    private void reschedule(SpoolEntry entry, IOException cause) {
+        entry.attempts++;
+        long delay = Math.min(MAX_DELAY, INITIAL_DELAY << Math.min(entry.attempts, 20));
+        entry.nextAttempt = System.currentTimeMillis() + delay;
+        LOG.info("Spooled Nexus upload " + entry.describe() + " failed (" + cause.getMessage() + "), retrying in " + delay + "ms");
+        try {
+            entry.save(entry.directory);
+        } catch (IOException e) {
+            LOG.warn("Cannot update Nexus upload spool entry " + entry.directory.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies a file and returns the digests of the copied content, computed in the same read.  The algorithms must
+     * include SHA-1.
+     */
+    private static FileDigests copy(File source, File target, List<String> algorithms) throws IOException {
+        ChecksumCache.FileStat stat = ChecksumCache.FileStat.of(source);
+        MessageDigest[] digests = FileDigests.createDigests(algorithms);
+        byte[] buffer = new byte[FileDigests.BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                FileDigests.update(digests, buffer, read);
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!stat.equals(ChecksumCache.FileStat.of(source))) {
+            throw new IOException(source.getName() + " changed while it was spooled");
+        }
+        return FileDigests.fromDigests(algorithms, digests);
+    }
+
+    public static class Parameter {
+        private final String key;
+        private final String value;
+        private final File file;
+        // The SHA-1 of the file recorded for the build, null if it was not computed before spooling
+        private final String sha1;
+
+        public Parameter(String key, String value, File file, String sha1) {
+            this.key = key;
+            this.value = value;
+            this.file = file;
+            this.sha1 = sha1;
+        }
+    }
+
+    private static class SpooledParameter {
+        private final String key;
+        private final String value;
+        // The file in the entry directory, the name of the original file and the size and time of the file when spooled
+        private final String fileName;
+        private final String originalName;
+        private final long length;
+        private final long lastModified;
+
+        private SpooledParameter(String key, String value, String fileName, String originalName, long length, long lastModified) {
+            this.key = key;
+            this.value = value;
+            this.fileName = fileName;
+            this.originalName = originalName;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static class SpoolEntry {
+        private static SpoolEntry load(File directory) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(new File(directory, ENTRY_FILE).toPath())) {
+                properties.load(in);
+            } catch (IOException e) {
+                return null;
+            }
+            try {
+                SpoolEntry entry = new SpoolEntry(directory);
+                entry.buildId = Long.parseLong(properties.getProperty("buildId"));
+                entry.serverId = properties.getProperty("serverId");
+                entry.repositoryId = properties.getProperty("repositoryId");
+                entry.putMode = Boolean.parseBoolean(properties.getProperty("putMode"));
+                entry.created = Long.parseLong(properties.getProperty("created"));
+                entry.nextAttempt = Long.parseLong(properties.getProperty("nextAttempt"));
+                entry.attempts = Integer.parseInt(properties.getProperty("attempts"));
+                entry.failure = properties.getProperty("failure");
+                if (entry.failure != null) {
+                    entry.finished = Long.parseLong(properties.getProperty("finished"));
+                }
+                int count = Integer.parseInt(properties.getProperty("parameters"));
+                for (int i = 0; i < count; i++) {
+                    String prefix = "parameter." + i + ".";
+                    String fileName = properties.getProperty(prefix + "file");
+                    entry.parameters.add(new SpooledParameter(properties.getProperty(prefix + "key"), properties.getProperty(prefix + "value"),
+                        fileName, properties.getProperty(prefix + "name"),
+                        fileName == null ? 0 : Long.parseLong(properties.getProperty(prefix + "length")),
+                        fileName == null ? 0 : Long.parseLong(properties.getProperty(prefix + "lastModified"))));
+                }
+                if (entry.serverId == null || entry.repositoryId == null) {
+                    return null;
+                }
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private final File directory;
+        private final List<SpooledParameter> parameters = new ArrayList<>();
+        private long buildId;
+        private String serverId;
+        private String repositoryId;
+        private boolean putMode;
+        private long created;
+        private long nextAttempt;
+        private int attempts;
+        // Why and when the upload was given up, null while it is pending
+        private String failure;
+        private long finished;
+
+        private SpoolEntry(File directory) {
+            this.directory = directory;
+        }
+
+        private void save(File targetDirectory) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("buildId", String.valueOf(buildId));
+            properties.setProperty("serverId", serverId);
+            properties.setProperty("repositoryId", repositoryId);
+            properties.setProperty("putMode", String.valueOf(putMode));
+            properties.setProperty("created", String.valueOf(created));
+            properties.setProperty("nextAttempt", String.valueOf(nextAttempt));
+            properties.setProperty("attempts", String.valueOf(attempts));
+            if (failure != null) {
+                properties.setProperty("failure", failure);
+                properties.setProperty("finished", String.valueOf(finished));
+            }
+            properties.setProperty("parameters", String.valueOf(parameters.size()));
+            for (int i = 0; i < parameters.size(); i++) {
+                SpooledParameter param = parameters.get(i);
+                String prefix = "parameter." + i + ".";
+                properties.setProperty(prefix + "key", param.key);
+                if (param.value != null) {
+                    properties.setProperty(prefix + "value", param.value);
+                }
+                if (param.fileName != null) {
+                    properties.setProperty(prefix + "file", param.fileName);
+                    properties.setProperty(prefix + "name", param.originalName);
+                    properties.setProperty(prefix + "length", String.valueOf(param.length));
+                    properties.setProperty(prefix + "lastModified", String.valueOf(param.lastModified));
+                }
+            }
+
+            File tempFile = new File(targetDirectory, ENTRY_FILE + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+                properties.store(out, null);
+            }
+            Files.move(tempFile.toPath(), new File(targetDirectory, ENTRY_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private boolean isUnchanged() {
+            for (SpooledParameter param : parameters) {
+                if (param.fileName != null) {
+                    File file = new File(directory, param.fileName);
+                    if (!file.isFile() || file.length() != param.length || file.lastModified() != param.lastModified) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private String describe() {
+            return directory.getName() + " of build " + buildId + " to repository " + repositoryId + " on Nexus server " + serverId;
+        }
+    }
+
+    private static class SpoolThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Nexus spool upload " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
\ No newline at end of file
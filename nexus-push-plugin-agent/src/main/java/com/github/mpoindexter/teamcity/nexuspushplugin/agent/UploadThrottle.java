@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of requests in flight against each Nexus server.
+ */
+public class UploadThrottle {
+    private final Map<String, Semaphore> permits = new HashMap<>();
+
+    public <T> T execute(NexusServerSettings serverSettings, Callable<T> call) throws Exception {
+        Semaphore semaphore = getSemaphore(serverSettings);
+        semaphore.acquire();
+        try {
+            return call.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private synchronized Semaphore getSemaphore(NexusServerSettings serverSettings) {
+        Semaphore semaphore = permits.get(serverSettings.getId());
+        if (semaphore == null) {
+            semaphore = new Semaphore(serverSettings.getMaxConcurrentUploads(), true);
+            permits.put(serverSettings.getId(), semaphore);
+        }
+        return semaphore;
+    }
+}
\ No newline at end of file
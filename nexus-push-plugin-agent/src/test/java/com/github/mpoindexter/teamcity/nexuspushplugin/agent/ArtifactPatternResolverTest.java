@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jetbrains.buildServer.util.FileUtil;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class ArtifactPatternResolverTest {
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pattern-resolver").toFile();
+        create("app/target/app.jar");
+        create("app/target/app-sources.jar");
+        create("app/target/classes/App.class");
+        create("lib/target/lib.jar");
+        create("docs/readme.txt");
+        create("node_modules/dep/index.js");
+        create("node_modules/dep/dep.jar");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtil.delete(directory);
+    }
+
+    public void testMatchesAllPatternsInOneWalk() {
+        ArtifactPatternResolver.Result result = ArtifactPatternResolver.resolve(directory,
+            Arrays.asList("**/*.jar", "app/target/*.jar", "docs/", "*/target/lib.jar", "app/target/app-???????.jar"));
+        assertEquals(paths(result.getMatches("**/*.jar")),
+            Arrays.asList("app/target/app-sources.jar", "app/target/app.jar", "lib/target/lib.jar", "node_modules/dep/dep.jar"));
+        assertEquals(paths(result.getMatches("app/target/*.jar")), Arrays.asList("app/target/app-sources.jar", "app/target/app.jar"));
+        assertEquals(paths(result.getMatches("docs/")), Arrays.asList("docs/readme.txt"));
+        assertEquals(paths(result.getMatches("*/target/lib.jar")), Arrays.asList("lib/target/lib.jar"));
+        assertEquals(paths(result.getMatches("app/target/app-???????.jar")), Arrays.asList("app/target/app-sources.jar"));
+    }
+
+    public void testDoubleStarMatchesNoDirectory() {
+        ArtifactPatternResolver.Result result = ArtifactPatternResolver.resolve(directory, Arrays.asList("app/**/target/**/*.class", "docs/**/readme.txt"));
+        assertEquals(paths(result.getMatches("app/**/target/**/*.class")), Arrays.asList("app/target/classes/App.class"));
+        assertEquals(paths(result.getMatches("docs/**/readme.txt")), Arrays.asList("docs/readme.txt"));
+    }
+
+    public void testAcceptsBackslashesAndLeadingDot() {
+        ArtifactPatternResolver.Result result = ArtifactPatternResolver.resolve(directory, Arrays.asList("lib\\target\\*.jar", "./docs/*.txt"));
+        assertEquals(paths(result.getMatches("lib\\target\\*.jar")), Arrays.asList("lib/target/lib.jar"));
+        assertEquals(paths(result.getMatches("./docs/*.txt")), Arrays.asList("docs/readme.txt"));
+    }
+
+    public void testSkipsDirectoriesNoPatternCanMatchBelow() {
+        ArtifactPatternResolver.Result result = ArtifactPatternResolver.resolve(directory, Arrays.asList("app/target/*.jar"));
+        // Only the checkout directory, app and app/target are walked
+        assertTrue(result.describe().contains("walked 3 directories"), result.describe());
+        assertTrue(result.describe().contains("visited 2 files"), result.describe());
+    }
+
+    public void testUnknownPatternHasNoMatches() {
+        ArtifactPatternResolver.Result result = ArtifactPatternResolver.resolve(directory, Arrays.asList("*.jar"));
+        assertTrue(result.getMatches("*.jar").isEmpty());
+        assertTrue(result.getMatches("other/*.jar").isEmpty());
+    }
+
+    public void testFollowsSymbolicLinksToDirectories() throws IOException {
+        Files.createSymbolicLink(new File(directory, "linked").toPath(), new File(directory, "lib").toPath());
+        ArtifactPatternResolver.Result result = ArtifactPatternResolver.resolve(directory, Arrays.asList("linked/**/*.jar"));
+        assertEquals(paths(result.getMatches("linked/**/*.jar")), Arrays.asList("linked/target/lib.jar"));
+    }
+
+    private List<String> paths(List<File> files) {
+        List<String> paths = new ArrayList<>();
+        for (File file : files) {
+            paths.add(directory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+        }
+        return paths;
+    }
+
+    private void create(String path) throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), path.getBytes("UTF-8"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class AssetPathsTest {
+    public void testRawAssetPath() {
+        Map<String, String> values = values("raw.directory", "/releases/app/", "raw.asset1.filename", "app.zip");
+        assertEquals(AssetPaths.componentAssetPath("raw.asset1", values), "releases/app/app.zip");
+        assertEquals(AssetPaths.componentAssetPath("raw.asset1", values("raw.asset1.filename", "app.zip")), "app.zip");
+        assertNull(AssetPaths.componentAssetPath("raw.asset1", values("raw.directory", "releases")));
+    }
+
+    public void testYumAssetPath() {
+        assertEquals(AssetPaths.componentAssetPath("yum.asset", values("yum.directory", "el7", "yum.asset.filename", "app.rpm")), "el7/app.rpm");
+    }
+
+    public void testMavenAssetPath() {
+        Map<String, String> values = values("maven2.groupId", "com.example", "maven2.artifactId", "app", "maven2.version", "1.0",
+            "maven2.asset1.extension", "jar", "maven2.asset2.extension", "jar", "maven2.asset2.classifier", "sources");
+        assertEquals(AssetPaths.componentAssetPath("maven2.asset1", values), "com/example/app/1.0/app-1.0.jar");
+        assertEquals(AssetPaths.componentAssetPath("maven2.asset2", values), "com/example/app/1.0/app-1.0-sources.jar");
+    }
+
+    public void testMavenSnapshotHasNoKnownPath() {
+        Map<String, String> values = values("maven2.groupId", "com.example", "maven2.artifactId", "app", "maven2.version", "1.0-SNAPSHOT",
+            "maven2.asset1.extension", "jar");
+        assertNull(AssetPaths.componentAssetPath("maven2.asset1", values));
+        assertFalse(AssetPaths.hasContentCoordinates("maven2.asset1", values));
+    }
+
+    public void testContentCoordinates() {
+        assertTrue(AssetPaths.hasContentCoordinates("npm.asset", new HashMap<>()));
+        assertTrue(AssetPaths.hasContentCoordinates("maven2.asset1", values("maven2.asset1.extension", "pom")));
+        assertFalse(AssetPaths.hasContentCoordinates("raw.asset1", values("raw.directory", "releases")));
+        assertNull(AssetPaths.componentAssetPath("npm.asset", new HashMap<>()));
+    }
+
+    public void testNormalize() {
+        assertEquals(AssetPaths.normalize("//a/b"), "a/b");
+        assertEquals(AssetPaths.normalize("a/b"), "a/b");
+        assertNull(AssetPaths.normalize(null));
+    }
+
+    private static Map<String, String> values(String... keysAndValues) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return values;
+    }
+}
\ No newline at end of file
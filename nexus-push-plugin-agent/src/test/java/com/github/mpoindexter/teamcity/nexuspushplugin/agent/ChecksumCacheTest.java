@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jetbrains.buildServer.agent.BuildAgentConfiguration;
+import jetbrains.buildServer.util.FileUtil;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class ChecksumCacheTest {
+    private static final List<String> SHA1 = Collections.singletonList(Checksums.SHA1);
+    private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+    private File directory;
+    private File cacheDirectory;
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("checksum-cache").toFile();
+        cacheDirectory = new File(directory, "cache");
+        file = new File(directory, "artifact.txt");
+        write(file, "hello", 1000000000000L);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtil.delete(directory);
+    }
+
+    public void testComputesDigestsOfUncachedFile() throws IOException {
+        assertEquals(newCache().getDigests(file, SHA1).get(Checksums.SHA1), HELLO_SHA1);
+    }
+
+    public void testReturnsCachedDigestsOfUnchangedFile() throws IOException {
+        ChecksumCache cache = newCache();
+        cache.put(ChecksumCache.FileStat.of(file), digests(Checksums.SHA1, "cached"));
+        assertEquals(cache.getDigests(file, SHA1).get(Checksums.SHA1), "cached");
+    }
+
+    public void testRecomputesDigestsOfChangedFile() throws IOException {
+        ChecksumCache cache = newCache();
+        cache.put(ChecksumCache.FileStat.of(file), digests(Checksums.SHA1, "cached"));
+        write(file, "hello", 1000000001000L);
+        assertEquals(cache.getDigests(file, SHA1).get(Checksums.SHA1), HELLO_SHA1);
+    }
+
+    public void testRecomputesDigestsForOtherAlgorithms() throws IOException {
+        ChecksumCache cache = newCache();
+        cache.put(ChecksumCache.FileStat.of(file), digests(Checksums.SHA1, "cached"));
+        FileDigests digests = cache.getDigests(file, Arrays.asList(Checksums.SHA1, Checksums.MD5));
+        assertEquals(digests.get(Checksums.SHA1), HELLO_SHA1);
+        assertEquals(digests.get(Checksums.MD5), "5d41402abc4b2a76b9719d911017c592");
+    }
+
+    public void testIgnoresDigestsOfFileChangedBeforePut() throws IOException {
+        ChecksumCache cache = newCache();
+        ChecksumCache.FileStat stat = ChecksumCache.FileStat.of(file);
+        write(file, "hello world", 1000000001000L);
+        cache.put(stat, digests(Checksums.SHA1, "stale"));
+        assertEquals(cache.getDigests(file, SHA1).get(Checksums.SHA1), "2aae6c35c94fcfb415dbe95f408b9ce91ee846ed");
+    }
+
+    public void testFlushedEntriesAreLoadedByNextCache() throws IOException {
+        ChecksumCache cache = newCache();
+        cache.put(ChecksumCache.FileStat.of(file), digests(Checksums.SHA1, "cached"));
+        cache.flush();
+
+        assertEquals(newCache().getDigests(file, SHA1).get(Checksums.SHA1), "cached");
+    }
+
+    public void testComputesDigestsOfSeveralFilesInOrder() throws Exception {
+        File other = new File(directory, "other.txt");
+        write(other, "hello world", 1000000000000L);
+        List<FileDigests> digests = newCache().getDigests(Arrays.asList(file, other), SHA1);
+        assertEquals(digests.get(0).get(Checksums.SHA1), HELLO_SHA1);
+        assertEquals(digests.get(1).get(Checksums.SHA1), "2aae6c35c94fcfb415dbe95f408b9ce91ee846ed");
+    }
+
+    private ChecksumCache newCache() {
+        BuildAgentConfiguration configuration = (BuildAgentConfiguration) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { BuildAgentConfiguration.class }, (proxy, method, args) -> {
+                if ("getCacheDirectory".equals(method.getName())) {
+                    return new File(cacheDirectory, (String) args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        return new ChecksumCache(configuration);
+    }
+
+    private static FileDigests digests(String algorithm, String value) {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(algorithm, value);
+        return new FileDigests(values);
+    }
+
+    private static void write(File file, String content, long lastModified) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(lastModified);
+    }
+}
\ No newline at end of file
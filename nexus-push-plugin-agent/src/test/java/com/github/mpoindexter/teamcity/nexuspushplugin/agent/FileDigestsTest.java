@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jetbrains.buildServer.util.FileUtil;
+import okio.ByteString;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class FileDigestsTest {
+    private static final List<String> ALGORITHMS = Arrays.asList(Checksums.SHA1, Checksums.SHA256, Checksums.MD5);
+
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("file-digests").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtil.delete(directory);
+    }
+
+    public void testComputesAllDigestsInOneRead() throws Exception {
+        // Spans several buffers, with a partial one at the end
+        byte[] content = new byte[FileDigests.BUFFER_SIZE * 3 + 17];
+        new Random(42).nextBytes(content);
+        File file = new File(directory, "artifact.bin");
+        Files.write(file.toPath(), content);
+
+        FileDigests digests = FileDigests.compute(file, ALGORITHMS);
+        for (String algorithm : ALGORITHMS) {
+            assertEquals(digests.get(algorithm), ByteString.of(MessageDigest.getInstance(algorithm).digest(content)).hex(), algorithm);
+        }
+        assertEquals(new ArrayList<>(digests.asMap().keySet()), ALGORITHMS);
+    }
+
+    public void testComputesDigestsOfEmptyFile() throws IOException {
+        File file = new File(directory, "empty.bin");
+        Files.write(file.toPath(), new byte[0]);
+        assertEquals(FileDigests.compute(file, ALGORITHMS).get(Checksums.SHA1), "da39a3ee5e6b4b0d3255bfef95601890afd80709");
+    }
+
+    public void testContainsAll() throws IOException {
+        File file = new File(directory, "artifact.bin");
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        FileDigests digests = FileDigests.compute(file, Arrays.asList(Checksums.SHA1, Checksums.MD5));
+        assertTrue(digests.containsAll(Arrays.asList(Checksums.MD5, Checksums.SHA1)));
+        assertFalse(digests.containsAll(ALGORITHMS));
+    }
+}
\ No newline at end of file
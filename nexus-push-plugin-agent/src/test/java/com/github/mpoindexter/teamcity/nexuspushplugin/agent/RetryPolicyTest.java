@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test
+public class RetryPolicyTest {
+    private final BufferedBuildLog buildLog = new BufferedBuildLog();
+
+    public void testRetryableStatusCodes() {
+        for (int code : new int[] { 408, 429, 502, 503, 504 }) {
+            assertTrue(RetryPolicy.isRetryable(code), String.valueOf(code));
+        }
+        for (int code : new int[] { 400, 401, 403, 404, 500 }) {
+            assertFalse(RetryPolicy.isRetryable(code), String.valueOf(code));
+        }
+    }
+
+    public void testConnectFailures() {
+        assertTrue(RetryPolicy.isConnectFailure(new ConnectException("Connection refused")));
+        assertTrue(RetryPolicy.isConnectFailure(new SocketTimeoutException("connect timed out")));
+        assertFalse(RetryPolicy.isConnectFailure(new SocketTimeoutException("Read timed out")));
+        assertFalse(RetryPolicy.isConnectFailure(new IOException("unexpected end of stream")));
+    }
+
+    public void testRefusedFailures() {
+        assertTrue(RetryPolicy.isRefused(new NexusResponseException(503, null, "")));
+        assertTrue(RetryPolicy.isRefused(new NexusResponseException(429, "5", "")));
+        assertTrue(RetryPolicy.isRefused(new ConnectException("Connection refused")));
+        assertFalse(RetryPolicy.isRefused(new NexusResponseException(429, null, "")));
+        assertFalse(RetryPolicy.isRefused(new NexusResponseException(502, null, "")));
+        assertFalse(RetryPolicy.isRefused(new NexusResponseException(504, null, "")));
+        assertFalse(RetryPolicy.isRefused(new SocketTimeoutException("Read timed out")));
+    }
+
+    public void testRetriesTransientFailures() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String result = new RetryPolicy(3, 0, null).execute("Search", buildLog, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new NexusResponseException(502, null, "");
+            }
+            return "found";
+        });
+        assertEquals(result, "found");
+        assertEquals(calls.get(), 3);
+    }
+
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            new RetryPolicy(3, 0, null).execute("Search", buildLog, () -> {
+                calls.incrementAndGet();
+                throw new SocketTimeoutException("Read timed out");
+            });
+            fail("Expected the failure of the last attempt");
+        } catch (SocketTimeoutException e) {
+            assertEquals(calls.get(), 3);
+        }
+    }
+
+    public void testDoesNotRetryPermanentFailures() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            new RetryPolicy(3, 0, null).execute("Search", buildLog, () -> {
+                calls.incrementAndGet();
+                throw new NexusResponseException(401, null, "");
+            });
+            fail("Expected the failure");
+        } catch (NexusResponseException e) {
+            assertEquals(calls.get(), 1);
+        }
+    }
+
+    public void testNonIdempotentCallRetriesRefusedFailuresWithoutCheck() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        new RetryPolicy(3, 0, null).executeNonIdempotent("Upload", buildLog, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new NexusResponseException(503, null, "");
+            }
+            return null;
+        }, () -> {
+            fail("A refused call needs no check");
+            return null;
+        });
+        assertEquals(calls.get(), 2);
+    }
+
+    public void testNonIdempotentCallIsNotResentIfProcessed() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger checks = new AtomicInteger();
+        new RetryPolicy(3, 0, null).executeNonIdempotent("Upload", buildLog, () -> {
+            calls.incrementAndGet();
+            throw new NexusResponseException(504, null, "");
+        }, () -> {
+            checks.incrementAndGet();
+            return true;
+        });
+        assertEquals(calls.get(), 1);
+        assertEquals(checks.get(), 1);
+    }
+
+    public void testNonIdempotentCallIsResentIfNotProcessed() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        new RetryPolicy(3, 0, null).executeNonIdempotent("Upload", buildLog, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return null;
+        }, () -> false);
+        assertEquals(calls.get(), 2);
+    }
+
+    public void testNonIdempotentCallFailsIfCheckCannotTell() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            new RetryPolicy(3, 0, null).executeNonIdempotent("Upload", buildLog, () -> {
+                calls.incrementAndGet();
+                throw new NexusResponseException(502, null, "");
+            }, () -> null);
+            fail("Expected the failure");
+        } catch (NexusResponseException e) {
+            assertEquals(e.getCode(), 502);
+            assertEquals(calls.get(), 1);
+        }
+    }
+
+    public void testNonIdempotentCallFailsIfCheckFails() throws Exception {
+        try {
+            new RetryPolicy(3, 0, null).executeNonIdempotent("Upload", buildLog, () -> {
+                throw new NexusResponseException(502, null, "");
+            }, () -> {
+                throw new ConnectException("Connection refused");
+            });
+            fail("Expected the failure");
+        } catch (NexusResponseException e) {
+            assertEquals(e.getSuppressed().length, 1);
+        }
+    }
+
+    public void testBackoffDelayIsBoundedByExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, 100, null);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffDelay(1);
+            long third = policy.backoffDelay(3);
+            assertTrue(first >= 0 && first <= 100, String.valueOf(first));
+            assertTrue(third >= 0 && third <= 400, String.valueOf(third));
+        }
+        // Capped at two minutes however many attempts were made
+        assertTrue(policy.backoffDelay(40) <= 120000);
+    }
+
+    public void testRetryAfterDelay() {
+        RetryPolicy policy = new RetryPolicy(10, 100, null);
+        assertEquals(policy.retryAfterDelay("3", 1), 3000);
+        assertEquals(policy.retryAfterDelay("3600", 1), 120000);
+
+        String date = ZonedDateTime.now().plusSeconds(30).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        long delay = policy.retryAfterDelay(date, 1);
+        assertTrue(delay > 25000 && delay <= 30000, String.valueOf(delay));
+
+        long fallback = policy.retryAfterDelay("soon", 1);
+        assertTrue(fallback >= 0 && fallback <= 100, String.valueOf(fallback));
+    }
+}
\ No newline at end of file
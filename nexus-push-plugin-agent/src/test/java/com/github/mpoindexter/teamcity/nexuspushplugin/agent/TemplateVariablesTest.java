@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.agent;
+
+import java.io.File;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+@Test
+public class TemplateVariablesTest {
+    private static final File BASE_DIRECTORY = new File("checkout");
+
+    public void testExpandsFileVariables() {
+        TemplateVariables variables = new TemplateVariables(BASE_DIRECTORY, new File(BASE_DIRECTORY, "target/libs/app-1.0.tar.gz"));
+        assertEquals(variables.expand("${fileName}"), "app-1.0.tar.gz");
+        assertEquals(variables.expand("${baseName}"), "app-1.0.tar");
+        assertEquals(variables.expand("${extension}"), "gz");
+        assertEquals(variables.expand("${relativePath}"), "target/libs/app-1.0.tar.gz");
+        assertEquals(variables.expand("${relativeDir}"), "target/libs");
+        assertEquals(variables.getRelativePath(), "target/libs/app-1.0.tar.gz");
+    }
+
+    public void testExpandsSeveralVariablesInOneTemplate() {
+        TemplateVariables variables = new TemplateVariables(BASE_DIRECTORY, new File(BASE_DIRECTORY, "dist/app.zip"));
+        assertEquals(variables.expand("releases/${relativeDir}/${baseName}-latest.${extension}"), "releases/dist/app-latest.zip");
+    }
+
+    public void testFileWithoutExtensionOrDirectory() {
+        TemplateVariables variables = new TemplateVariables(BASE_DIRECTORY, new File(BASE_DIRECTORY, "README"));
+        assertEquals(variables.expand("${baseName}|${extension}|${relativeDir}"), "README||");
+    }
+
+    public void testDotFileHasNoExtension() {
+        TemplateVariables variables = new TemplateVariables(BASE_DIRECTORY, new File(BASE_DIRECTORY, ".npmrc"));
+        assertEquals(variables.expand("${baseName}|${extension}"), ".npmrc|");
+    }
+
+    public void testLeavesUnknownVariablesAndPlainTextAlone() {
+        TemplateVariables variables = new TemplateVariables(BASE_DIRECTORY, new File(BASE_DIRECTORY, "app.jar"));
+        assertEquals(variables.expand("${version}/${fileName}"), "${version}/app.jar");
+        assertEquals(variables.expand("plain"), "plain");
+        assertNull(variables.expand(null));
+    }
+
+    public void testValuesAreNotTreatedAsReplacementPatterns() {
+        TemplateVariables variables = new TemplateVariables(BASE_DIRECTORY, new File(BASE_DIRECTORY, "a$1-${x}.jar"));
+        assertEquals(variables.expand("${fileName}"), "a$1-${x}.jar");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single artifact element of nexus-metadata.xml.  Attributes are kept in document order, and attributes this version
+ * does not know about are preserved.
+ */
+public class ArtifactMetadata {
+    public static final String PATH = "path";
+    public static final String NAME = "name";
+    public static final String SERVER_ID = "serverId";
+    public static final String SERVER_URL = "serverUrl";
+    public static final String REPOSITORY = "repository";
+    public static final String ASSET_PATH = "assetPath";
+    public static final String COMPONENT_ID = "componentId";
+    public static final String DOWNLOAD_URL = "downloadUrl";
+    public static final String REUSED = "reused";
+    public static final String DELETE_ARTIFACT_ON_CLEANUP = "deleteArtifactOnCleanup";
+    public static final String SPOOLED = "spooled";
+    public static final String DETACHED = "detached";
+
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * Sets an attribute, or removes it if the value is null.
+     */
+    public ArtifactMetadata setAttribute(String name, String value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+        return this;
+    }
+
+    public Map<String, String> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    public String getPath() {
+        return attributes.get(PATH);
+    }
+
+    public String getName() {
+        return attributes.get(NAME);
+    }
+
+    /**
+     * Returns the digest for an algorithm such as {@link Checksums#SHA1}, or null if it was not recorded.
+     */
+    public String getChecksum(String algorithm) {
+        return attributes.get(Checksums.attributeName(algorithm));
+    }
+
+    public String getSha1() {
+        return getChecksum(Checksums.SHA1);
+    }
+
+    /**
+     * Returns the algorithm of the digest to locate the artifact by in Nexus: the first recorded one of
+     * {@link Checksums#SUPPORTED_ALGORITHMS}, or null if none was recorded.
+     */
+    public String getSearchAlgorithm() {
+        for (String algorithm : Checksums.SUPPORTED_ALGORITHMS) {
+            String checksum = getChecksum(algorithm);
+            if (checksum != null && !checksum.trim().isEmpty()) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    public String getServerId() {
+        return attributes.get(SERVER_ID);
+    }
+
+    public String getServerUrl() {
+        return attributes.get(SERVER_URL);
+    }
+
+    public String getRepository() {
+        return attributes.get(REPOSITORY);
+    }
+
+    /**
+     * Returns the path of the artifact's asset in the repository, or null if it was not known when it was recorded.
+     */
+    public String getAssetPath() {
+        return attributes.get(ASSET_PATH);
+    }
+
+    public String getComponentId() {
+        return attributes.get(COMPONENT_ID);
+    }
+
+    public String getDownloadUrl() {
+        return attributes.get(DOWNLOAD_URL);
+    }
+
+    public boolean isReused() {
+        return "true".equals(attributes.get(REUSED));
+    }
+
+    /**
+     * Whether the artifact was left in the agent's upload spool because Nexus could not be reached during the build.
+     */
+    public boolean isSpooled() {
+        return "true".equals(attributes.get(SPOOLED));
+    }
+
+    /**
+     * Whether the artifact was handed to the agent's upload spool to be uploaded after the build finished.
+     */
+    public boolean isDetached() {
+        return "true".equals(attributes.get(DETACHED));
+    }
+
+    public boolean isDeleteArtifactOnCleanup() {
+        return "true".equals(attributes.get(DELETE_ARTIFACT_ON_CLEANUP));
+    }
+}
\ No newline at end of file
@@ -9,8 +9,12 @@ package com.github.mpoindexter.teamcity.nexuspushplugin;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ArtifactUploadSettings {
+    // Components API asset parameters, e.g. raw.asset1 or maven2.asset2.classifier
+    private static final Pattern ASSET_PARAMETER = Pattern.compile("^([^.]+)\\.asset(\\d+)(\\..+)?$");
 
     public static ArtifactUploadSettings parse(String settings) {
         String[] lines = settings.split("\\r?\\n");
@@ -34,6 +38,33 @@ public class ArtifactUploadSettings {
         return new ArtifactUploadSettings(uploadParameters);
     }
 
+    /**
+     * Returns the asset number of a components API parameter such as raw.asset2 or raw.asset2.filename, or -1 for
+     * parameters that apply to the whole component.
+     */
+    public static int getAssetNumber(String key) {
+        Matcher matcher = ASSET_PARAMETER.matcher(key);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(matcher.group(2));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the asset parameter with its asset number replaced, e.g. raw.asset1.filename becomes raw.asset3.filename.
+     */
+    public static String renumberAsset(String key, int assetNumber) {
+        Matcher matcher = ASSET_PARAMETER.matcher(key);
+        if (!matcher.matches()) {
+            return key;
+        }
+        return matcher.group(1) + ".asset" + assetNumber + (matcher.group(3) == null ? "" : matcher.group(3));
+    }
+
     private final List<UploadParameter> uploadParameters;
 
     private ArtifactUploadSettings(List<UploadParameter> uploadParameters) {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class Checksums {
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+    public static final String MD5 = "MD5";
+
+    public static final List<String> SUPPORTED_ALGORITHMS = Arrays.asList(SHA1, SHA256, MD5);
+
+    /**
+     * Parses a comma separated list of checksum algorithms.  SHA-1 is always included since it is used to
+     * locate components in Nexus.  Returns null if an unsupported algorithm is specified.
+     */
+    public static List<String> parseAlgorithms(String spec) {
+        List<String> algorithms = new ArrayList<>();
+        algorithms.add(SHA1);
+        if (spec == null) {
+            return algorithms;
+        }
+        for (String name : spec.split(",")) {
+            String algorithm = normalize(name);
+            if (algorithm.isEmpty()) {
+                continue;
+            }
+            if (!SUPPORTED_ALGORITHMS.contains(algorithm)) {
+                return null;
+            }
+            if (!algorithms.contains(algorithm)) {
+                algorithms.add(algorithm);
+            }
+        }
+        return algorithms;
+    }
+
+    /**
+     * The name of the nexus-metadata.xml attribute holding the digest, which is also the name of the Nexus
+     * search parameter for it, e.g. sha1 for SHA-1.
+     */
+    public static String attributeName(String algorithm) {
+        return algorithm.replace("-", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String normalize(String name) {
+        String algorithm = name.trim().toUpperCase(Locale.ENGLISH);
+        for (String supported : SUPPORTED_ALGORITHMS) {
+            if (attributeName(supported).equals(attributeName(algorithm))) {
+                return supported;
+            }
+        }
+        return algorithm;
+    }
+}
\ No newline at end of file
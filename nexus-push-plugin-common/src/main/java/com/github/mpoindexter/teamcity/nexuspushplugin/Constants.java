@@ -13,6 +13,20 @@ public class Constants {
     public final static String ARTIFACT_UPLOAD_SETTINGS = "uploadSettings";
     public final static String DELETE_ARTIFACT_ON_CLEANUP = "deleteOnCleanup";
     public final static String ARTIFACT_UPLOAD_MANDATORY = "artifactUploadMandatory";
+    public final static String ADDITIONAL_CHECKSUMS = "additionalChecksums";
+    public final static String SKIP_EXISTING_ARTIFACTS = "skipExistingArtifacts";
+    public final static String UPLOAD_MAX_ATTEMPTS = "uploadMaxAttempts";
+    public final static String UPLOAD_EAGERLY = "uploadEagerly";
+    public final static String UPLOAD_MODE = "uploadMode";
+    public final static String FAN_OUT = "fanOut";
+    public final static String BATCH_ASSETS = "batchAssets";
+    public final static String BATCH_MAX_ASSETS = "batchMaxAssets";
+    public final static String BATCH_MAX_SIZE = "batchMaxSize";
+    public final static String SPOOL_FAILED_UPLOADS = "spoolFailedUploads";
+    public final static String UPLOAD_DETACHED = "uploadDetached";
+
+    public final static String UPLOAD_MODE_COMPONENTS = "components";
+    public final static String UPLOAD_MODE_PUT = "put";
 
     public final static String NEXUS_BUILD_METADATA_FILE = "nexus-metadata.xml";
     public final static String NEXUS_BUILD_METADATA_PATH = ".teamcity/" + NEXUS_BUILD_METADATA_FILE;
@@ -22,4 +36,18 @@ public class Constants {
     public final static String AGENT_SERVER_URL_PARAM_PREFIX = "secure:nexuspush.serverUrl.";
     public final static String AGENT_SERVER_USERNAME_PARAM_PREFIX = "secure:nexuspush.serverUsername.";
     public final static String AGENT_SERVER_PASSWORD_PARAM_PREFIX = "secure:nexuspush.serverPassword.";
+    public final static String AGENT_SERVER_MAX_CONCURRENT_UPLOADS_PARAM_PREFIX = "nexuspush.serverMaxConcurrentUploads.";
+    public final static String AGENT_SERVER_RETRY_MAX_ATTEMPTS_PARAM_PREFIX = "nexuspush.serverRetryMaxAttempts.";
+    public final static String AGENT_SERVER_RETRY_INITIAL_DELAY_PARAM_PREFIX = "nexuspush.serverRetryInitialDelay.";
+    // Followed by the HttpClientSettings name, a dot and the server id
+    public final static String AGENT_SERVER_HTTP_PARAM_PREFIX = "nexuspush.serverHttp.";
+
+    public final static int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+    public final static int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+    public final static int DEFAULT_RETRY_INITIAL_DELAY = 1000;
+    public final static int DEFAULT_BATCH_MAX_ASSETS = 50;
+    // How long the agent keeps retrying a spooled upload
+    public final static int SPOOL_MAX_AGE_DAYS = 7;
+    // In MB
+    public final static int DEFAULT_BATCH_MAX_SIZE = 512;
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Limits the number of requests a client runs against each host at the same time.  The dispatcher's per host limit
+ * only applies to asynchronous calls, and all calls to Nexus are synchronous.  A request holds its permit until its
+ * response headers are received, which covers sending an upload's body.
+ */
+class HostConcurrencyLimiter implements Interceptor {
+    private final int maxRequestsPerHost;
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    HostConcurrencyLimiter(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        HttpUrl url = chain.request().url();
+        Semaphore semaphore = permits.computeIfAbsent(url.host() + ":" + url.port(), host -> new Semaphore(maxRequestsPerHost, true));
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request to " + url.host());
+        }
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            semaphore.release();
+        }
+    }
+}
\ No newline at end of file
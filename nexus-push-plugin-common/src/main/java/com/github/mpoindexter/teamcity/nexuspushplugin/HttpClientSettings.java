@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * HTTP client tuning for a Nexus server.  The same names are used for the attributes in the server settings file, the
+ * fields of the settings form and the agent parameters, so the settings can be read from and written to any of them.
+ */
+public class HttpClientSettings {
+    public static final String CONNECT_TIMEOUT = "connectTimeout";
+    public static final String READ_TIMEOUT = "readTimeout";
+    public static final String WRITE_TIMEOUT = "writeTimeout";
+    public static final String MAX_IDLE_CONNECTIONS = "maxIdleConnections";
+    public static final String KEEP_ALIVE = "keepAlive";
+    public static final String MAX_REQUESTS_PER_HOST = "maxRequestsPerHost";
+    public static final String HTTP2 = "http2";
+    public static final String PROXY_HOST = "proxyHost";
+    public static final String PROXY_PORT = "proxyPort";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 60;
+    public static final int DEFAULT_READ_TIMEOUT = 60;
+    public static final int DEFAULT_WRITE_TIMEOUT = 60;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final int DEFAULT_KEEP_ALIVE = 300;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+    public static final int MAX_PORT = 65535;
+
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+    private int writeTimeout = DEFAULT_WRITE_TIMEOUT;
+    private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+    private int keepAlive = DEFAULT_KEEP_ALIVE;
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private boolean http2 = true;
+    private String proxyHost;
+    private int proxyPort;
+
+    /**
+     * Reads the settings by name, using the defaults for missing or invalid values.
+     */
+    public static HttpClientSettings read(Function<String, String> values) {
+        HttpClientSettings settings = new HttpClientSettings();
+        settings.connectTimeout = parseInt(values.apply(CONNECT_TIMEOUT), 0, DEFAULT_CONNECT_TIMEOUT);
+        settings.readTimeout = parseInt(values.apply(READ_TIMEOUT), 0, DEFAULT_READ_TIMEOUT);
+        settings.writeTimeout = parseInt(values.apply(WRITE_TIMEOUT), 0, DEFAULT_WRITE_TIMEOUT);
+        settings.maxIdleConnections = parseInt(values.apply(MAX_IDLE_CONNECTIONS), 0, DEFAULT_MAX_IDLE_CONNECTIONS);
+        settings.keepAlive = parseInt(values.apply(KEEP_ALIVE), 1, DEFAULT_KEEP_ALIVE);
+        settings.maxRequestsPerHost = parseInt(values.apply(MAX_REQUESTS_PER_HOST), 1, DEFAULT_MAX_REQUESTS_PER_HOST);
+        settings.http2 = !"false".equals(values.apply(HTTP2));
+        String proxyHost = values.apply(PROXY_HOST);
+        settings.proxyHost = proxyHost == null || proxyHost.trim().isEmpty() ? null : proxyHost.trim();
+        settings.proxyPort = parseInt(values.apply(PROXY_PORT), 1, 0);
+        if (settings.proxyPort > MAX_PORT) {
+            settings.proxyPort = 0;
+        }
+        return settings;
+    }
+
+    private static int parseInt(String value, int minimum, int defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            return result >= minimum ? result : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the settings by name.  The proxy settings are omitted when no proxy is configured.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put(CONNECT_TIMEOUT, String.valueOf(connectTimeout));
+        values.put(READ_TIMEOUT, String.valueOf(readTimeout));
+        values.put(WRITE_TIMEOUT, String.valueOf(writeTimeout));
+        values.put(MAX_IDLE_CONNECTIONS, String.valueOf(maxIdleConnections));
+        values.put(KEEP_ALIVE, String.valueOf(keepAlive));
+        values.put(MAX_REQUESTS_PER_HOST, String.valueOf(maxRequestsPerHost));
+        values.put(HTTP2, String.valueOf(http2));
+        if (hasProxy()) {
+            values.put(PROXY_HOST, proxyHost);
+            values.put(PROXY_PORT, String.valueOf(proxyPort));
+        }
+        return values;
+    }
+
+    public boolean hasProxy() {
+        return proxyHost != null && proxyPort > 0;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public int getKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public String getProxyHost() {
+        return proxyHost;
+    }
+
+    public int getProxyPort() {
+        return proxyPort;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HttpClientSettings && toMap().equals(((HttpClientSettings) o).toMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return toMap().hashCode();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Builds HTTP clients for Nexus servers from their {@link HttpClientSettings}, the same way on the agent and the
+ * server.
+ */
+public class HttpClients {
+    public static OkHttpClient.Builder newBuilder(HttpClientSettings settings) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .connectTimeout(settings.getConnectTimeout(), TimeUnit.SECONDS)
+            .readTimeout(settings.getReadTimeout(), TimeUnit.SECONDS)
+            .writeTimeout(settings.getWriteTimeout(), TimeUnit.SECONDS)
+            .connectionPool(new ConnectionPool(settings.getMaxIdleConnections(), settings.getKeepAlive(), TimeUnit.SECONDS))
+            .addInterceptor(new HostConcurrencyLimiter(settings.getMaxRequestsPerHost()));
+        if (!settings.isHttp2()) {
+            builder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+        if (settings.hasProxy()) {
+            builder.proxy(new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(settings.getProxyHost(), settings.getProxyPort())));
+        }
+        return builder;
+    }
+
+    /**
+     * Releases the threads and connections of a client that is no longer used.
+     */
+    public static void close(OkHttpClient client) {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads nexus-metadata.xml one artifact at a time.  Only artifact elements directly below the root are returned;
+ * anything else in the document is skipped.
+ */
+public class MetadataReader implements Closeable {
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final InputStream in;
+    private final XMLStreamReader reader;
+    private int depth;
+
+    public MetadataReader(File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    public MetadataReader(InputStream in) throws IOException {
+        this.in = in;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            in.close();
+            throw new IOException("Cannot read Nexus metadata: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the next artifact, or null at the end of the document.
+     */
+    public ArtifactMetadata next() throws IOException {
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2 && "artifact".equals(reader.getLocalName())) {
+                        ArtifactMetadata artifact = new ArtifactMetadata();
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            artifact.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                        }
+                        return artifact;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read Nexus metadata: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // the stream is closed below
+        } finally {
+            in.close();
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
\ No newline at end of file
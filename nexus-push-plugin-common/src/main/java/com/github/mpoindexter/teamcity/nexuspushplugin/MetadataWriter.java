@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes nexus-metadata.xml one artifact at a time, so the whole document never has to be held in memory.  Tabs and
+ * line breaks in attribute values are written as character references, as a parser would otherwise read them as
+ * spaces.
+ */
+public class MetadataWriter implements Closeable {
+    private final Writer writer;
+
+    public MetadataWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    public MetadataWriter(OutputStream out) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<artifacts>");
+        } catch (IOException e) {
+            writer.close();
+            throw new IOException("Cannot write Nexus metadata: " + e.getMessage(), e);
+        }
+    }
+
+    public void write(ArtifactMetadata artifact) throws IOException {
+        writer.write("\n  <artifact");
+        for (Map.Entry<String, String> attribute : artifact.getAttributes().entrySet()) {
+            writer.write(' ');
+            writer.write(attribute.getKey());
+            writer.write("=\"");
+            writeEscaped(attribute.getValue());
+            writer.write('"');
+        }
+        writer.write(" />");
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                case '"':
+                    writer.write("&quot;");
+                    break;
+                case '\t':
+                    writer.write("&#9;");
+                    break;
+                case '\n':
+                    writer.write("&#10;");
+                    break;
+                case '\r':
+                    writer.write("&#13;");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.write("\n</artifacts>\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
\ No newline at end of file
@@ -7,9 +7,12 @@
 
 package com.github.mpoindexter.teamcity.nexuspushplugin.nexus;
 
+import java.util.Map;
+
 public class AssetBean {
     private String downloadUrl;
     private String path;
+    private Map<String, String> checksum;
 
     public String getDownloadUrl() {
         return downloadUrl;
@@ -26,4 +29,15 @@ public class AssetBean {
     public void setPath(String path) {
         this.path = path;
     }
+
+    /**
+     * @return the digests of the asset keyed by search parameter name, e.g. sha1
+     */
+    public Map<String, String> getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(Map<String, String> checksum) {
+        this.checksum = checksum;
+    }
 }
\ No newline at end of file
@@ -9,7 +9,13 @@ package com.github.mpoindexter.teamcity.nexuspushplugin.nexus;
 
 import java.util.List;
 
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
 public class ComponentBean {
+    private static Moshi moshi = new Moshi.Builder().build();
+    public static final JsonAdapter<ComponentBean> ADAPTER = moshi.adapter(ComponentBean.class);
+
     private String id;
     private String format;
     private String group;
@@ -101,4 +107,44 @@ public class ComponentBean {
     public void setAssets(List<AssetBean> assets) {
         this.assets = assets;
     }
+
+    /**
+     * Returns the asset with the given digest, e.g. sha1, or null if the component has no such asset.
+     */
+    public AssetBean findAsset(String checksumName, String checksum) {
+        if (assets == null || checksum == null) {
+            return null;
+        }
+        for (AssetBean asset : assets) {
+            if (asset.getChecksum() != null && checksum.equalsIgnoreCase(asset.getChecksum().get(checksumName))) {
+                return asset;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the asset with the given digest at the given path, ignoring leading slashes, or null if the component has
+     * no such asset.
+     */
+    public AssetBean findAsset(String checksumName, String checksum, String path) {
+        if (assets == null || checksum == null || path == null) {
+            return null;
+        }
+        for (AssetBean asset : assets) {
+            if (asset.getChecksum() != null && checksum.equalsIgnoreCase(asset.getChecksum().get(checksumName))
+                && asset.getPath() != null && stripLeadingSlashes(asset.getPath()).equals(stripLeadingSlashes(path))) {
+                return asset;
+            }
+        }
+        return null;
+    }
+
+    private static String stripLeadingSlashes(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        return path.substring(start);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+@Test
+public class MetadataReaderWriterTest {
+    public void testRoundTrip() throws IOException {
+        ArtifactMetadata first = new ArtifactMetadata()
+            .setAttribute(ArtifactMetadata.PATH, "target/app.jar")
+            .setAttribute(ArtifactMetadata.NAME, "app.jar")
+            .setAttribute(ArtifactMetadata.SERVER_ID, "nexus")
+            .setAttribute(ArtifactMetadata.REPOSITORY, "releases")
+            .setAttribute("sha1", "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d")
+            .setAttribute(ArtifactMetadata.DELETE_ARTIFACT_ON_CLEANUP, "true");
+        ArtifactMetadata second = new ArtifactMetadata()
+            .setAttribute(ArtifactMetadata.PATH, "docs/<notes> & \"quotes\".txt")
+            .setAttribute(ArtifactMetadata.NAME, "notes\t\r\n\u00fc.txt");
+
+        List<ArtifactMetadata> read = read(write(first, second));
+        assertEquals(read.size(), 2);
+        assertEquals(read.get(0).getAttributes(), first.getAttributes());
+        assertEquals(read.get(1).getAttributes(), second.getAttributes());
+    }
+
+    public void testKeepsAttributeOrder() throws IOException {
+        ArtifactMetadata artifact = new ArtifactMetadata()
+            .setAttribute("z", "1")
+            .setAttribute("a", "2")
+            .setAttribute("m", "3");
+        List<ArtifactMetadata> read = read(write(artifact));
+        assertEquals(new ArrayList<>(read.get(0).getAttributes().keySet()), Arrays.asList("z", "a", "m"));
+    }
+
+    public void testEmptyDocument() throws IOException {
+        assertEquals(read(write()).size(), 0);
+    }
+
+    public void testSkipsOtherElements() throws IOException {
+        String xml = "<?xml version=\"1.0\"?><artifacts><other name=\"x\"><artifact path=\"nested\"/></other>"
+            + "<artifact path=\"a\"><extra/></artifact><artifact path=\"b\"/></artifacts>";
+        List<ArtifactMetadata> read = read(xml.getBytes(StandardCharsets.UTF_8));
+        assertEquals(read.size(), 2);
+        assertEquals(read.get(0).getPath(), "a");
+        assertEquals(read.get(1).getPath(), "b");
+    }
+
+    public void testDoesNotResolveExternalEntities() throws IOException {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE artifacts [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>"
+            + "<artifacts><artifact path=\"a\"/></artifacts>";
+        try (MetadataReader reader = new MetadataReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(reader.next().getPath(), "a");
+            assertNull(reader.next());
+        }
+    }
+
+    private static byte[] write(ArtifactMetadata... artifacts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MetadataWriter writer = new MetadataWriter(out)) {
+            for (ArtifactMetadata artifact : artifacts) {
+                writer.write(artifact);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<ArtifactMetadata> read(byte[] xml) throws IOException {
+        List<ArtifactMetadata> artifacts = new ArrayList<>();
+        try (MetadataReader reader = new MetadataReader(new ByteArrayInputStream(xml))) {
+            ArtifactMetadata artifact;
+            while ((artifact = reader.next()) != null) {
+                artifacts.add(artifact);
+            }
+        }
+        return artifacts;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import jetbrains.buildServer.log.Loggers;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.artifacts.ArtifactsGuard;
+
+/**
+ * Cache of the parsed Nexus metadata of finished builds, by build ID, so showing a build does not read its metadata
+ * from disk every time.  Builds without metadata are cached as well.  The metadata of a build is read when it
+ * finishes or when it is first needed, and removed when its artifacts change or it is cleaned up or deleted.  The
+ * number of cached artifacts is bounded; the least recently used builds are evicted first.
+ *
+ * Running builds are not cached, their metadata can still change.  The metadata of finished builds is read on a
+ * background thread, once for the cache and the listeners that index it.  Metadata that was read while a build was
+ * removed from the cache is not cached, and neither is the metadata of builds that are being cleaned up, so it cannot
+ * be cached again just before their artifacts are deleted.
+ */
+public class BuildMetadataCache {
+    private static final Logger LOG = Loggers.SERVER;
+
+    private static final int MAX_ARTIFACTS = 20000;
+    private static final int MAX_CLEANED_UP = 10000;
+
+    private final ArtifactsGuard artifactGuard;
+    private final Map<Long, List<ArtifactMetadata>> builds = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedArtifacts;
+    // Guarded by builds, like the following
+    private long removals;
+    private final Set<Long> cleanedUp = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_CLEANED_UP;
+        }
+    });
+    private final List<BiConsumer<SBuild, List<ArtifactMetadata>>> finishedBuildListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Nexus build metadata loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BuildMetadataCache(@NotNull ArtifactsGuard artifactGuard, @NotNull SBuildServer server) {
+        this.artifactGuard = artifactGuard;
+
+        server.addListener(new BuildServerAdapter() {
+            @Override
+            public void buildFinished(SRunningBuild build) {
+                try {
+                    loader.execute(() -> buildFinished(build));
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                }
+            }
+
+            @Override
+            public void buildArtifactsChanged(SBuild build) {
+                remove(build.getBuildId());
+            }
+
+            @Override
+            public void buildRemoved(SFinishedBuild build) {
+                synchronized (builds) {
+                    remove(build.getBuildId());
+                    cleanedUp.remove(build.getBuildId());
+                }
+            }
+
+            @Override
+            public void serverShutdown() {
+                loader.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * Adds a listener that is given the Nexus metadata of each finished build, or null if it has none.  Listeners are
+     * called on a background thread, one build at a time.
+     */
+    public void addFinishedBuildListener(BiConsumer<SBuild, List<ArtifactMetadata>> listener) {
+        finishedBuildListeners.add(listener);
+    }
+
+    private void buildFinished(SBuild build) {
+        List<ArtifactMetadata> artifacts = getMetadata(build);
+        for (BiConsumer<SBuild, List<ArtifactMetadata>> listener : finishedBuildListeners) {
+            try {
+                listener.accept(build, artifacts);
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error processing Nexus metadata of build " + build.getBuildId(), e);
+            }
+        }
+    }
+
+    /**
+     * @return whether the build has Nexus metadata
+     */
+    public boolean hasMetadata(SBuild build) {
+        if (build.isFinished()) {
+            return getMetadata(build) != null;
+        }
+        File artifactsDir = build.getArtifactsDirectory();
+        artifactGuard.lockReading(artifactsDir);
+        try {
+            return new File(artifactsDir, Constants.NEXUS_BUILD_METADATA_PATH).exists();
+        } finally {
+            artifactGuard.unlockReading(artifactsDir);
+        }
+    }
+
+    /**
+     * Returns the Nexus metadata of a build, or null if it has none.  The returned list must not be modified.
+     */
+    @Nullable
+    public List<ArtifactMetadata> getMetadata(SBuild build) {
+        long buildId = build.getBuildId();
+        long removalCount;
+        synchronized (builds) {
+            if (builds.containsKey(buildId)) {
+                return builds.get(buildId);
+            }
+            removalCount = removals;
+        }
+
+        Metadata metadata = read(build);
+        if (metadata.complete && build.isFinished()) {
+            put(buildId, metadata.artifacts, removalCount);
+        }
+        return metadata.artifacts;
+    }
+
+    /**
+     * Reads the Nexus metadata of a build without caching it, e.g. to go through many builds once.  Returns null if
+     * the build has none.
+     */
+    @Nullable
+    public List<ArtifactMetadata> readMetadata(SBuild build) {
+        return read(build).artifacts;
+    }
+
+    private Metadata read(SBuild build) {
+        List<ArtifactMetadata> artifacts = null;
+        boolean complete = true;
+        File artifactsDir = build.getArtifactsDirectory();
+        artifactGuard.lockReading(artifactsDir);
+        try {
+            File metadataFile = new File(artifactsDir, Constants.NEXUS_BUILD_METADATA_PATH);
+            if (metadataFile.exists()) {
+                artifacts = new ArrayList<>();
+                try (MetadataReader reader = new MetadataReader(metadataFile)) {
+                    ArtifactMetadata artifact;
+                    while ((artifact = reader.next()) != null) {
+                        artifacts.add(artifact);
+                    }
+                } catch (IOException e) {
+                    LOG.warn("Error reading nexus build data: " + e.getMessage() + " for build " + build.getBuildId());
+                    complete = false;
+                }
+                artifacts = Collections.unmodifiableList(artifacts);
+            }
+        } finally {
+            artifactGuard.unlockReading(artifactsDir);
+        }
+        return new Metadata(artifacts, complete);
+    }
+
+    public void remove(long buildId) {
+        synchronized (builds) {
+            removals++;
+            if (builds.containsKey(buildId)) {
+                cachedArtifacts -= weight(builds.remove(buildId));
+            }
+        }
+    }
+
+    /**
+     * Removes a build whose artifacts are about to be cleaned up, and keeps its metadata from being cached again until
+     * the build is deleted.
+     */
+    public void removeCleanedUp(long buildId) {
+        synchronized (builds) {
+            cleanedUp.add(buildId);
+            remove(buildId);
+        }
+    }
+
+    /**
+     * Caches the metadata of a build, unless a build was removed since the given number of removals, as the metadata
+     * may have been read before that.
+     */
+    private void put(long buildId, List<ArtifactMetadata> artifacts, long removalCount) {
+        synchronized (builds) {
+            if (removals != removalCount || cleanedUp.contains(buildId)) {
+                return;
+            }
+            if (builds.containsKey(buildId)) {
+                cachedArtifacts -= weight(builds.get(buildId));
+            }
+            builds.put(buildId, artifacts);
+            cachedArtifacts += weight(artifacts);
+            for (Iterator<List<ArtifactMetadata>> it = builds.values().iterator(); it.hasNext() && cachedArtifacts > MAX_ARTIFACTS;) {
+                cachedArtifacts -= weight(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    private static int weight(List<ArtifactMetadata> artifacts) {
+        // Builds without metadata take some space too
+        return artifacts == null ? 1 : artifacts.size() + 1;
+    }
+
+    private static class Metadata {
+        private final List<ArtifactMetadata> artifacts;
+        // Whether the metadata was read to the end
+        private final boolean complete;
+
+        private Metadata(List<ArtifactMetadata> artifacts, boolean complete) {
+            this.artifacts = artifacts;
+            this.complete = complete;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import jetbrains.buildServer.log.Loggers;
+
+/**
+ * Circuit breaker for the calls the server makes to one Nexus server.  The outcome of the last calls is kept in a
+ * sliding window; when too many of them failed or were slow the breaker opens and calls fail immediately instead of
+ * waiting for the server to time out.  After a while the breaker lets a single call through, which closes it again if
+ * it succeeds.
+ */
+public class CircuitBreaker {
+    private static final Logger LOG = Loggers.SERVER;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MINIMUM_CALLS = 10;
+    private static final int FAILURE_RATE_THRESHOLD = 50;
+    private static final int SLOW_CALL_RATE_THRESHOLD = 80;
+    private static final long SLOW_CALL_DURATION = TimeUnit.SECONDS.toMillis(10);
+    private static final long OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+    private final String name;
+    private final LongSupplier clock;
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private final boolean[] slow = new boolean[WINDOW_SIZE];
+    private int next;
+    private int calls;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+    private String lastFailure;
+
+    public CircuitBreaker(String name) {
+        this(name, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, LongSupplier clock) {
+        this.name = name;
+        this.clock = clock;
+    }
+
+    /**
+     * Fails if the breaker is open.  When half open, only the first caller is let through to probe the server.
+     */
+    synchronized void acquirePermission() throws CircuitOpenException {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_DURATION) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && probing)) {
+            throw new CircuitOpenException("Nexus server " + name + " is unavailable (" + lastFailure + "), not calling it until "
+                + new Date(openedAt + OPEN_DURATION));
+        }
+        if (state == State.HALF_OPEN) {
+            probing = true;
+        }
+    }
+
+    synchronized void onResult(long duration, String failure) {
+        boolean isSlow = duration >= SLOW_CALL_DURATION;
+        if (failure != null) {
+            lastFailure = failure;
+        }
+        if (state == State.HALF_OPEN) {
+            probing = false;
+            if (failure != null || isSlow) {
+                open();
+            } else {
+                LOG.info("Nexus server " + name + " is available again");
+                reset();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened
+            return;
+        }
+
+        failed[next] = failure != null;
+        slow[next] = isSlow;
+        next = (next + 1) % WINDOW_SIZE;
+        calls = Math.min(calls + 1, WINDOW_SIZE);
+        if (calls >= MINIMUM_CALLS && (getFailureRate() >= FAILURE_RATE_THRESHOLD || getSlowCallRate() >= SLOW_CALL_RATE_THRESHOLD)) {
+            LOG.warn("Nexus server " + name + " is failing (" + getFailureRate() + "% failed, " + getSlowCallRate() + "% slow calls, last failure: "
+                + lastFailure + "), failing calls to it for " + OPEN_DURATION + "ms");
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    /**
+     * Closes the breaker and forgets the outcome of earlier calls.
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        probing = false;
+        calls = 0;
+        next = 0;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_DURATION) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return whether calls are currently failed without trying them
+     */
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    /**
+     * @return the percentage of failed calls in the window
+     */
+    public synchronized int getFailureRate() {
+        return rate(failed);
+    }
+
+    /**
+     * @return the percentage of slow calls in the window
+     */
+    public synchronized int getSlowCallRate() {
+        return rate(slow);
+    }
+
+    public synchronized String getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return when an open breaker lets the next call through
+     */
+    public synchronized Date getRetryAt() {
+        return new Date(openedAt + OPEN_DURATION);
+    }
+
+    private int rate(boolean[] outcomes) {
+        if (calls == 0) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < calls; i++) {
+            if (outcomes[i]) {
+                count++;
+            }
+        }
+        return count * 100 / calls;
+    }
+
+    /**
+     * Thrown instead of making a call while the breaker is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Passes the calls to a Nexus server through its rate limiter, if any, and circuit breaker.  Server errors and
+ * throttling responses count as failures, as do calls that cannot reach the server.
+ */
+class CircuitBreakerInterceptor implements Interceptor {
+    private final CircuitBreaker circuitBreaker;
+    private final TokenBucket rateLimiter;
+
+    CircuitBreakerInterceptor(CircuitBreaker circuitBreaker, TokenBucket rateLimiter) {
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+        circuitBreaker.acquirePermission();
+
+        long start = System.currentTimeMillis();
+        String failure = "unexpected error";
+        try {
+            Response response = chain.proceed(chain.request());
+            int code = response.code();
+            failure = code >= 500 || code == 408 || code == 429 ? "HTTP " + code + " " + response.message() : null;
+            return response;
+        } catch (IOException e) {
+            failure = e.toString();
+            throw e;
+        } finally {
+            circuitBreaker.onResult(System.currentTimeMillis() - start, failure);
+        }
+    }
+}
\ No newline at end of file
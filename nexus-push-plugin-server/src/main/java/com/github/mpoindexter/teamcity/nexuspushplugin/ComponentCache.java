@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+
+/**
+ * Cache of the Nexus components looked up for artifacts, keyed by server, repository and digest, so report pages do
+ * not search Nexus on every view.  Entries expire after a while and the least recently used entries are evicted when
+ * the cache is full.  Artifacts that were not found are cached too, for a shorter time.  Cleanup invalidates the
+ * entries of the components it deletes.
+ */
+public class ComponentCache {
+    private static final int MAX_ENTRIES = 2000;
+    private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+    private static final long NEGATIVE_TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<String, CachedComponents> entries = new LinkedHashMap<String, CachedComponents>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedComponents> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final LongSupplier clock;
+
+    public ComponentCache() {
+        this(System::currentTimeMillis);
+    }
+
+    ComponentCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static String key(String serverId, String repository, String checksumName, String checksum) {
+        return serverId + "\t" + repository + "\t" + checksumName + "\t" + checksum.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the cached components of an artifact, an empty list if it is known not to exist, or null if it is not
+     * cached.
+     */
+    public List<ComponentBean> get(String key) {
+        synchronized (entries) {
+            CachedComponents entry = entries.get(key);
+            if (entry != null && entry.expires > clock.getAsLong()) {
+                hits.incrementAndGet();
+                return entry.components;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, String serverId, List<ComponentBean> components) {
+        boolean found = components != null && !components.isEmpty();
+        CachedComponents entry = new CachedComponents(serverId, found ? Collections.unmodifiableList(components) : Collections.emptyList(),
+            clock.getAsLong() + (found ? TTL : NEGATIVE_TTL));
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes the entries that contain a component, e.g. for the other assets of a deleted multi-asset component.
+     */
+    public void invalidateComponent(String serverId, String componentId) {
+        synchronized (entries) {
+            for (Iterator<CachedComponents> it = entries.values().iterator(); it.hasNext();) {
+                CachedComponents entry = it.next();
+                if (entry.serverId.equals(serverId) && entry.contains(componentId)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private static class CachedComponents {
+        private final String serverId;
+        private final List<ComponentBean> components;
+        private final long expires;
+
+        private CachedComponents(String serverId, List<ComponentBean> components, long expires) {
+            this.serverId = serverId;
+            this.components = components;
+            this.expires = expires;
+        }
+
+        private boolean contains(String componentId) {
+            for (ComponentBean component : components) {
+                if (componentId.equals(component.getId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
\ No newline at end of file
@@ -1,14 +0,0 @@
-/*
- * Copyright (c) 2018-Present Michael Poindexter.
- * 
- * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
- * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
- */
-
-package com.github.mpoindexter.teamcity.nexuspushplugin;
-
-import okhttp3.OkHttpClient;
-
-public class Http {
-    public static final OkHttpClient CLIENT = new OkHttpClient();
-}
\ No newline at end of file
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.ServerConfigBean;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import okhttp3.OkHttpClient;
+
+/**
+ * Provides one pooled HTTP client per configured Nexus server, built from the server's HTTP client settings.  Clients
+ * are rebuilt when the settings of their server change.  The calls of a server's client go through a rate limiter and
+ * a {@link CircuitBreaker}, which outlive the client, so cleanup and report pages fail fast while a server is down.
+ * The rate is set by the {@value #MAX_REQUESTS_PER_SECOND_PROPERTY} and {@value #MAX_REQUESTS_BURST_PROPERTY} internal
+ * properties.
+ */
+public class HttpClientFactory {
+    public static final String MAX_REQUESTS_PER_SECOND_PROPERTY = "teamcity.nexus.maxRequestsPerSecond";
+    public static final String MAX_REQUESTS_BURST_PROPERTY = "teamcity.nexus.maxRequestsBurst";
+    private static final int DEFAULT_MAX_REQUESTS_PER_SECOND = 20;
+    private static final int DEFAULT_MAX_REQUESTS_BURST = 40;
+    private static final long MAX_RATE_LIMIT_WAIT = 10;
+
+    private final Map<String, CachedClient> clients = new HashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+
+    public OkHttpClient getClient(ServerConfigBean serverConfig) {
+        HttpClientSettings settings = serverConfig.getHttpClientSettings();
+        CachedClient stale;
+        OkHttpClient client;
+        synchronized (clients) {
+            stale = clients.get(serverConfig.getId());
+            if (stale != null && stale.settings.equals(settings)) {
+                return stale.client;
+            }
+            client = HttpClients.newBuilder(settings)
+                .addInterceptor(new CircuitBreakerInterceptor(getCircuitBreaker(serverConfig), getRateLimiter(serverConfig.getId())))
+                .build();
+            clients.put(serverConfig.getId(), new CachedClient(settings, client));
+        }
+        if (stale != null) {
+            // Only idle connections are closed, requests still running on the old client complete normally
+            stale.client.connectionPool().evictAll();
+        }
+        return client;
+    }
+
+    /**
+     * Returns the circuit breaker guarding the calls to a server.
+     */
+    public CircuitBreaker getCircuitBreaker(ServerConfigBean serverConfig) {
+        return circuitBreakers.computeIfAbsent(serverConfig.getId(), id -> new CircuitBreaker(serverConfig.getUrl()));
+    }
+
+    private TokenBucket getRateLimiter(String serverId) {
+        int perSecond = TeamCityProperties.getInteger(MAX_REQUESTS_PER_SECOND_PROPERTY, DEFAULT_MAX_REQUESTS_PER_SECOND);
+        if (perSecond <= 0) {
+            return null;
+        }
+        int burst = TeamCityProperties.getInteger(MAX_REQUESTS_BURST_PROPERTY, DEFAULT_MAX_REQUESTS_BURST);
+        return rateLimiters.computeIfAbsent(serverId, id -> new TokenBucket(perSecond, burst, MAX_RATE_LIMIT_WAIT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Creates a client that is not shared, e.g. for testing settings that have not been saved yet.  Its calls are not
+     * limited or guarded by a circuit breaker, and it must be closed with {@link HttpClients#close} after use.
+     */
+    public OkHttpClient createClient(HttpClientSettings settings) {
+        return HttpClients.newBuilder(settings).build();
+    }
+
+    private static class CachedClient {
+        private final HttpClientSettings settings;
+        private final OkHttpClient client;
+
+        private CachedClient(HttpClientSettings settings, OkHttpClient client) {
+            this.settings = settings;
+            this.client = client;
+        }
+    }
+}
\ No newline at end of file
@@ -49,6 +49,12 @@ public class NexusBuildStartContextProcessor implements BuildStartContextProcess
             context.addSharedParameter(Constants.AGENT_SERVER_URL_PARAM_PREFIX + serverId, config.getUrl());
             context.addSharedParameter(Constants.AGENT_SERVER_USERNAME_PARAM_PREFIX + serverId, config.getCredentials().getUsername());
             context.addSharedParameter(Constants.AGENT_SERVER_PASSWORD_PARAM_PREFIX + serverId, config.getCredentials().getPassword());
+            context.addSharedParameter(Constants.AGENT_SERVER_MAX_CONCURRENT_UPLOADS_PARAM_PREFIX + serverId, String.valueOf(config.getMaxConcurrentUploads()));
+            context.addSharedParameter(Constants.AGENT_SERVER_RETRY_MAX_ATTEMPTS_PARAM_PREFIX + serverId, String.valueOf(config.getRetryMaxAttempts()));
+            context.addSharedParameter(Constants.AGENT_SERVER_RETRY_INITIAL_DELAY_PARAM_PREFIX + serverId, String.valueOf(config.getRetryInitialDelay()));
+            for (Map.Entry<String, String> setting : config.getHttpClientSettings().toMap().entrySet()) {
+                context.addSharedParameter(Constants.AGENT_SERVER_HTTP_PARAM_PREFIX + setting.getKey() + "." + serverId, setting.getValue());
+            }
         }
     }
 }
\ No newline at end of file
@@ -9,41 +9,50 @@ package com.github.mpoindexter.teamcity.nexuspushplugin;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
-import com.github.mpoindexter.teamcity.nexuspushplugin.global.CredentialsBean;
-import com.github.mpoindexter.teamcity.nexuspushplugin.global.GlobalSettingsManager;
-import com.github.mpoindexter.teamcity.nexuspushplugin.global.ServerConfigBean;
-import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.SearchResponse;
+import com.github.mpoindexter.teamcity.nexuspushplugin.cleanup.ArtifactReferenceIndex;
+import com.github.mpoindexter.teamcity.nexuspushplugin.cleanup.DeletionQueue;
+import com.github.mpoindexter.teamcity.nexuspushplugin.cleanup.DeletionTask;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.JDOMUtil;
-import com.intellij.openapi.util.text.StringUtil;
 
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.JDOMException;
-import org.jdom.filter.ElementFilter;
 import org.jetbrains.annotations.NotNull;
 
 import jetbrains.buildServer.log.Loggers;
 import jetbrains.buildServer.serverSide.SFinishedBuild;
 import jetbrains.buildServer.serverSide.cleanup.BuildCleanupContext;
 import jetbrains.buildServer.serverSide.cleanup.CleanupExtensionAdapter;
-import jetbrains.buildServer.serverSide.cleanup.ErrorReporter;
 import jetbrains.buildServer.util.positioning.PositionAware;
 import jetbrains.buildServer.util.positioning.PositionConstraint;
-import okhttp3.Credentials;
-import okhttp3.HttpUrl;
-import okhttp3.Request;
-import okhttp3.Response;
 
+/**
+ * Queues the Nexus components of builds that are cleaned up for deletion.  This runs before the artifacts, and with
+ * them the Nexus metadata, are removed, but does not call Nexus itself:  the {@link DeletionQueue} deletes the
+ * components in the background.  The artifacts of all builds in a cleanup run are collected first and deduplicated,
+ * so a component shared by several builds is queued once.  The references of the builds are removed from the
+ * {@link ArtifactReferenceIndex}, and a component is only queued if no other build refers to it anymore; otherwise its
+ * deletion is deferred until the last of those builds is cleaned up.
+ *
+ * When cleanup is interrupted the artifacts collected so far are still queued, so the work done is kept, and the
+ * next run, which gets the same builds again, only adds what is missing:  the queue merges tasks for the same
+ * component and leaves out builds whose artifacts it already deleted.
+ */
 public class NexusCleanupExtension extends CleanupExtensionAdapter implements PositionAware {
     private static final Logger LOG = Loggers.CLEANUP;
 
-    private final GlobalSettingsManager globalSettings;
+    private final DeletionQueue deletionQueue;
+    private final ArtifactReferenceIndex referenceIndex;
+    private final BuildMetadataCache metadataCache;
 
-    public NexusCleanupExtension(@NotNull GlobalSettingsManager globalSettings) {
-        this.globalSettings = globalSettings;
+    public NexusCleanupExtension(@NotNull DeletionQueue deletionQueue,
+                                 @NotNull ArtifactReferenceIndex referenceIndex,
+                                 @NotNull BuildMetadataCache metadataCache) {
+        this.deletionQueue = deletionQueue;
+        this.referenceIndex = referenceIndex;
+        this.metadataCache = metadataCache;
     }
     
     @Override
@@ -58,97 +67,78 @@ public class NexusCleanupExtension extends CleanupExtensionAdapter implements Po
 
     @Override
     public void cleanupBuildsData(BuildCleanupContext cleanupContext) throws Exception {
+        if (!cleanupContext.getCleanupLevel().isCleanArtifacts()) {
+            return;
+        }
+
+        Map<String, DeletionTask> tasks = new LinkedHashMap<>();
+        int processedBuilds = 0;
         for (SFinishedBuild build : cleanupContext.getBuilds()) {
             if (cleanupContext.getCleanupState().isInterrupted()) {
-                return;
+                LOG.info("Nexus cleanup interrupted after " + processedBuilds + " of " + cleanupContext.getBuilds().size() + " builds");
+                break;
             }
+            processedBuilds++;
+            // The artifacts are about to be removed
+            metadataCache.removeCleanedUp(build.getBuildId());
 
-            if (cleanupContext.getCleanupLevel().isCleanArtifacts()) {
-                File metadataFile = new File(build.getArtifactsDirectory(), Constants.NEXUS_BUILD_METADATA_PATH);
-                if (!metadataFile.exists()) {
-                    LOG.info("Build " + build.getBuildId() + " has no Nexus metadata, skipping");
-                    continue;
-                }
-                try {
-                    Document doc = JDOMUtil.loadDocument(metadataFile);
-                    Element root = doc.getRootElement();
-                    @SuppressWarnings("unchecked")
-                    List<Element> artifactElements = root.getContent(new ElementFilter("artifact"));
-                    for (Element artifactElement : artifactElements) {
-                        String sha1 = artifactElement.getAttributeValue("sha1");
-                        if (StringUtil.isEmptyOrSpaces(sha1)) {
-                            continue;
-                        }
-                        String serverId = artifactElement.getAttributeValue("serverId");
-                        if (StringUtil.isEmptyOrSpaces(serverId)) {
-                            continue;
-                        }
-                        String repository = artifactElement.getAttributeValue("repository");
-                        if (StringUtil.isEmptyOrSpaces(repository)) {
-                            continue;
-                        }
+            File metadataFile = new File(build.getArtifactsDirectory(), Constants.NEXUS_BUILD_METADATA_PATH);
+            if (!metadataFile.exists()) {
+                LOG.info("Build " + build.getBuildId() + " has no Nexus metadata, skipping");
+                continue;
+            }
+            Set<String> keys = new HashSet<>();
+            try (MetadataReader reader = new MetadataReader(metadataFile)) {
+                ArtifactMetadata artifact;
+                while ((artifact = reader.next()) != null) {
+                    String key = ArtifactReferenceIndex.key(artifact);
+                    if (key == null) {
+                        continue;
+                    }
+                    // Reused artifacts are referenced too, but never deleted on cleanup of this build
+                    keys.add(key);
+                    String algorithm = artifact.getSearchAlgorithm();
+                    String checksum = artifact.getChecksum(algorithm);
 
-                        String deleteArtifactOnCleanup = artifactElement.getAttributeValue("deleteArtifactOnCleanup");
-                        if ("true".equals(deleteArtifactOnCleanup)) {
-                            removeComponent(build.getBuildId(), serverId, repository, sha1, cleanupContext.getErrorReporter());
-                        } else {
-                            LOG.info("Artifact " + sha1 + " is not marked for deletion, skipping");
+                    if (artifact.isDeleteArtifactOnCleanup()) {
+                        DeletionTask task = new DeletionTask(artifact.getServerId(), artifact.getRepository(), Checksums.attributeName(algorithm), checksum,
+                            artifact.getAssetPath(), artifact.getComponentId());
+                        task.addBuildId(build.getBuildId());
+                        DeletionTask existing = tasks.putIfAbsent(task.getId(), task);
+                        if (existing != null) {
+                            existing.merge(task);
                         }
+                    } else {
+                        LOG.info("Artifact " + checksum + " is not marked for deletion, skipping");
                     }
-                } catch (IOException | JDOMException e) {
-                    LOG.warn("Error reading nexus build data: " + e.getMessage() + " for build " + build.getBuildId());
                 }
+            } catch (IOException e) {
+                LOG.warn("Error reading nexus build data: " + e.getMessage() + " for build " + build.getBuildId());
+                continue;
             }
+            referenceIndex.removeBuild(build.getBuildId(), keys);
         }
-    }
 
-    private void removeComponent(long buildId, String serverId, String repository, String sha1, ErrorReporter errorReporter) {
-        ServerConfigBean serverConfig = globalSettings.getServer(serverId);
-        if (serverConfig != null) {
+        int queued = 0;
+        for (DeletionTask task : tasks.values()) {
+            Set<Long> references = referenceIndex.getReferences(task.getReferenceKey());
             try {
-                CredentialsBean credentials = serverConfig.getCredentials();
-                HttpUrl url = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
-                    .addPathSegments("service/rest/v1/search")
-                    .addQueryParameter("repository", repository)
-                    .addQueryParameter("sha1", sha1)
-                    .build();
-
-                Request nexusRequest = new Request.Builder()
-                    .url(url)
-                    .addHeader("Accept", "application/json")
-                    .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
-                    .get()
-                    .build();
-                Response response = Http.CLIENT.newCall(nexusRequest).execute();
-                if (response.isSuccessful()) {
-                    SearchResponse searchResponse = SearchResponse.ADAPTER.fromJson(response.body().source());
-                    if (searchResponse.getItems() != null && searchResponse.getItems().size() == 1) {
-                        String componentId = searchResponse.getItems().get(0).getId();
-                        HttpUrl deleteUrl = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
-                            .addPathSegments("service/rest/v1/components")
-                            .addPathSegment(componentId)
-                            .build();
-                        Request deleteRequest = new Request.Builder()
-                            .url(deleteUrl)
-                            .addHeader("Accept", "application/json")
-                            .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
-                            .delete()
-                            .build();
-                        Response deleteResponse = Http.CLIENT.newCall(deleteRequest).execute();
-                        if (!deleteResponse.isSuccessful()) {
-                            errorReporter.buildCleanupError(buildId, "Cannot delete artifact on cleanup nexus artifact: " + response.body().string());
-                        }
-                    } else {
-                        LOG.warn("Artifact did not have exactly one component associated, will not remove for build " + buildId);
-                    }
-                } else {
-                    LOG.warn("Cannot find artifact on cleanup nexus artifact: " + response.body().string());
-                    errorReporter.buildCleanupError(buildId, "Cannot find artifact on cleanup nexus artifact: " + response.body().string());
+                if (!references.isEmpty()) {
+                    LOG.info("Deferring deletion of Nexus " + task.getChecksumName() + " " + task.getChecksum() + ", it is still used by builds " + references);
+                    deletionQueue.defer(task);
+                } else if (deletionQueue.enqueue(task)) {
+                    queued++;
                 }
             } catch (IOException e) {
-                LOG.warn("IO Exception on cleanup nexus artifact: " + e.getMessage());
-                errorReporter.buildCleanupError(buildId, "IO Exception on cleanup nexus artifact: " + e.getMessage());
+                String message = "Cannot queue Nexus artifact for deletion: " + e.getMessage();
+                LOG.warn(message);
+                for (long buildId : task.getBuildIds()) {
+                    cleanupContext.getErrorReporter().buildCleanupError(buildId, message);
+                }
             }
         }
+        if (queued > 0) {
+            LOG.info("Queued " + queued + " Nexus artifacts of " + processedBuilds + " builds for deletion");
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of calls to a Nexus server.  Up to the capacity of the bucket calls go through immediately, after
+ * that they wait for the bucket to refill, or fail if they would have to wait too long.
+ */
+class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private final long maxWait;
+    private double tokens;
+    private final LongSupplier nanoTime;
+    private long lastRefill;
+
+    TokenBucket(int perSecond, int capacity, long maxWait, TimeUnit unit) {
+        this(perSecond, capacity, maxWait, unit, System::nanoTime);
+    }
+
+    TokenBucket(int perSecond, int capacity, long maxWait, TimeUnit unit, LongSupplier nanoTime) {
+        this.tokensPerNano = perSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, capacity);
+        this.maxWait = unit.toNanos(maxWait);
+        this.tokens = this.capacity;
+        this.nanoTime = nanoTime;
+        this.lastRefill = nanoTime.getAsLong();
+    }
+
+    void acquire() throws IOException {
+        long wait;
+        synchronized (this) {
+            long now = nanoTime.getAsLong();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (wait > maxWait) {
+                throw new IOException("Too many calls to Nexus, rate limit exceeded");
+            }
+            // Reserve the token now, so callers queue up behind each other
+            tokens -= 1;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the Nexus rate limit");
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+import com.github.mpoindexter.teamcity.nexuspushplugin.BuildMetadataCache;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+
+import org.jetbrains.annotations.NotNull;
+
+import jetbrains.buildServer.log.Loggers;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
+import jetbrains.buildServer.serverSide.ServerPaths;
+
+/**
+ * Index from the Nexus artifacts pushed or reused by builds, identified by server, repository, digest and asset path,
+ * to the builds that refer to them.  A component is only deleted on cleanup once no build refers to it anymore, so
+ * cleaning up an old build does not delete a component a newer build reusing the artifact still points to.  Components
+ * with byte-identical assets at other paths are told apart.  Artifacts recorded without an asset path, by earlier
+ * versions or for uploads whose path was not known, could be any of the assets with their digest, so they count as
+ * references to all of them and the other way round.
+ *
+ * The index is kept in memory and persisted as an append-only journal of added and removed references, which is
+ * compacted on startup and whenever it grows much larger than the index.  Builds are added from the metadata read by
+ * the {@link BuildMetadataCache} when they finish.  Builds that finished before the index existed are added once by
+ * going through the build history on startup; the index is not complete, and nothing may be deleted, until then.
+ * Builds cleaned up meanwhile are remembered, in the journal as well, so going through the history does not add them
+ * back.
+ * Listeners are told when references are removed, so deletes held back for builds still referring to a component can
+ * run once the last of them is gone.
+ */
+public class ArtifactReferenceIndex {
+    private static final Logger LOG = Loggers.CLEANUP;
+
+    private static final String INDEX_FILE = "nexus-push/artifact-references.log";
+    // Present once the builds that finished before the index existed have been added
+    private static final String COMPLETE_FILE = "nexus-push/artifact-references.complete";
+    private static final String ADD = "+";
+    private static final String REMOVE = "-";
+    // A build removed before the index is complete, the line has an empty key
+    private static final String REMOVED_BUILD = "x";
+    private static final int MIN_COMPACT_LINES = 10000;
+
+    private final File indexFile;
+    private final File completeFile;
+    // Server, repository and digest to the asset path, empty if unknown, to the referring builds
+    private final Map<String, Map<String, Set<Long>>> references = new HashMap<>();
+    private int artifactCount;
+    private int referenceCount;
+    private int journalLines;
+    private volatile boolean complete;
+    // Builds removed while the existing builds are added, which must not be added again; guarded by this
+    private final Set<Long> removedBuilds = new HashSet<>();
+    private final List<Consumer<Set<String>>> removalListeners = new CopyOnWriteArrayList<>();
+
+    public ArtifactReferenceIndex(@NotNull ServerPaths serverPaths, @NotNull SBuildServer server, @NotNull BuildMetadataCache metadataCache) {
+        this(serverPaths.getPluginDataDirectory());
+
+        metadataCache.addFinishedBuildListener(this::addBuild);
+        if (!complete) {
+            server.addListener(new BuildServerAdapter() {
+                @Override
+                public void serverStartup() {
+                    Thread thread = new Thread(() -> addExistingBuilds(server, metadataCache), "Nexus artifact reference indexer");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            });
+        }
+    }
+
+    ArtifactReferenceIndex(File pluginDataDirectory) {
+        this.indexFile = new File(pluginDataDirectory, INDEX_FILE);
+        this.completeFile = new File(pluginDataDirectory, COMPLETE_FILE);
+        this.complete = completeFile.exists();
+        synchronized (this) {
+            load();
+            compact();
+        }
+    }
+
+    /**
+     * Returns the key of an artifact.  The asset path may be null if it is not known.
+     */
+    public static String key(String serverId, String repository, String checksumName, String checksum, String assetPath) {
+        String key = serverId + "\t" + repository + "\t" + checksumName + "\t" + checksum.toLowerCase(Locale.ENGLISH);
+        String path = normalizePath(assetPath);
+        return path.isEmpty() ? key : key + "\t" + path;
+    }
+
+    /**
+     * Returns an asset path without leading slashes, as Nexus reports it, or an empty string for none.
+     */
+    public static String normalizePath(String assetPath) {
+        if (assetPath == null) {
+            return "";
+        }
+        int start = 0;
+        while (start < assetPath.length() && assetPath.charAt(start) == '/') {
+            start++;
+        }
+        return assetPath.substring(start).trim();
+    }
+
+    /**
+     * Returns the key of an artifact from the Nexus metadata of a build, or null if it cannot be looked up in Nexus.
+     */
+    public static String key(ArtifactMetadata artifact) {
+        String algorithm = artifact.getSearchAlgorithm();
+        if (algorithm == null || StringUtil.isEmptyOrSpaces(artifact.getServerId()) || StringUtil.isEmptyOrSpaces(artifact.getRepository())) {
+            return null;
+        }
+        return key(artifact.getServerId(), artifact.getRepository(), Checksums.attributeName(algorithm), artifact.getChecksum(algorithm),
+            artifact.getAssetPath());
+    }
+
+    /**
+     * Returns the key of an artifact's digest, without the asset path.
+     */
+    public static String digestKey(String key) {
+        return split(key)[0];
+    }
+
+    /**
+     * Splits a key into the key of the digest and the asset path, empty if the key has none.
+     */
+    private static String[] split(String key) {
+        int tabs = 0;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == '\t') {
+                tabs++;
+            }
+        }
+        if (tabs < 4) {
+            return new String[] { key, "" };
+        }
+        int last = key.lastIndexOf('\t');
+        return new String[] { key.substring(0, last), key.substring(last + 1) };
+    }
+
+    private boolean addReference(String key, long buildId) {
+        String[] parts = split(key);
+        Map<String, Set<Long>> paths = references.computeIfAbsent(parts[0], k -> new HashMap<>());
+        Set<Long> buildIds = paths.get(parts[1]);
+        if (buildIds == null) {
+            buildIds = new HashSet<>();
+            paths.put(parts[1], buildIds);
+            artifactCount++;
+        }
+        if (!buildIds.add(buildId)) {
+            return false;
+        }
+        referenceCount++;
+        return true;
+    }
+
+    private boolean removeReference(String key, long buildId) {
+        String[] parts = split(key);
+        Map<String, Set<Long>> paths = references.get(parts[0]);
+        Set<Long> buildIds = paths == null ? null : paths.get(parts[1]);
+        if (buildIds == null || !buildIds.remove(buildId)) {
+            return false;
+        }
+        referenceCount--;
+        if (buildIds.isEmpty()) {
+            paths.remove(parts[1]);
+            artifactCount--;
+            if (paths.isEmpty()) {
+                references.remove(parts[0]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds references from a build to all artifacts in its Nexus metadata, whether uploaded or reused.
+     */
+    public void addBuild(SBuild build, List<ArtifactMetadata> artifacts) {
+        addBuild(build.getBuildId(), artifacts, false);
+    }
+
+    /**
+     * Adds the references of a build, unless it is an existing build that was removed in the meantime.
+     */
+    void addBuild(long buildId, List<ArtifactMetadata> artifacts, boolean existing) {
+        if (artifacts == null) {
+            return;
+        }
+        Set<String> keys = new HashSet<>();
+        for (ArtifactMetadata artifact : artifacts) {
+            String key = key(artifact);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+
+        List<String> journal = new ArrayList<>();
+        synchronized (this) {
+            if (existing && removedBuilds.contains(buildId)) {
+                return;
+            }
+            for (String key : keys) {
+                if (addReference(key, buildId)) {
+                    journal.add(ADD + "\t" + key + "\t" + buildId);
+                }
+            }
+            append(journal);
+        }
+    }
+
+    /**
+     * Adds a listener that is given the keys a build's references were removed from, after the index is updated.
+     */
+    public void addRemovalListener(Consumer<Set<String>> listener) {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * Removes the references of a build to artifacts.
+     */
+    public void removeBuild(long buildId, Set<String> keys) {
+        Set<String> removed = new HashSet<>();
+        synchronized (this) {
+            List<String> journal = new ArrayList<>();
+            for (String key : keys) {
+                if (removeReference(key, buildId)) {
+                    journal.add(REMOVE + "\t" + key + "\t" + buildId);
+                    removed.add(key);
+                }
+            }
+            if (!complete && removedBuilds.add(buildId)) {
+                journal.add(REMOVED_BUILD + "\t\t" + buildId);
+            }
+            append(journal);
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        for (Consumer<Set<String>> listener : removalListeners) {
+            try {
+                listener.accept(removed);
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error processing removed Nexus artifact references of build " + buildId, e);
+            }
+        }
+    }
+
+    /**
+     * Adds the builds that finished before the index existed.  Builds that finish meanwhile are added as usual.
+     */
+    private void addExistingBuilds(SBuildServer server, BuildMetadataCache metadataCache) {
+        long start = System.currentTimeMillis();
+        LOG.info("Adding existing builds to the Nexus artifact reference index");
+        int count = 0;
+        try {
+            for (SFinishedBuild build : server.getHistory().getEntries(true)) {
+                List<ArtifactMetadata> artifacts = metadataCache.readMetadata(build);
+                if (artifacts != null) {
+                    addBuild(build.getBuildId(), artifacts, true);
+                    count++;
+                }
+            }
+            File parent = completeFile.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            Files.write(completeFile.toPath(), new byte[0]);
+        } catch (IOException e) {
+            // The builds are added again on the next start
+            LOG.warn("Cannot mark the Nexus artifact reference index as complete: " + e.getMessage());
+        } catch (RuntimeException e) {
+            LOG.error("Unexpected error adding existing builds to the Nexus artifact reference index", e);
+            return;
+        }
+        synchronized (this) {
+            complete = true;
+            // Dropped from the journal when it is compacted next
+            removedBuilds.clear();
+        }
+        LOG.info("Added " + count + " existing builds with Nexus artifacts to the reference index in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * @return whether all builds are in the index, the references of builds are not known otherwise
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the builds that refer to an artifact, empty if none or if the artifact is unknown to the index.  These
+     *     include the builds referring to its digest without an asset path, and for a key without an asset path, the
+     *     builds referring to the digest at any path.
+     */
+    public synchronized Set<Long> getReferences(String key) {
+        String[] parts = split(key);
+        Map<String, Set<Long>> paths = references.get(parts[0]);
+        if (paths == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> buildIds = new HashSet<>();
+        if (parts[1].isEmpty()) {
+            for (Set<Long> pathBuildIds : paths.values()) {
+                buildIds.addAll(pathBuildIds);
+            }
+        } else {
+            buildIds.addAll(paths.getOrDefault(parts[1], Collections.emptySet()));
+            buildIds.addAll(paths.getOrDefault("", Collections.emptySet()));
+        }
+        return buildIds;
+    }
+
+    /**
+     * @return the number of artifacts referenced by at least one build
+     */
+    public synchronized int size() {
+        return artifactCount;
+    }
+
+    private void append(List<String> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        try {
+            File parent = indexFile.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            try (Writer writer = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            journalLines += lines.size();
+        } catch (IOException e) {
+            LOG.warn("Cannot update Nexus artifact reference index: " + e.getMessage());
+        }
+        if (journalLines > Math.max(MIN_COMPACT_LINES, 2 * referenceCount)) {
+            compact();
+        }
+    }
+
+    private void load() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int first = line.indexOf('\t');
+                int last = line.lastIndexOf('\t');
+                if (first < 0 || last <= first) {
+                    // A line cut short by a crash while appending
+                    continue;
+                }
+                String op = line.substring(0, first);
+                String key = line.substring(first + 1, last);
+                long buildId;
+                try {
+                    buildId = Long.parseLong(line.substring(last + 1));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (ADD.equals(op)) {
+                    addReference(key, buildId);
+                } else if (REMOVE.equals(op)) {
+                    removeReference(key, buildId);
+                } else if (REMOVED_BUILD.equals(op) && !complete) {
+                    removedBuilds.add(buildId);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot read Nexus artifact reference index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the references that are still present.
+     */
+    private void compact() {
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            File parent = indexFile.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            int lines = 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Map<String, Set<Long>>> digest : references.entrySet()) {
+                    for (Map.Entry<String, Set<Long>> path : digest.getValue().entrySet()) {
+                        String key = path.getKey().isEmpty() ? digest.getKey() : digest.getKey() + "\t" + path.getKey();
+                        for (Long buildId : path.getValue()) {
+                            writer.write(ADD + "\t" + key + "\t" + buildId);
+                            writer.write('\n');
+                            lines++;
+                        }
+                    }
+                }
+                for (Long buildId : removedBuilds) {
+                    writer.write(REMOVED_BUILD + "\t\t" + buildId);
+                    writer.write('\n');
+                    lines++;
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journalLines = lines;
+        } catch (IOException e) {
+            LOG.warn("Cannot compact Nexus artifact reference index: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import jetbrains.buildServer.log.Loggers;
+
+/**
+ * Journal of the artifacts whose components are confirmed gone from Nexus, by build.  When a cleanup run is
+ * interrupted TeamCity hands the same builds to the next run; their artifacts that were already deleted are then not
+ * queued, and searched for, again.  A build that uploads the same artifact again later has a new build ID, so its
+ * artifact is still deleted when that build is cleaned up.
+ *
+ * Entries are appended as deletes complete and dropped after {@link #MAX_AGE}, when a build will not be cleaned up
+ * again.
+ */
+class CleanupJournal {
+    private static final Logger LOG = Loggers.CLEANUP;
+
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(14);
+    private static final int MIN_COMPACT_LINES = 10000;
+    private static final long COMPACT_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private final File journalFile;
+    // Key of the artifact and build ID to the time the delete completed
+    private final Map<String, Long> completed = new HashMap<>();
+    private int journalLines;
+    private long lastCompacted;
+
+    CleanupJournal(File journalFile) {
+        this.journalFile = journalFile;
+        load();
+        compact();
+    }
+
+    synchronized boolean isCompleted(String key, long buildId) {
+        return completed.containsKey(entry(key, buildId));
+    }
+
+    synchronized void completed(String key, Iterable<Long> buildIds) {
+        long now = System.currentTimeMillis();
+        StringBuilder lines = new StringBuilder();
+        int count = 0;
+        for (Long buildId : buildIds) {
+            String entry = entry(key, buildId);
+            completed.put(entry, now);
+            lines.append(entry).append('\t').append(now).append('\n');
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        try {
+            createParent();
+            try (Writer writer = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(lines.toString());
+            }
+            journalLines += count;
+        } catch (IOException e) {
+            LOG.warn("Cannot update Nexus cleanup journal: " + e.getMessage());
+        }
+        if (journalLines > Math.max(MIN_COMPACT_LINES, 2 * completed.size()) || now - lastCompacted > COMPACT_INTERVAL) {
+            compact();
+        }
+    }
+
+    private static String entry(String key, long buildId) {
+        return key + "\t" + buildId;
+    }
+
+    private void load() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int last = line.lastIndexOf('\t');
+                if (last <= 0) {
+                    continue;
+                }
+                try {
+                    completed.put(line.substring(0, last), Long.parseLong(line.substring(last + 1)));
+                } catch (NumberFormatException e) {
+                    // A line cut short by a crash while appending
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot read Nexus cleanup journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the journal without the entries that are too old to matter.
+     */
+    private void compact() {
+        lastCompacted = System.currentTimeMillis();
+        long cutoff = lastCompacted - MAX_AGE;
+        for (Iterator<Long> it = completed.values().iterator(); it.hasNext();) {
+            if (it.next() < cutoff) {
+                it.remove();
+            }
+        }
+
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        try {
+            createParent();
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> entry : completed.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue());
+                    writer.write('\n');
+                }
+            }
+            Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journalLines = completed.size();
+        } catch (IOException e) {
+            LOG.warn("Cannot compact Nexus cleanup journal: " + e.getMessage());
+        }
+    }
+
+    private void createParent() throws IOException {
+        File parent = journalFile.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+    }
+}
\ No newline at end of file
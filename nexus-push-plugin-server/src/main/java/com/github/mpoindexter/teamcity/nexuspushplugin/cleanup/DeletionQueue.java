@@ -0,0 +1,737 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.CircuitBreaker;
+import com.github.mpoindexter.teamcity.nexuspushplugin.ComponentCache;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientFactory;
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.CredentialsBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.GlobalSettingsManager;
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.ServerConfigBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.SearchResponse;
+import com.intellij.openapi.diagnostic.Logger;
+
+import org.jetbrains.annotations.NotNull;
+
+import jetbrains.buildServer.log.Loggers;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.SBuildServer;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.FileUtil;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Durable queue of Nexus components to delete.  Build cleanup only enqueues tasks, which are stored as one properties
+ * file each under the plugin data directory and deleted from Nexus by a background worker, so a slow or unavailable
+ * Nexus server does not hold up TeamCity's cleanup.
+ *
+ * A component that other builds still refer to is not deleted but deferred:  the task is kept in a directory of its
+ * own and queued again when the {@link ArtifactReferenceIndex} removes the last reference to the component.
+ *
+ * The worker runs at most as many deletes against a server as its concurrent request limit allows and paces them to
+ * the rate set by the {@value #MAX_DELETES_PER_SECOND_PROPERTY} internal property.  The tasks of a server are held back
+ * while its circuit breaker is open.  Failed deletes are retried with exponential backoff; tasks that fail permanently
+ * or too often are moved to a dead letter directory, where they stay until an administrator retries or discards them.
+ */
+public class DeletionQueue {
+    private static final Logger LOG = Loggers.CLEANUP;
+
+    public static final String MAX_DELETES_PER_SECOND_PROPERTY = "teamcity.nexus.cleanup.maxDeletesPerSecond";
+    private static final int DEFAULT_MAX_DELETES_PER_SECOND = 10;
+
+    private static final String QUEUE_DIRECTORY = "nexus-push/deletion-queue";
+    private static final String PENDING_DIRECTORY = "pending";
+    private static final String DEAD_DIRECTORY = "dead";
+    private static final String DEFERRED_DIRECTORY = "deferred";
+    private static final String JOURNAL_FILE = "completed.log";
+    private static final String TASK_SUFFIX = ".properties";
+    private static final long DRAIN_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final long INITIAL_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_DELAY = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int MAX_WORKERS = 8;
+    private static final long THROUGHPUT_WINDOW = TimeUnit.MINUTES.toMillis(5);
+
+    private final GlobalSettingsManager globalSettings;
+    private final HttpClientFactory httpClientFactory;
+    private final ArtifactReferenceIndex referenceIndex;
+    private final ComponentCache componentCache;
+    private final File pendingDirectory;
+    private final File deadDirectory;
+    private final File deferredDirectory;
+    private final CleanupJournal journal;
+    private final Map<String, DeletionTask> pending = new ConcurrentHashMap<>();
+    private final Map<String, DeletionTask> dead = new ConcurrentHashMap<>();
+    // Tasks of components still referred to by other builds
+    private final Map<String, DeletionTask> deferred = new ConcurrentHashMap<>();
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> runningByServer = new ConcurrentHashMap<>();
+    private final Map<String, Pacer> pacers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(new DeletionThreadFactory("Nexus deletion queue drainer"));
+    private final ExecutorService workers = Executors.newFixedThreadPool(MAX_WORKERS, new DeletionThreadFactory("Nexus deletion worker "));
+
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final Deque<Long> recentDeletes = new ConcurrentLinkedDeque<>();
+    // System.nanoTime() of the drain scheduled for the next paced delete, 0 if there is none
+    private long pacedDrainAt;
+
+    public DeletionQueue(@NotNull ServerPaths serverPaths,
+                         @NotNull GlobalSettingsManager globalSettings,
+                         @NotNull HttpClientFactory httpClientFactory,
+                         @NotNull ArtifactReferenceIndex referenceIndex,
+                         @NotNull ComponentCache componentCache,
+                         @NotNull SBuildServer server) {
+        this.globalSettings = globalSettings;
+        this.httpClientFactory = httpClientFactory;
+        this.referenceIndex = referenceIndex;
+        this.componentCache = componentCache;
+        File queueDirectory = new File(serverPaths.getPluginDataDirectory(), QUEUE_DIRECTORY);
+        this.pendingDirectory = new File(queueDirectory, PENDING_DIRECTORY);
+        this.deadDirectory = new File(queueDirectory, DEAD_DIRECTORY);
+        this.deferredDirectory = new File(queueDirectory, DEFERRED_DIRECTORY);
+        this.journal = new CleanupJournal(new File(queueDirectory, JOURNAL_FILE));
+        load(pendingDirectory, pending);
+        load(deadDirectory, dead);
+        load(deferredDirectory, deferred);
+        if (!pending.isEmpty()) {
+            LOG.info("Resuming " + pending.size() + " queued Nexus component deletions");
+        }
+
+        server.addListener(new BuildServerAdapter() {
+            @Override
+            public void serverShutdown() {
+                // Tasks interrupted here are still stored and run again after the restart
+                drainer.shutdownNow();
+                workers.shutdownNow();
+            }
+        });
+        referenceIndex.addRemovalListener(this::referencesRemoved);
+        drainer.scheduleWithFixedDelay(this::drain, DRAIN_INTERVAL, DRAIN_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stores a task, merging it into the task already queued for the same component if there is one.  Builds whose
+     * artifact was already deleted by an earlier, interrupted cleanup are left out; returns false if that leaves no
+     * builds and the task is not queued.
+     */
+    public boolean enqueue(DeletionTask task) throws IOException {
+        for (Long buildId : task.getBuildIds()) {
+            if (journal.isCompleted(task.getReferenceKey(), buildId)) {
+                task.removeBuildId(buildId);
+            }
+        }
+        if (task.getBuildIds().isEmpty()) {
+            return false;
+        }
+
+        synchronized (this) {
+            DeletionTask existing = pending.get(task.getId());
+            if (existing != null) {
+                existing.merge(task);
+                save(pendingDirectory, existing);
+            } else {
+                save(pendingDirectory, task);
+                pending.put(task.getId(), task);
+            }
+        }
+        triggerDrain();
+        return true;
+    }
+
+    /**
+     * Stores a task for a component other builds still refer to, to be queued once they no longer do.  Builds are
+     * left out as by {@link #enqueue}; returns false if that leaves no builds.
+     */
+    public boolean defer(DeletionTask task) throws IOException {
+        for (Long buildId : task.getBuildIds()) {
+            if (journal.isCompleted(task.getReferenceKey(), buildId)) {
+                task.removeBuildId(buildId);
+            }
+        }
+        if (task.getBuildIds().isEmpty()) {
+            return false;
+        }
+
+        synchronized (this) {
+            DeletionTask existing = pending.get(task.getId());
+            if (existing != null) {
+                // Checked for references again before it runs
+                existing.merge(task);
+                save(pendingDirectory, existing);
+                return true;
+            }
+            existing = deferred.get(task.getId());
+            if (existing != null) {
+                existing.merge(task);
+                save(deferredDirectory, existing);
+            } else {
+                save(deferredDirectory, task);
+                deferred.put(task.getId(), task);
+            }
+            // The last reference may have gone while the task was being deferred
+            requeueIfUnreferenced(deferred.get(task.getId()));
+        }
+        return true;
+    }
+
+    /**
+     * Queues the deferred tasks whose components are no longer referred to after references were removed.
+     */
+    private synchronized void referencesRemoved(Set<String> keys) {
+        Set<String> digestKeys = new HashSet<>();
+        for (String key : keys) {
+            digestKeys.add(ArtifactReferenceIndex.digestKey(key));
+        }
+        for (DeletionTask task : new ArrayList<>(deferred.values())) {
+            if (digestKeys.contains(ArtifactReferenceIndex.digestKey(task.getReferenceKey()))) {
+                requeueIfUnreferenced(task);
+            }
+        }
+    }
+
+    private synchronized void requeueIfUnreferenced(DeletionTask task) {
+        if (!referenceIndex.getReferences(task.getReferenceKey()).isEmpty()) {
+            return;
+        }
+        LOG.info("Nexus " + task.describe() + " is no longer used by other builds, queueing it for deletion");
+        task.setNextAttempt(System.currentTimeMillis());
+        try {
+            DeletionTask existing = pending.get(task.getId());
+            if (existing != null) {
+                existing.merge(task);
+                save(pendingDirectory, existing);
+            } else {
+                save(pendingDirectory, task);
+                pending.put(task.getId(), task);
+            }
+        } catch (IOException e) {
+            // Stays deferred and is queued with the next removed reference, or after a restart
+            LOG.warn("Cannot queue deferred Nexus deletion " + task.getId() + ": " + e.getMessage());
+            return;
+        }
+        deferred.remove(task.getId());
+        FileUtil.delete(taskFile(deferredDirectory, task.getId()));
+        triggerDrain();
+    }
+
+    synchronized void drain() {
+        if (!referenceIndex.isComplete()) {
+            // Builds that are not indexed yet may still use the components
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<DeletionTask> due = new ArrayList<>();
+        for (DeletionTask task : pending.values()) {
+            if (task.getNextAttempt() <= now && !inProgress.contains(task.getId())) {
+                due.add(task);
+            }
+        }
+        due.sort(Comparator.comparingLong(DeletionTask::getNextAttempt));
+
+        long pacedWait = 0;
+        for (DeletionTask task : due) {
+            ServerConfigBean serverConfig = globalSettings.getServer(task.getServerId());
+            if (serverConfig == null) {
+                deadLetter(task, "Nexus server " + task.getServerId() + " no longer exists");
+                continue;
+            }
+            if (httpClientFactory.getCircuitBreaker(serverConfig).isOpen()) {
+                continue;
+            }
+            AtomicInteger running = runningByServer.computeIfAbsent(serverConfig.getId(), id -> new AtomicInteger());
+            if (running.get() >= Math.max(1, serverConfig.getMaxConcurrentUploads())) {
+                continue;
+            }
+            // Paced tasks wait in the queue rather than on a worker thread
+            long wait = pacers.computeIfAbsent(serverConfig.getId(), id -> new Pacer()).tryAcquire();
+            if (wait > 0) {
+                pacedWait = pacedWait == 0 ? wait : Math.min(pacedWait, wait);
+                continue;
+            }
+
+            running.incrementAndGet();
+            inProgress.add(task.getId());
+            try {
+                workers.execute(() -> {
+                    try {
+                        process(task, serverConfig);
+                    } catch (RuntimeException e) {
+                        LOG.error("Unexpected error deleting Nexus " + task.describe(), e);
+                    } finally {
+                        running.decrementAndGet();
+                        inProgress.remove(task.getId());
+                        triggerDrain();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                inProgress.remove(task.getId());
+                return;
+            }
+        }
+        if (pacedWait > 0) {
+            schedulePacedDrain(pacedWait);
+        }
+    }
+
+    private void schedulePacedDrain(long wait) {
+        long at = System.nanoTime() + wait;
+        if (pacedDrainAt != 0 && pacedDrainAt - at <= 0) {
+            // An earlier drain is already scheduled
+            return;
+        }
+        pacedDrainAt = at;
+        try {
+            drainer.schedule(() -> {
+                synchronized (this) {
+                    if (pacedDrainAt == at) {
+                        pacedDrainAt = 0;
+                    }
+                }
+                drain();
+            }, wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    private void triggerDrain() {
+        try {
+            drainer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    private void process(DeletionTask task, ServerConfigBean serverConfig) {
+        Set<Long> references = referenceIndex.getReferences(task.getReferenceKey());
+        if (!references.isEmpty()) {
+            // A build that finished after the task was queued reuses the component
+            LOG.info("Deferring deletion of Nexus " + task.describe() + ", it is still used by builds " + references);
+            deferQueued(task);
+            return;
+        }
+
+        try {
+            Outcome outcome = remove(task, serverConfig);
+            if (outcome != Outcome.AMBIGUOUS) {
+                componentCache.invalidate(ComponentCache.key(serverConfig.getId(), task.getRepository(), task.getChecksumName(), task.getChecksum()));
+            }
+            if (outcome == Outcome.DELETED) {
+                LOG.info("Deleted Nexus " + task.describe());
+                deleted.incrementAndGet();
+                long now = System.currentTimeMillis();
+                recentDeletes.addLast(now);
+                trimRecentDeletes(now);
+            } else {
+                skipped.incrementAndGet();
+            }
+            complete(task, outcome != Outcome.AMBIGUOUS);
+        } catch (DeletionException e) {
+            failed(task, e.getMessage(), e.retryable);
+        } catch (CircuitBreaker.CircuitOpenException e) {
+            // Not the task's fault, it runs again once the server is available
+            postpone(task, e.getMessage());
+        } catch (IOException e) {
+            failed(task, "IO Exception: " + e.getMessage(), true);
+        }
+    }
+
+    /**
+     * Deletes the component of a task, by its recorded ID if there is one and otherwise by searching for the digest.
+     * If the task knows the asset path, only a component with the asset at that path is deleted.
+     */
+    private Outcome remove(DeletionTask task, ServerConfigBean serverConfig) throws IOException {
+        OkHttpClient client = httpClientFactory.getClient(serverConfig);
+        String componentId = task.getComponentId();
+        if (componentId != null) {
+            try (Response response = client.newCall(deleteRequest(serverConfig, componentId)).execute()) {
+                if (response.isSuccessful()) {
+                    componentCache.invalidateComponent(serverConfig.getId(), componentId);
+                    return Outcome.DELETED;
+                }
+                if (response.code() != 404) {
+                    throw DeletionException.fromResponse("Cannot delete component " + componentId, response);
+                }
+            }
+            LOG.info("Component " + componentId + " no longer exists, searching for " + task.getChecksumName() + " " + task.getChecksum());
+        }
+
+        CredentialsBean credentials = serverConfig.getCredentials();
+        HttpUrl url = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
+            .addPathSegments("service/rest/v1/search")
+            .addQueryParameter("repository", task.getRepository())
+            .addQueryParameter(task.getChecksumName(), task.getChecksum())
+            .build();
+
+        Request nexusRequest = new Request.Builder()
+            .url(url)
+            .addHeader("Accept", "application/json")
+            .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
+            .get()
+            .build();
+        try (Response response = client.newCall(nexusRequest).execute()) {
+            if (!response.isSuccessful()) {
+                throw DeletionException.fromResponse("Cannot find artifact", response);
+            }
+            SearchResponse searchResponse = SearchResponse.ADAPTER.fromJson(response.body().source());
+            List<ComponentBean> components = new ArrayList<>();
+            if (searchResponse != null && searchResponse.getItems() != null) {
+                for (ComponentBean component : searchResponse.getItems()) {
+                    if (task.getAssetPath().isEmpty() || component.findAsset(task.getChecksumName(), task.getChecksum(), task.getAssetPath()) != null) {
+                        components.add(component);
+                    }
+                }
+            }
+            if (components.isEmpty()) {
+                // Also the case for the other assets of a multi-asset component that was already deleted
+                LOG.info("Artifact no longer exists, nothing to remove for Nexus " + task.describe());
+                return Outcome.NOT_FOUND;
+            }
+            if (components.size() != 1) {
+                LOG.info("Artifact did not have exactly one component associated, will not remove Nexus " + task.describe());
+                return Outcome.AMBIGUOUS;
+            }
+            componentId = components.get(0).getId();
+        }
+
+        try (Response response = client.newCall(deleteRequest(serverConfig, componentId)).execute()) {
+            if (!response.isSuccessful() && response.code() != 404) {
+                throw DeletionException.fromResponse("Cannot delete component " + componentId, response);
+            }
+        }
+        componentCache.invalidateComponent(serverConfig.getId(), componentId);
+        return Outcome.DELETED;
+    }
+
+    private static Request deleteRequest(ServerConfigBean serverConfig, String componentId) {
+        CredentialsBean credentials = serverConfig.getCredentials();
+        HttpUrl deleteUrl = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
+            .addPathSegments("service/rest/v1/components")
+            .addPathSegment(componentId)
+            .build();
+        return new Request.Builder()
+            .url(deleteUrl)
+            .addHeader("Accept", "application/json")
+            .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
+            .delete()
+            .build();
+    }
+
+    /**
+     * Removes a finished task from the queue, recording its builds in the journal if the component is gone.
+     */
+    private synchronized void complete(DeletionTask task, boolean gone) {
+        if (gone) {
+            journal.completed(task.getReferenceKey(), task.getBuildIds());
+        }
+        pending.remove(task.getId());
+        FileUtil.delete(taskFile(pendingDirectory, task.getId()));
+    }
+
+    /**
+     * Moves a queued task to the deferred tasks.
+     */
+    private synchronized void deferQueued(DeletionTask task) {
+        try {
+            DeletionTask existing = deferred.get(task.getId());
+            if (existing != null) {
+                existing.merge(task);
+                save(deferredDirectory, existing);
+            } else {
+                save(deferredDirectory, task);
+                deferred.put(task.getId(), task);
+            }
+        } catch (IOException e) {
+            // Checked again on its next attempt
+            postpone(task, "Cannot defer deletion: " + e.getMessage());
+            return;
+        }
+        pending.remove(task.getId());
+        FileUtil.delete(taskFile(pendingDirectory, task.getId()));
+        requeueIfUnreferenced(deferred.get(task.getId()));
+    }
+
+    private synchronized void failed(DeletionTask task, String message, boolean retryable) {
+        failedAttempts.incrementAndGet();
+        int attempts = task.getAttempts() + 1;
+        if (!retryable || attempts >= MAX_ATTEMPTS) {
+            task.setAttempts(attempts);
+            deadLetter(task, message);
+            return;
+        }
+
+        long delay = Math.min(MAX_DELAY, INITIAL_DELAY << Math.min(attempts - 1, 20));
+        task.setAttempts(attempts);
+        task.setLastError(message);
+        task.setNextAttempt(System.currentTimeMillis() + delay);
+        LOG.info("Deleting Nexus " + task.describe() + " failed (" + message + "), retrying in " + delay + "ms");
+        try {
+            save(pendingDirectory, task);
+        } catch (IOException e) {
+            LOG.warn("Cannot update queued Nexus deletion " + task.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Holds a task back until the next drain without counting an attempt.
+     */
+    private synchronized void postpone(DeletionTask task, String message) {
+        task.setLastError(message);
+        task.setNextAttempt(System.currentTimeMillis() + DRAIN_INTERVAL);
+        try {
+            save(pendingDirectory, task);
+        } catch (IOException e) {
+            LOG.warn("Cannot update queued Nexus deletion " + task.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void deadLetter(DeletionTask task, String message) {
+        task.setLastError(message);
+        LOG.warn("Giving up on deleting Nexus " + task.describe() + " after " + task.getAttempts() + " attempts: " + message);
+        try {
+            save(deadDirectory, task);
+        } catch (IOException e) {
+            LOG.warn("Cannot store failed Nexus deletion " + task.getId() + ": " + e.getMessage());
+        }
+        pending.remove(task.getId());
+        FileUtil.delete(taskFile(pendingDirectory, task.getId()));
+        dead.put(task.getId(), task);
+        deadLettered.incrementAndGet();
+    }
+
+    /**
+     * Moves a failed task back into the queue for an immediate attempt.
+     */
+    public void retry(String id) throws IOException {
+        synchronized (this) {
+            DeletionTask task = dead.get(id);
+            if (task == null) {
+                return;
+            }
+            task.setAttempts(0);
+            task.setNextAttempt(System.currentTimeMillis());
+            DeletionTask existing = pending.get(id);
+            if (existing != null) {
+                existing.merge(task);
+                save(pendingDirectory, existing);
+            } else {
+                save(pendingDirectory, task);
+                pending.put(id, task);
+            }
+            dead.remove(id);
+            FileUtil.delete(taskFile(deadDirectory, id));
+        }
+        triggerDrain();
+    }
+
+    /**
+     * Drops a failed task, leaving its component in Nexus.
+     */
+    public synchronized void discard(String id) {
+        if (dead.remove(id) != null) {
+            FileUtil.delete(taskFile(deadDirectory, id));
+        }
+    }
+
+    public List<DeletionTask> getPendingTasks() {
+        List<DeletionTask> tasks = new ArrayList<>(pending.values());
+        tasks.sort(Comparator.comparingLong(DeletionTask::getNextAttempt));
+        return tasks;
+    }
+
+    public List<DeletionTask> getDeadTasks() {
+        List<DeletionTask> tasks = new ArrayList<>(dead.values());
+        tasks.sort(Comparator.comparingLong(DeletionTask::getCreated));
+        return tasks;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public int getInProgressCount() {
+        return inProgress.size();
+    }
+
+    public int getDeadCount() {
+        return dead.size();
+    }
+
+    /**
+     * @return the number of components whose deletion waits for other builds to stop referring to them
+     */
+    public int getDeferredCount() {
+        return deferred.size();
+    }
+
+    /**
+     * @return the number of components deleted since the server started
+     */
+    public long getDeletedCount() {
+        return deleted.get();
+    }
+
+    /**
+     * @return the number of tasks since the server started that found no component, or more than one, to delete
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttempts.get();
+    }
+
+    public long getDeadLetteredCount() {
+        return deadLettered.get();
+    }
+
+    /**
+     * @return the average number of components deleted per minute over the last few minutes
+     */
+    public double getDeletesPerMinute() {
+        trimRecentDeletes(System.currentTimeMillis());
+        return recentDeletes.size() / (double) TimeUnit.MILLISECONDS.toMinutes(THROUGHPUT_WINDOW);
+    }
+
+    private void trimRecentDeletes(long now) {
+        Long oldest;
+        while ((oldest = recentDeletes.peekFirst()) != null && now - oldest > THROUGHPUT_WINDOW) {
+            recentDeletes.pollFirst();
+        }
+    }
+
+    private static File taskFile(File directory, String id) {
+        return new File(directory, id + TASK_SUFFIX);
+    }
+
+    private static void save(File directory, DeletionTask task) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File tempFile = new File(directory, task.getId() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+            task.toProperties().store(out, null);
+        }
+        Files.move(tempFile.toPath(), taskFile(directory, task.getId()).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void load(File directory, Map<String, DeletionTask> tasks) {
+        File[] files = directory.listFiles(file -> file.isFile() && file.getName().endsWith(TASK_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Properties properties = new Properties();
+            DeletionTask task = null;
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                properties.load(in);
+                task = DeletionTask.load(properties);
+            } catch (IOException e) {
+                // handled below
+            }
+            if (task == null) {
+                LOG.warn("Discarding unreadable queued Nexus deletion " + file);
+                FileUtil.delete(file);
+                continue;
+            }
+            tasks.put(task.getId(), task);
+        }
+    }
+
+    /**
+     * Spaces out the deletes against one server to the configured rate.
+     */
+    private static class Pacer {
+        private long next = System.nanoTime();
+
+        /**
+         * Takes the next delete slot if it is due, otherwise returns the nanoseconds until it is.
+         */
+        private synchronized long tryAcquire() {
+            int maxPerSecond = TeamCityProperties.getInteger(MAX_DELETES_PER_SECOND_PROPERTY, DEFAULT_MAX_DELETES_PER_SECOND);
+            if (maxPerSecond <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            if (next - now > 0) {
+                return next - now;
+            }
+            next = now + TimeUnit.SECONDS.toNanos(1) / maxPerSecond;
+            return 0;
+        }
+    }
+
+    private enum Outcome { DELETED, NOT_FOUND, AMBIGUOUS }
+
+    private static class DeletionException extends IOException {
+        private final boolean retryable;
+
+        private DeletionException(String message, boolean retryable) {
+            super(message);
+            this.retryable = retryable;
+        }
+
+        private static DeletionException fromResponse(String message, Response response) throws IOException {
+            int code = response.code();
+            boolean retryable = code == 408 || code == 429 || code >= 500;
+            return new DeletionException(message + ": " + code + " " + response.body().string(), retryable);
+        }
+    }
+
+    private static class DeletionThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DeletionThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name.endsWith(" ") ? name + count.incrementAndGet() : name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
\ No newline at end of file
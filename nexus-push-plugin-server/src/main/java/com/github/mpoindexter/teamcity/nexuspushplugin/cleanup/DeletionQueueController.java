@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jdom.Element;
+import org.springframework.web.servlet.ModelAndView;
+
+import jetbrains.buildServer.controllers.ActionErrors;
+import jetbrains.buildServer.controllers.BaseFormXmlController;
+
+public class DeletionQueueController extends BaseFormXmlController {
+
+    private final DeletionQueue deletionQueue;
+
+    public DeletionQueueController(final DeletionQueue deletionQueue) {
+        this.deletionQueue = deletionQueue;
+    }
+
+    @Override
+    protected ModelAndView doGet(HttpServletRequest request, HttpServletResponse response) {
+        return null;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response, Element xmlResponse) {
+        String action = request.getParameter("action");
+        // Either the ID of one failed task, or all of them
+        String id = request.getParameter("id");
+        boolean all = Boolean.parseBoolean(request.getParameter("all"));
+
+        if ("retry".equals(action)) {
+            try {
+                for (DeletionTask task : deletionQueue.getDeadTasks()) {
+                    if (all || task.getId().equals(id)) {
+                        deletionQueue.retry(task.getId());
+                    }
+                }
+                getOrCreateMessages(request).addMessage("deletionRetried", "Failed Nexus deletions were queued again.");
+            } catch (IOException e) {
+                ActionErrors errors = new ActionErrors();
+                errors.addError("errorRetry", "Cannot queue Nexus deletion again: " + e.getMessage());
+                errors.serialize(xmlResponse);
+            }
+        }
+
+        if ("discard".equals(action)) {
+            for (DeletionTask task : deletionQueue.getDeadTasks()) {
+                if (all || task.getId().equals(id)) {
+                    deletionQueue.discard(task.getId());
+                }
+            }
+            getOrCreateMessages(request).addMessage("deletionDiscarded", "Failed Nexus deletions were discarded.");
+        }
+    }
+}
\ No newline at end of file
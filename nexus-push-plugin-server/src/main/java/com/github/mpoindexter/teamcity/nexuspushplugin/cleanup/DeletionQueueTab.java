@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.jetbrains.annotations.NotNull;
+
+import jetbrains.buildServer.serverSide.auth.AuthUtil;
+import jetbrains.buildServer.serverSide.auth.Permission;
+import jetbrains.buildServer.serverSide.auth.SecurityContext;
+import jetbrains.buildServer.web.openapi.PlaceId;
+import jetbrains.buildServer.web.openapi.PositionConstraint;
+import jetbrains.buildServer.web.openapi.SimpleCustomTab;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
+
+/**
+ * Administration page showing the state of the {@link DeletionQueue}, with actions to retry or discard failed deletes.
+ */
+public class DeletionQueueTab extends SimpleCustomTab {
+
+    private final SecurityContext securityContext;
+    private final DeletionQueue deletionQueue;
+    private final ArtifactReferenceIndex referenceIndex;
+
+    public DeletionQueueTab(final @NotNull WebControllerManager controllerManager,
+                            final @NotNull SecurityContext securityContext,
+                            final @NotNull DeletionQueue deletionQueue,
+                            final @NotNull ArtifactReferenceIndex referenceIndex) {
+        super(controllerManager, PlaceId.ADMIN_SERVER_CONFIGURATION_TAB, "nexus-push-plugin-deletion-queue",
+                "nexusDeletionQueue.jsp",
+                "Nexus Cleanup Queue");
+        this.securityContext = securityContext;
+        this.deletionQueue = deletionQueue;
+        this.referenceIndex = referenceIndex;
+
+        setPosition(PositionConstraint.after("nexus-push-plugin"));
+        register();
+
+        controllerManager.registerController("/admin/nexus/nexusDeletionQueue.html", new DeletionQueueController(deletionQueue));
+    }
+
+    @Override
+    public void fillModel(@NotNull Map<String, Object> model, @NotNull HttpServletRequest request) {
+        super.fillModel(model, request);
+        model.put("deletionQueue", deletionQueue);
+        model.put("referencedArtifacts", referenceIndex.size());
+        model.put("referenceIndexComplete", referenceIndex.isComplete());
+    }
+
+    @Override
+    public boolean isVisible() {
+        return super.isVisible() && userHasPermission();
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull HttpServletRequest request) {
+        return super.isAvailable(request) && userHasPermission();
+    }
+
+    private boolean userHasPermission() {
+        return AuthUtil.hasGlobalPermission(securityContext.getAuthorityHolder(), Permission.CHANGE_SERVER_SETTINGS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import com.intellij.openapi.util.text.StringUtil;
+
+/**
+ * A Nexus component to delete, identified by the digest and path of one of its assets and optionally by the component
+ * ID recorded at upload time.  Tasks for the same asset share an ID, so a component is queued once however many builds
+ * refer to it, while components with byte-identical assets at other paths get tasks of their own.  Tasks of artifacts
+ * recorded without an asset path are told apart by their component ID instead.
+ */
+public class DeletionTask {
+    private final String serverId;
+    private final String repository;
+    private final String checksumName;
+    private final String checksum;
+    // Empty if the path is not known
+    private final String assetPath;
+    private final String id;
+    // Builds are added by cleanup while the worker may be processing the task
+    private final List<Long> buildIds = new CopyOnWriteArrayList<>();
+    private volatile String componentId;
+    private long created;
+    private volatile long nextAttempt;
+    private volatile int attempts;
+    private volatile String lastError;
+
+    public DeletionTask(String serverId, String repository, String checksumName, String checksum, String assetPath, String componentId) {
+        this.serverId = serverId;
+        this.repository = repository;
+        this.checksumName = checksumName;
+        this.checksum = checksum.toLowerCase(Locale.ENGLISH);
+        this.assetPath = ArtifactReferenceIndex.normalizePath(assetPath);
+        this.componentId = StringUtil.isEmptyOrSpaces(componentId) ? null : componentId;
+        this.created = System.currentTimeMillis();
+        this.nextAttempt = created;
+
+        String key = serverId + "\n" + repository + "\n" + checksumName + "\n" + this.checksum;
+        if (!this.assetPath.isEmpty()) {
+            key += "\n" + this.assetPath;
+        } else if (this.componentId != null) {
+            key += "\n#" + this.componentId;
+        }
+        this.id = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    static DeletionTask load(Properties properties) {
+        String serverId = properties.getProperty("serverId");
+        String repository = properties.getProperty("repository");
+        String checksumName = properties.getProperty("checksumName");
+        String checksum = properties.getProperty("checksum");
+        if (serverId == null || repository == null || checksumName == null || checksum == null) {
+            return null;
+        }
+        try {
+            DeletionTask task = new DeletionTask(serverId, repository, checksumName, checksum, properties.getProperty("assetPath"),
+                properties.getProperty("componentId"));
+            task.created = Long.parseLong(properties.getProperty("created"));
+            task.nextAttempt = Long.parseLong(properties.getProperty("nextAttempt"));
+            task.attempts = Integer.parseInt(properties.getProperty("attempts"));
+            task.lastError = properties.getProperty("lastError");
+            for (String buildId : properties.getProperty("buildIds", "").split(",")) {
+                if (!buildId.trim().isEmpty()) {
+                    task.buildIds.add(Long.parseLong(buildId.trim()));
+                }
+            }
+            return task;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("serverId", serverId);
+        properties.setProperty("repository", repository);
+        properties.setProperty("checksumName", checksumName);
+        properties.setProperty("checksum", checksum);
+        if (!assetPath.isEmpty()) {
+            properties.setProperty("assetPath", assetPath);
+        }
+        if (componentId != null) {
+            properties.setProperty("componentId", componentId);
+        }
+        properties.setProperty("buildIds", buildIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        properties.setProperty("created", String.valueOf(created));
+        properties.setProperty("nextAttempt", String.valueOf(nextAttempt));
+        properties.setProperty("attempts", String.valueOf(attempts));
+        if (lastError != null) {
+            properties.setProperty("lastError", lastError);
+        }
+        return properties;
+    }
+
+    /**
+     * Adds the builds and, if this task has none yet, the component ID of another task for the same component.
+     */
+    public synchronized void merge(DeletionTask other) {
+        for (Long buildId : other.buildIds) {
+            addBuildId(buildId);
+        }
+        if (componentId == null) {
+            componentId = other.componentId;
+        }
+    }
+
+    public synchronized void addBuildId(long buildId) {
+        if (!buildIds.contains(buildId)) {
+            buildIds.add(buildId);
+        }
+    }
+
+    void removeBuildId(long buildId) {
+        buildIds.remove(Long.valueOf(buildId));
+    }
+
+    /**
+     * @return the ID of the task, derived from the server, repository, digest and asset path of the component
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the key of the component's artifact in the {@link ArtifactReferenceIndex}
+     */
+    public String getReferenceKey() {
+        return ArtifactReferenceIndex.key(serverId, repository, checksumName, checksum, assetPath);
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public String getChecksumName() {
+        return checksumName;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the path of the component's asset, empty if it is not known
+     */
+    public String getAssetPath() {
+        return assetPath;
+    }
+
+    public String getComponentId() {
+        return componentId;
+    }
+
+    public List<Long> getBuildIds() {
+        return Collections.unmodifiableList(buildIds);
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public Date getCreatedDate() {
+        return new Date(created);
+    }
+
+    public long getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public Date getNextAttemptDate() {
+        return new Date(nextAttempt);
+    }
+
+    void setNextAttempt(long nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the error of the last failed attempt, if any
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    String describe() {
+        return (componentId != null ? "component " + componentId : checksumName + " " + checksum + (assetPath.isEmpty() ? "" : " at " + assetPath))
+            + " in repository " + repository
+            + " on Nexus server " + serverId + " for builds " + buildIds;
+    }
+}
\ No newline at end of file
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactUploadSettings;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
 import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
 import com.github.mpoindexter.teamcity.nexuspushplugin.global.GlobalSettingsManager;
 import com.github.mpoindexter.teamcity.nexuspushplugin.global.ServerConfigBean;
@@ -92,25 +93,71 @@ public class NexusPushFeature extends BuildFeature {
                     errors.add(new InvalidProperty(Constants.ARTIFACT_UPLOAD_SETTINGS, "Specify artifact upload settings"));
                 }
 
-                if (ArtifactUploadSettings.parse(artifactUploadSettings) == null) {
+                ArtifactUploadSettings parsedUploadSettings = ArtifactUploadSettings.parse(artifactUploadSettings);
+                if (parsedUploadSettings == null) {
                     errors.add(new InvalidProperty(Constants.ARTIFACT_UPLOAD_SETTINGS, "Invalid artifact upload settings"));
                 }
 
+                String uploadMode = params.get(Constants.UPLOAD_MODE);
+                if (Constants.UPLOAD_MODE_PUT.equals(uploadMode)) {
+                    if (parsedUploadSettings != null) {
+                        for (ArtifactUploadSettings.UploadParameter param : parsedUploadSettings.getUploadParameters()) {
+                            if (!param.isFile || StringUtil.isEmptyOrSpaces(param.key)) {
+                                errors.add(new InvalidProperty(Constants.ARTIFACT_UPLOAD_SETTINGS, "Direct uploads must be specified as repository_path=@<artifact_path>"));
+                                break;
+                            }
+                        }
+                    }
+                } else if (!StringUtil.isEmptyOrSpaces(uploadMode) && !Constants.UPLOAD_MODE_COMPONENTS.equals(uploadMode)) {
+                    errors.add(new InvalidProperty(Constants.UPLOAD_MODE, "Invalid upload mode"));
+                }
+
                 String deleteOnCleanup = params.get(Constants.DELETE_ARTIFACT_ON_CLEANUP);
                 if (StringUtil.isEmptyOrSpaces(deleteOnCleanup)) {
                     errors.add(new InvalidProperty(Constants.DELETE_ARTIFACT_ON_CLEANUP, "Specify whether to delete artifact on cleanup"));
                 }
 
+                if (Checksums.parseAlgorithms(params.get(Constants.ADDITIONAL_CHECKSUMS)) == null) {
+                    errors.add(new InvalidProperty(Constants.ADDITIONAL_CHECKSUMS, "Supported checksums are " + String.join(", ", Checksums.SUPPORTED_ALGORITHMS)));
+                }
+
+                String uploadMaxAttempts = params.get(Constants.UPLOAD_MAX_ATTEMPTS);
+                if (!StringUtil.isEmptyOrSpaces(uploadMaxAttempts) && !isPositiveInt(uploadMaxAttempts)) {
+                    errors.add(new InvalidProperty(Constants.UPLOAD_MAX_ATTEMPTS, "Upload attempts must be a positive number"));
+                }
+
+                String batchMaxAssets = params.get(Constants.BATCH_MAX_ASSETS);
+                if (!StringUtil.isEmptyOrSpaces(batchMaxAssets) && !isPositiveInt(batchMaxAssets)) {
+                    errors.add(new InvalidProperty(Constants.BATCH_MAX_ASSETS, "Maximum assets per upload must be a positive number"));
+                }
+
+                String batchMaxSize = params.get(Constants.BATCH_MAX_SIZE);
+                if (!StringUtil.isEmptyOrSpaces(batchMaxSize) && !isPositiveInt(batchMaxSize)) {
+                    errors.add(new InvalidProperty(Constants.BATCH_MAX_SIZE, "Maximum upload size must be a positive number"));
+                }
+
                 String artifactUploadMandatory = params.get(Constants.ARTIFACT_UPLOAD_MANDATORY);
                 if (StringUtil.isEmptyOrSpaces(artifactUploadMandatory)) {
                     errors.add(new InvalidProperty(Constants.ARTIFACT_UPLOAD_MANDATORY, "Specify whether to fail the build if artifact upload fails"));
                 }
+
+                if ("true".equals(params.get(Constants.UPLOAD_DETACHED)) && "true".equals(artifactUploadMandatory)) {
+                    errors.add(new InvalidProperty(Constants.UPLOAD_DETACHED, "Detached uploads cannot fail the build, uncheck \"Fail build if publishing fails\""));
+                }
                 
                 return errors;
             }
         };
     }
 
+    private static boolean isPositiveInt(String value) {
+        try {
+            return Integer.parseInt(value.trim()) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     @Override
     public boolean isRequiresAgent() {
         return true;
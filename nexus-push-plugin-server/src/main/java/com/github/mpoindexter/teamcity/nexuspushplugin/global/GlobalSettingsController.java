@@ -13,6 +13,7 @@ import jetbrains.buildServer.log.Loggers;
 import jetbrains.buildServer.serverSide.crypt.RSACipher;
 import okhttp3.Credentials;
 import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
@@ -22,7 +23,10 @@ import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.github.mpoindexter.teamcity.nexuspushplugin.Http;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientFactory;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientSettings;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClients;
 import com.intellij.openapi.util.text.StringUtil;
 
 import java.io.IOException;
@@ -32,9 +36,11 @@ import java.net.URL;
 public class GlobalSettingsController extends BaseFormXmlController {
 
     private GlobalSettingsManager settingsManager;
+    private HttpClientFactory httpClientFactory;
 
-    public GlobalSettingsController(final GlobalSettingsManager settingsManager) {
+    public GlobalSettingsController(final GlobalSettingsManager settingsManager, final HttpClientFactory httpClientFactory) {
         this.settingsManager = settingsManager;
+        this.httpClientFactory = httpClientFactory;
     }
 
     @Override
@@ -65,15 +71,16 @@ public class GlobalSettingsController extends BaseFormXmlController {
 
         if (isEditMode) {
             String id = request.getParameter("id");
-            String url = request.getParameter("url");
-            settingsManager.updateServer(id, url, getCredentialsFromRequest(request));
+            ServerConfigBean serverConfig = getServerConfigFromRequest(request);
+            settingsManager.updateServer(id, serverConfig);
             settingsManager.persist();
+            // The server may have been fixed, so try it again right away
+            httpClientFactory.getCircuitBreaker(serverConfig).reset();
             getOrCreateMessages(request).addMessage("objectUpdated", "Nexus server configuration was updated.");
         }
 
         if (isAddMode) {
-            String url = request.getParameter("url");
-            settingsManager.addServer(url, getCredentialsFromRequest(request));
+            settingsManager.addServer(getServerConfigFromRequest(request));
             settingsManager.persist();
             getOrCreateMessages(request).addMessage("objectCreated", "Nexus server configuration was created.");
         }
@@ -99,9 +106,48 @@ public class GlobalSettingsController extends BaseFormXmlController {
                 errors.addError("errorUrl", "Nexus server URL invalid.");
             }
         }
+
+        validateInt(request, errors, "maxConcurrentUploads", "errorMaxConcurrentUploads", "Maximum concurrent uploads", 1);
+        validateInt(request, errors, "retryMaxAttempts", "errorRetryMaxAttempts", "Upload attempts", 1);
+        validateInt(request, errors, "retryInitialDelay", "errorRetryInitialDelay", "Initial retry delay", 0);
+        validateInt(request, errors, HttpClientSettings.CONNECT_TIMEOUT, "errorConnectTimeout", "Connect timeout", 0);
+        validateInt(request, errors, HttpClientSettings.READ_TIMEOUT, "errorReadTimeout", "Read timeout", 0);
+        validateInt(request, errors, HttpClientSettings.WRITE_TIMEOUT, "errorWriteTimeout", "Write timeout", 0);
+        validateInt(request, errors, HttpClientSettings.MAX_IDLE_CONNECTIONS, "errorMaxIdleConnections", "Maximum idle connections", 0);
+        validateInt(request, errors, HttpClientSettings.KEEP_ALIVE, "errorKeepAlive", "Keep-alive", 1);
+        validateInt(request, errors, HttpClientSettings.MAX_REQUESTS_PER_HOST, "errorMaxRequestsPerHost", "Maximum requests per host", 1);
+        validateInt(request, errors, HttpClientSettings.PROXY_PORT, "errorProxyPort", "Proxy port", 1);
+        String proxyPort = request.getParameter(HttpClientSettings.PROXY_PORT);
+        if (StringUtil.isEmptyOrSpaces(proxyPort)) {
+            if (!StringUtil.isEmptyOrSpaces(request.getParameter(HttpClientSettings.PROXY_HOST))) {
+                errors.addError("errorProxyPort", "Please specify the port of the proxy.");
+            }
+        } else {
+            try {
+                if (Integer.parseInt(proxyPort.trim()) > HttpClientSettings.MAX_PORT) {
+                    errors.addError("errorProxyPort", "Proxy port must be at most " + HttpClientSettings.MAX_PORT + ".");
+                }
+            } catch (NumberFormatException e) {
+                // already reported by validateInt
+            }
+        }
         return errors;
     }
 
+    private void validateInt(HttpServletRequest request, ActionErrors errors, String name, String errorId, String description, int minimum) {
+        String value = request.getParameter(name);
+        if (StringUtil.isEmptyOrSpaces(value)) {
+            return;
+        }
+        try {
+            if (Integer.parseInt(value.trim()) < minimum) {
+                errors.addError(errorId, description + " must be at least " + minimum + ".");
+            }
+        } catch (NumberFormatException e) {
+            errors.addError(errorId, description + " must be a number.");
+        }
+    }
+
     private ActionErrors testConnection(final HttpServletRequest request) {
         ActionErrors errors = new ActionErrors();
 
@@ -117,10 +163,13 @@ public class GlobalSettingsController extends BaseFormXmlController {
                 .url(requestUrl)
                 .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
                 .build();
-            Response response = Http.CLIENT.newCall(httpRequest).execute();
-            
-            if (!response.isSuccessful()) {
-                errors.addError("errorConnection", "Invalid response status: " + response.code());
+            OkHttpClient client = httpClientFactory.createClient(getHttpClientSettingsFromRequest(request));
+            try (Response response = client.newCall(httpRequest).execute()) {
+                if (!response.isSuccessful()) {
+                    errors.addError("errorConnection", "Invalid response status: " + response.code());
+                }
+            } finally {
+                HttpClients.close(client);
             }
         } catch (IOException e) {
             handleConnectionException(errors, url, e);
@@ -136,6 +185,32 @@ public class GlobalSettingsController extends BaseFormXmlController {
         return credentialsBean;
     }
 
+    private ServerConfigBean getServerConfigFromRequest(HttpServletRequest request) {
+        ServerConfigBean serverConfig = new ServerConfigBean();
+        serverConfig.setUrl(request.getParameter("url"));
+        serverConfig.setCredentials(getCredentialsFromRequest(request));
+        serverConfig.setMaxConcurrentUploads(getIntParameter(request, "maxConcurrentUploads", Constants.DEFAULT_MAX_CONCURRENT_UPLOADS));
+        serverConfig.setRetryMaxAttempts(getIntParameter(request, "retryMaxAttempts", Constants.DEFAULT_RETRY_MAX_ATTEMPTS));
+        serverConfig.setRetryInitialDelay(getIntParameter(request, "retryInitialDelay", Constants.DEFAULT_RETRY_INITIAL_DELAY));
+        serverConfig.setHttpClientSettings(getHttpClientSettingsFromRequest(request));
+        return serverConfig;
+    }
+
+    private HttpClientSettings getHttpClientSettingsFromRequest(HttpServletRequest request) {
+        // An unchecked checkbox is not submitted at all
+        return HttpClientSettings.read(name -> HttpClientSettings.HTTP2.equals(name)
+            ? String.valueOf(request.getParameter(name) != null)
+            : request.getParameter(name));
+    }
+
+    private int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        if (StringUtil.isEmptyOrSpaces(value)) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
+
     private boolean isDeleteMode(final HttpServletRequest req) {
         return req.getParameter("deleteObject") != null;
     }
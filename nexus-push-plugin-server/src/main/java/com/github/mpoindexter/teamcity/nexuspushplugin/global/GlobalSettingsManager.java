@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientSettings;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.JDOMUtil;
 import com.intellij.util.containers.hash.HashMap;
 
@@ -23,10 +25,13 @@ import org.jdom.JDOMException;
 import org.jdom.filter.ElementFilter;
 import org.jetbrains.annotations.NotNull;
 
+import jetbrains.buildServer.log.Loggers;
 import jetbrains.buildServer.serverSide.ServerPaths;
 import jetbrains.buildServer.serverSide.crypt.EncryptUtil;
 
 public class GlobalSettingsManager {
+    private static final Logger LOG = Loggers.SERVER;
+
     private static final String CONFIG_FILE_NAME = "nexus-publisher-settings.xml";
 
     private final Map<String, ServerConfigBean> config;
@@ -38,23 +43,19 @@ public class GlobalSettingsManager {
         loadSettings();
     }
 
-    public void updateServer(String id, String url, CredentialsBean credentials) {
+    public void updateServer(String id, ServerConfigBean serverConfig) {
         synchronized(config) {
-            ServerConfigBean serverConfig = config.get(id);
-            if (serverConfig != null) {
-                serverConfig.setUrl(url);
-                serverConfig.setCredentials(credentials);
+            if (config.containsKey(id)) {
+                serverConfig.setId(id);
+                config.put(id, serverConfig);
             }
         }
     }
 
-    public void addServer(String url, CredentialsBean credentials) {
+    public void addServer(ServerConfigBean serverConfig) {
         synchronized(config) {
             String id = UUID.randomUUID().toString();
-            ServerConfigBean serverConfig = new ServerConfigBean();
             serverConfig.setId(id);
-            serverConfig.setUrl(url);
-            serverConfig.setCredentials(credentials);
             config.put(id, serverConfig);
         }
     }
@@ -93,6 +94,12 @@ public class GlobalSettingsManager {
                 serverConfigElement.setAttribute("url", serverConfig.getUrl());
                 serverConfigElement.setAttribute("username", serverConfig.getCredentials().getUsername());
                 serverConfigElement.setAttribute("password", EncryptUtil.scramble(serverConfig.getCredentials().getPassword()));
+                serverConfigElement.setAttribute("maxConcurrentUploads", String.valueOf(serverConfig.getMaxConcurrentUploads()));
+                serverConfigElement.setAttribute("retryMaxAttempts", String.valueOf(serverConfig.getRetryMaxAttempts()));
+                serverConfigElement.setAttribute("retryInitialDelay", String.valueOf(serverConfig.getRetryInitialDelay()));
+                for (Map.Entry<String, String> setting : serverConfig.getHttpClientSettings().toMap().entrySet()) {
+                    serverConfigElement.setAttribute(setting.getKey(), setting.getValue());
+                }
                 root.addContent(serverConfigElement);
             }
         }
@@ -122,6 +129,10 @@ public class GlobalSettingsManager {
                     serverConfig.setId(id);
                     serverConfig.setUrl(url);
                     serverConfig.setCredentials(new CredentialsBean(username, password));
+                    serverConfig.setMaxConcurrentUploads(getIntAttribute(serverElement, "maxConcurrentUploads", serverConfig.getMaxConcurrentUploads()));
+                    serverConfig.setRetryMaxAttempts(getIntAttribute(serverElement, "retryMaxAttempts", serverConfig.getRetryMaxAttempts()));
+                    serverConfig.setRetryInitialDelay(getIntAttribute(serverElement, "retryInitialDelay", serverConfig.getRetryInitialDelay()));
+                    serverConfig.setHttpClientSettings(HttpClientSettings.read(serverElement::getAttributeValue));
                     config.put(id, serverConfig);
                 }
             } catch (IOException | JDOMException e) {
@@ -130,4 +141,17 @@ public class GlobalSettingsManager {
             }
         }
     }
+
+    private static int getIntAttribute(Element element, String name, int defaultValue) {
+        String value = element.getAttributeValue(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid " + name + " for nexus server " + element.getAttributeValue("id") + ": " + value);
+            return defaultValue;
+        }
+    }
 }
\ No newline at end of file
@@ -7,6 +7,10 @@
 
 package com.github.mpoindexter.teamcity.nexuspushplugin.global;
 
+import com.github.mpoindexter.teamcity.nexuspushplugin.CircuitBreaker;
+import com.github.mpoindexter.teamcity.nexuspushplugin.ComponentCache;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientFactory;
+
 import jetbrains.buildServer.serverSide.auth.AuthUtil;
 import jetbrains.buildServer.serverSide.auth.Permission;
 import jetbrains.buildServer.serverSide.auth.SecurityContext;
@@ -18,26 +22,33 @@ import jetbrains.buildServer.web.openapi.WebControllerManager;
 import org.jetbrains.annotations.NotNull;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
 import java.util.Map;
 
 public class GlobalSettingsTab extends SimpleCustomTab {
 
     private final SecurityContext securityContext;
     private final GlobalSettingsManager globalSettings;
+    private final HttpClientFactory httpClientFactory;
+    private final ComponentCache componentCache;
 
     public GlobalSettingsTab(final @NotNull WebControllerManager controllerManager,
                              final @NotNull SecurityContext securityContext,
-                             final @NotNull GlobalSettingsManager globalSettings) {
+                             final @NotNull GlobalSettingsManager globalSettings,
+                             final @NotNull HttpClientFactory httpClientFactory,
+                             final @NotNull ComponentCache componentCache) {
         super(controllerManager, PlaceId.ADMIN_SERVER_CONFIGURATION_TAB, "nexus-push-plugin",
                 "nexusGlobalSettings.jsp",
                 "Nexus Servers");
         this.securityContext = securityContext;
         this.globalSettings = globalSettings;
+        this.httpClientFactory = httpClientFactory;
+        this.componentCache = componentCache;
 
         setPosition(PositionConstraint.after("serverConfigGeneral"));
         register();
 
-        controllerManager.registerController("/admin/nexus/nexusGlobalSettings.html", new GlobalSettingsController(globalSettings));
+        controllerManager.registerController("/admin/nexus/nexusGlobalSettings.html", new GlobalSettingsController(globalSettings, httpClientFactory));
     }
 
     @Override
@@ -46,6 +57,12 @@ public class GlobalSettingsTab extends SimpleCustomTab {
         model.put("hexEncodedPublicKey", RSACipher.getHexEncodedPublicKey());
         model.put("random", String.valueOf(Math.random()));
         model.put("globalSettings", globalSettings);
+        Map<String, CircuitBreaker> circuitBreakers = new HashMap<>();
+        for (ServerConfigBean server : globalSettings.getAllServers()) {
+            circuitBreakers.put(server.getId(), httpClientFactory.getCircuitBreaker(server));
+        }
+        model.put("circuitBreakers", circuitBreakers);
+        model.put("componentCache", componentCache);
     }
 
     @Override
@@ -7,10 +7,17 @@
 
 package com.github.mpoindexter.teamcity.nexuspushplugin.global;
 
+import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientSettings;
+
 public class ServerConfigBean {
     private String id;
     private String url;
     private CredentialsBean credentials;
+    private int maxConcurrentUploads = Constants.DEFAULT_MAX_CONCURRENT_UPLOADS;
+    private int retryMaxAttempts = Constants.DEFAULT_RETRY_MAX_ATTEMPTS;
+    private int retryInitialDelay = Constants.DEFAULT_RETRY_INITIAL_DELAY;
+    private HttpClientSettings httpClientSettings = new HttpClientSettings();
 
     public String getId() {
         return id;
@@ -35,4 +42,36 @@ public class ServerConfigBean {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+    }
+
+    public int getRetryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    public void setRetryMaxAttempts(int retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+    }
+
+    public int getRetryInitialDelay() {
+        return retryInitialDelay;
+    }
+
+    public void setRetryInitialDelay(int retryInitialDelay) {
+        this.retryInitialDelay = retryInitialDelay;
+    }
+
+    public HttpClientSettings getHttpClientSettings() {
+        return httpClientSettings;
+    }
+
+    public void setHttpClientSettings(HttpClientSettings httpClientSettings) {
+        this.httpClientSettings = httpClientSettings;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.report;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+import com.github.mpoindexter.teamcity.nexuspushplugin.BuildMetadataCache;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.web.servlet.ModelAndView;
+
+import jetbrains.buildServer.controllers.BaseController;
+import jetbrains.buildServer.controllers.BuildDataExtensionUtil;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildServer;
+
+/**
+ * Returns the Nexus components of the artifacts of a build as JSON, for the artifacts report tab to fill in after the
+ * page is shown.  The components of all artifacts, or of those given by index, are looked up in parallel; lookups
+ * that take longer than the deadline are returned as pending and can be requested again.  At most
+ * {@value #MAX_LOOKUPS} artifacts are looked up per request, the others are returned as pending too.
+ */
+public class ArtifactComponentsController extends BaseController {
+    private static final long DEADLINE = TimeUnit.SECONDS.toMillis(5);
+    private static final int MAX_LOOKUPS = 100;
+
+    private final SBuildServer server;
+    private final BuildMetadataCache metadataCache;
+    private final ComponentLookup componentLookup;
+
+    public ArtifactComponentsController(@NotNull SBuildServer server,
+                                        @NotNull BuildMetadataCache metadataCache,
+                                        @NotNull ComponentLookup componentLookup) {
+        this.server = server;
+        this.metadataCache = metadataCache;
+        this.componentLookup = componentLookup;
+    }
+
+    @Nullable
+    @Override
+    protected ModelAndView doHandle(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response) throws Exception {
+        SBuild build = BuildDataExtensionUtil.retrieveBuild(request, server);
+        List<ArtifactMetadata> artifacts = build == null ? null : metadataCache.getMetadata(build);
+        if (artifacts == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        List<Integer> indexes = new ArrayList<>();
+        String[] requested = request.getParameterValues("artifact");
+        if (requested == null) {
+            for (int i = 0; i < artifacts.size(); i++) {
+                indexes.add(i);
+            }
+        } else {
+            for (String index : requested) {
+                try {
+                    int i = Integer.parseInt(index);
+                    if (i >= 0 && i < artifacts.size()) {
+                        indexes.add(i);
+                    }
+                } catch (NumberFormatException e) {
+                    // ignore
+                }
+            }
+        }
+
+        ArtifactComponentsResponse result = new ArtifactComponentsResponse();
+        if (indexes.size() > MAX_LOOKUPS) {
+            for (int i : indexes.subList(MAX_LOOKUPS, indexes.size())) {
+                result.addArtifact(i, ArtifactComponentsResponse.Status.PENDING, null);
+            }
+            indexes = indexes.subList(0, MAX_LOOKUPS);
+        }
+        List<CompletableFuture<List<ComponentBean>>> lookups = new ArrayList<>();
+        for (int i : indexes) {
+            lookups.add(componentLookup.lookup(artifacts.get(i)));
+        }
+
+        long deadline = System.currentTimeMillis() + DEADLINE;
+        for (int i = 0; i < indexes.size(); i++) {
+            List<ComponentBean> components = null;
+            ArtifactComponentsResponse.Status status;
+            try {
+                components = lookups.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (components == null) {
+                    status = ArtifactComponentsResponse.Status.FAILED;
+                } else if (components.isEmpty()) {
+                    status = ArtifactComponentsResponse.Status.NOT_FOUND;
+                } else {
+                    status = ArtifactComponentsResponse.Status.FOUND;
+                }
+            } catch (TimeoutException e) {
+                status = ArtifactComponentsResponse.Status.PENDING;
+            } catch (ExecutionException e) {
+                status = e.getCause() instanceof RejectedExecutionException
+                    ? ArtifactComponentsResponse.Status.PENDING
+                    : ArtifactComponentsResponse.Status.FAILED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                status = ArtifactComponentsResponse.Status.PENDING;
+            }
+            result.addArtifact(indexes.get(i), status, components);
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().write(ArtifactComponentsResponse.ADAPTER.toJson(result));
+        return null;
+    }
+}
\ No newline at end of file
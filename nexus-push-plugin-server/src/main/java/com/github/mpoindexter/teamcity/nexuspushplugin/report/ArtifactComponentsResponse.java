@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.report;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+/**
+ * Response of the {@link ArtifactComponentsController}, the components of the artifacts of a build by their index in
+ * the build's Nexus metadata.
+ */
+public class ArtifactComponentsResponse {
+    private static Moshi moshi = new Moshi.Builder().build();
+    public static final JsonAdapter<ArtifactComponentsResponse> ADAPTER = moshi.adapter(ArtifactComponentsResponse.class);
+
+    public enum Status {
+        FOUND,
+        NOT_FOUND,
+        FAILED,
+        // Still being looked up when the request's deadline passed, or not looked up yet; can be requested again
+        PENDING
+    }
+
+    private List<ArtifactComponents> artifacts = new ArrayList<>();
+
+    /**
+     * @return the artifacts
+     */
+    public List<ArtifactComponents> getArtifacts() {
+        return artifacts;
+    }
+
+    public void addArtifact(int index, Status status, List<ComponentBean> components) {
+        ArtifactComponents artifact = new ArtifactComponents();
+        artifact.index = index;
+        artifact.status = status;
+        artifact.components = components;
+        artifacts.add(artifact);
+    }
+
+    public static class ArtifactComponents {
+        private int index;
+        private Status status;
+        private List<ComponentBean> components;
+
+        /**
+         * @return the index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the status
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the components
+         */
+        public List<ComponentBean> getComponents() {
+            return components;
+        }
+    }
+}
\ No newline at end of file
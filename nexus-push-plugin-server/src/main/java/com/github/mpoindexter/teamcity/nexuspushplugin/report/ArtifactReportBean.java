@@ -7,20 +7,19 @@
 
 package com.github.mpoindexter.teamcity.nexuspushplugin.report;
 
-import java.util.Collections;
-import java.util.List;
-
-import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
-
 public class ArtifactReportBean {
     private String filePath;
     private String fileName;
     private String sha1;
+    private String sha256;
+    private String md5;
     private String serverId;
     private String serverUrl;
     private String repository;
-
-    private List<ComponentBean> components = Collections.emptyList();
+    private String downloadUrl;
+    private boolean spooled;
+    private boolean spoolExpired;
+    private boolean detached;
 
     /**
      * @return the fileName
@@ -64,6 +63,34 @@ public class ArtifactReportBean {
         this.sha1 = sha1;
     }
 
+    /**
+     * @return the sha256
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @param sha256 the sha256 to set
+     */
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    /**
+     * @return the md5
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @param md5 the md5 to set
+     */
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
+
     /**
      * @return the serverId
      */
@@ -107,16 +134,58 @@ public class ArtifactReportBean {
     }
 
     /**
-     * @return the components
+     * @return the download URL of the asset, if recorded at upload
+     */
+    public String getDownloadUrl() {
+        return downloadUrl;
+    }
+
+    /**
+     * @param downloadUrl the downloadUrl to set
+     */
+    public void setDownloadUrl(String downloadUrl) {
+        this.downloadUrl = downloadUrl;
+    }
+
+    /**
+     * @return whether the artifact was spooled on the agent
+     */
+    public boolean isSpooled() {
+        return spooled;
+    }
+
+    /**
+     * @param spooled whether the artifact was spooled on the agent
+     */
+    public void setSpooled(boolean spooled) {
+        this.spooled = spooled;
+    }
+
+    /**
+     * @return whether the agent stopped retrying the spooled upload of the artifact
+     */
+    public boolean isSpoolExpired() {
+        return spoolExpired;
+    }
+
+    /**
+     * @param spoolExpired whether the agent stopped retrying the spooled upload of the artifact
+     */
+    public void setSpoolExpired(boolean spoolExpired) {
+        this.spoolExpired = spoolExpired;
+    }
+
+    /**
+     * @return whether the artifact is uploaded after the build
      */
-    public List<ComponentBean> getComponents() {
-        return components;
+    public boolean isDetached() {
+        return detached;
     }
 
     /**
-     * @param components the components to set
+     * @param detached whether the artifact is uploaded after the build
      */
-    public void setComponents(List<ComponentBean> components) {
-        this.components = components;
+    public void setDetached(boolean detached) {
+        this.detached = detached;
     }
 }
\ No newline at end of file
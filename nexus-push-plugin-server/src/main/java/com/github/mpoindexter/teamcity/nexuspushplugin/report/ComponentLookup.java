@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.report;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
+import com.github.mpoindexter.teamcity.nexuspushplugin.ComponentCache;
+import com.github.mpoindexter.teamcity.nexuspushplugin.HttpClientFactory;
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.CredentialsBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.GlobalSettingsManager;
+import com.github.mpoindexter.teamcity.nexuspushplugin.global.ServerConfigBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.SearchResponse;
+import com.intellij.openapi.util.text.StringUtil;
+
+import org.jetbrains.annotations.NotNull;
+
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.SBuildServer;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Looks up the Nexus components of build artifacts for the artifacts report, in parallel on a pool of background
+ * threads.  Lookups of the same artifact that are already running, e.g. for another user viewing the same build, are
+ * shared, and their results are kept in the {@link ComponentCache}.  Only a limited number of lookups wait for a
+ * thread; lookups beyond that are rejected and can be requested again later.
+ */
+public class ComponentLookup {
+    private static final int MAX_THREADS = 8;
+    private static final int MAX_QUEUED = 256;
+
+    private final GlobalSettingsManager globalSettings;
+    private final HttpClientFactory httpClientFactory;
+    private final ComponentCache componentCache;
+    private final Map<String, CompletableFuture<List<ComponentBean>>> running = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public ComponentLookup(@NotNull GlobalSettingsManager globalSettings,
+                           @NotNull HttpClientFactory httpClientFactory,
+                           @NotNull ComponentCache componentCache,
+                           @NotNull SBuildServer server) {
+        this.globalSettings = globalSettings;
+        this.httpClientFactory = httpClientFactory;
+        this.componentCache = componentCache;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED), r -> {
+            Thread thread = new Thread(r, "Nexus component lookup " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.addListener(new BuildServerAdapter() {
+            @Override
+            public void serverShutdown() {
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * Starts looking up the components of an artifact.  The result is null if they cannot be looked up, and empty if
+     * the artifact is not in Nexus.  It fails with a {@link RejectedExecutionException} if too many lookups are
+     * waiting.
+     */
+    public CompletableFuture<List<ComponentBean>> lookup(ArtifactMetadata artifact) {
+        ServerConfigBean serverConfig = globalSettings.getServer(artifact.getServerId());
+        if (serverConfig == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String searchAlgorithm = artifact.getSearchAlgorithm();
+        if (searchAlgorithm == null) {
+            return submit(serverConfig, artifact);
+        }
+
+        String key = ComponentCache.key(serverConfig.getId(), artifact.getRepository(), Checksums.attributeName(searchAlgorithm),
+            artifact.getChecksum(searchAlgorithm));
+        List<ComponentBean> components = componentCache.get(key);
+        if (components != null) {
+            return CompletableFuture.completedFuture(components);
+        }
+        CompletableFuture<List<ComponentBean>> future = running.computeIfAbsent(key, k -> submit(serverConfig, artifact).thenApply(result -> {
+            if (result != null) {
+                componentCache.put(key, serverConfig.getId(), result);
+            }
+            return result;
+        }));
+        future.whenComplete((result, e) -> running.remove(key, future));
+        return future;
+    }
+
+    private CompletableFuture<List<ComponentBean>> submit(ServerConfigBean serverConfig, ArtifactMetadata artifact) {
+        try {
+            return CompletableFuture.supplyAsync(() -> findComponents(serverConfig, artifact), executor);
+        } catch (RejectedExecutionException e) {
+            // Too many lookups waiting, or shutting down
+            CompletableFuture<List<ComponentBean>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Fetches the component recorded at upload time, or searches for it by digest if none was recorded or it no longer
+     * exists.  Returns null if the component cannot be looked up.
+     */
+    private List<ComponentBean> findComponents(ServerConfigBean serverConfig, ArtifactMetadata artifact) {
+        CredentialsBean credentials = serverConfig.getCredentials();
+        OkHttpClient client = httpClientFactory.getClient(serverConfig);
+        try {
+            String componentId = artifact.getComponentId();
+            if (!StringUtil.isEmptyOrSpaces(componentId)) {
+                HttpUrl url = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
+                    .addPathSegments("service/rest/v1/components")
+                    .addPathSegment(componentId)
+                    .build();
+
+                Request nexusRequest = new Request.Builder()
+                    .url(url)
+                    .addHeader("Accept", "application/json")
+                    .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
+                    .get()
+                    .build();
+                try (Response response = client.newCall(nexusRequest).execute()) {
+                    if (response.isSuccessful()) {
+                        ComponentBean component = ComponentBean.ADAPTER.fromJson(response.body().source());
+                        return component == null ? Collections.emptyList() : Collections.singletonList(component);
+                    }
+                }
+            }
+
+            String searchAlgorithm = artifact.getSearchAlgorithm();
+            if (searchAlgorithm == null) {
+                return null;
+            }
+            HttpUrl url = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
+                .addPathSegments("service/rest/v1/search")
+                .addQueryParameter("repository", artifact.getRepository())
+                .addQueryParameter(Checksums.attributeName(searchAlgorithm), artifact.getChecksum(searchAlgorithm))
+                .build();
+
+            Request nexusRequest = new Request.Builder()
+                .url(url)
+                .addHeader("Accept", "application/json")
+                .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
+                .get()
+                .build();
+            try (Response response = client.newCall(nexusRequest).execute()) {
+                if (response.isSuccessful()) {
+                    SearchResponse searchResponse = SearchResponse.ADAPTER.fromJson(response.body().source());
+                    return searchResponse.getItems();
+                }
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+        return null;
+    }
+}
\ No newline at end of file
@@ -7,124 +7,83 @@
 
 package com.github.mpoindexter.teamcity.nexuspushplugin.report;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+import com.github.mpoindexter.teamcity.nexuspushplugin.BuildMetadataCache;
+import com.github.mpoindexter.teamcity.nexuspushplugin.Checksums;
 import com.github.mpoindexter.teamcity.nexuspushplugin.Constants;
-import com.github.mpoindexter.teamcity.nexuspushplugin.Http;
-import com.github.mpoindexter.teamcity.nexuspushplugin.global.CredentialsBean;
-import com.github.mpoindexter.teamcity.nexuspushplugin.global.GlobalSettingsManager;
-import com.github.mpoindexter.teamcity.nexuspushplugin.global.ServerConfigBean;
-import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.SearchResponse;
-import com.intellij.openapi.util.JDOMUtil;
 
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.JDOMException;
-import org.jdom.filter.ElementFilter;
 import org.jetbrains.annotations.NotNull;
 
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SBuildServer;
-import jetbrains.buildServer.serverSide.artifacts.ArtifactsGuard;
 import jetbrains.buildServer.web.openapi.PagePlaces;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import jetbrains.buildServer.web.openapi.ViewLogTab;
-import okhttp3.Credentials;
-import okhttp3.HttpUrl;
-import okhttp3.Request;
-import okhttp3.Response;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
 
+/**
+ * Build results tab listing the artifacts a build pushed to Nexus.  The page is rendered from the build's Nexus
+ * metadata only; the components are fetched from Nexus afterwards through the {@link ArtifactComponentsController}.
+ */
 public class NexusArtifactsReportTab extends ViewLogTab {
-    private final ArtifactsGuard artifactGuard;
-    private final GlobalSettingsManager globalSettings;
+    private final BuildMetadataCache metadataCache;
+    private final String componentsUrl;
 
     public NexusArtifactsReportTab(@NotNull PagePlaces pagePlaces,
                                    @NotNull SBuildServer server,
                                    @NotNull PluginDescriptor pluginDescriptor,
-                                   @NotNull ArtifactsGuard artifactGuard,
-                                   @NotNull GlobalSettingsManager globalSettings) {
+                                   @NotNull BuildMetadataCache metadataCache,
+                                   @NotNull WebControllerManager controllerManager,
+                                   @NotNull ComponentLookup componentLookup) {
         super("Nexus Artifacts", "nexusArtifactsTab", pagePlaces, server);
-        this.artifactGuard = artifactGuard;
-        this.globalSettings = globalSettings;
+        this.metadataCache = metadataCache;
         setIncludeUrl(pluginDescriptor.getPluginResourcesPath() + "nexusArtifactsReport.jsp");
+
+        componentsUrl = pluginDescriptor.getPluginResourcesPath("nexusArtifactComponents.html");
+        controllerManager.registerController(componentsUrl, new ArtifactComponentsController(server, metadataCache, componentLookup));
     }
 
     @Override
     protected void fillModel(Map<String, Object> model, HttpServletRequest request, SBuild build) {
         List<ArtifactReportBean> artifacts = new ArrayList<>();
-        File artifactsDir = build.getArtifactsDirectory();
-        artifactGuard.lockReading(artifactsDir);
-        try {
-            File metadataFile = new File(artifactsDir, Constants.NEXUS_BUILD_METADATA_PATH);
-            Document doc = JDOMUtil.loadDocument(metadataFile);
-            Element root = doc.getRootElement();
-            @SuppressWarnings("unchecked")
-            List<Element> artifactElements = root.getContent(new ElementFilter("artifact"));
-            for (Element artifactElement : artifactElements) {
-                String path = artifactElement.getAttributeValue("path");
-                String name = artifactElement.getAttributeValue("name");
-                String sha1 = artifactElement.getAttributeValue("sha1");
-                String serverId = artifactElement.getAttributeValue("serverId");
-                String serverUrl = artifactElement.getAttributeValue("serverUrl");
-                String repository = artifactElement.getAttributeValue("repository");
-
-                ArtifactReportBean bean = new ArtifactReportBean();
-                bean.setFilePath(path);
-                bean.setFileName(name);
-                bean.setSha1(sha1);
-                bean.setServerId(serverId);
-                bean.setServerUrl(serverUrl);
-                bean.setRepository(repository);
-                artifacts.add(bean);
-                ServerConfigBean serverConfig = globalSettings.getServer(serverId);
-                if (serverConfig != null) {
-                    try {
-                        CredentialsBean credentials = serverConfig.getCredentials();
-                        HttpUrl url = HttpUrl.parse(serverConfig.getUrl()).newBuilder()
-                            .addPathSegments("service/rest/v1/search")
-                            .addQueryParameter("repository", repository)
-                            .addQueryParameter("sha1", sha1)
-                            .build();
-
-                        Request nexusRequest = new Request.Builder()
-                            .url(url)
-                            .addHeader("Accept", "application/json")
-                            .addHeader("Authorization", Credentials.basic(credentials.getUsername(), credentials.getPassword()))
-                            .get()
-                            .build();
-                        Response response = Http.CLIENT.newCall(nexusRequest).execute();
-                        if (response.isSuccessful()) {
-                            SearchResponse searchResponse = SearchResponse.ADAPTER.fromJson(response.body().source());
-                            bean.setComponents(searchResponse.getItems());
-                        }
-                    } catch (IOException e) {
-                        // ignore
-                    }
-                }
-            }
-        } catch (IOException | JDOMException e) {
-            // ignore
-        } finally {
-            artifactGuard.unlockReading(artifactsDir);
+        // The agent gives up on spooled uploads after a while, the ones that did not reach Nexus by then never will
+        Date finishDate = build.getFinishDate();
+        boolean spoolExpired = finishDate != null
+            && System.currentTimeMillis() - finishDate.getTime() > TimeUnit.DAYS.toMillis(Constants.SPOOL_MAX_AGE_DAYS);
+        List<ArtifactMetadata> metadata = metadataCache.getMetadata(build);
+        for (ArtifactMetadata artifact : metadata == null ? Collections.<ArtifactMetadata>emptyList() : metadata) {
+            ArtifactReportBean bean = new ArtifactReportBean();
+            bean.setFilePath(artifact.getPath());
+            bean.setFileName(artifact.getName());
+            bean.setSha1(artifact.getSha1());
+            bean.setSha256(artifact.getChecksum(Checksums.SHA256));
+            bean.setMd5(artifact.getChecksum(Checksums.MD5));
+            bean.setSpooled(artifact.isSpooled());
+            bean.setSpoolExpired(spoolExpired);
+            bean.setDetached(artifact.isDetached());
+            bean.setServerId(artifact.getServerId());
+            bean.setServerUrl(artifact.getServerUrl());
+            bean.setRepository(artifact.getRepository());
+            bean.setDownloadUrl(artifact.getDownloadUrl());
+            artifacts.add(bean);
         }
         model.put("artifacts", artifacts);
+        model.put("buildId", build.getBuildId());
+        model.put("componentsUrl", componentsUrl);
+        model.put("spoolMaxAgeDays", Constants.SPOOL_MAX_AGE_DAYS);
     }
 
     @Override
     protected boolean isAvailable(HttpServletRequest request, SBuild build) {
-        File artifactsDir = build.getArtifactsDirectory();
-        artifactGuard.lockReading(artifactsDir);
-        try {
-            File metadataFile = new File(artifactsDir, Constants.NEXUS_BUILD_METADATA_PATH);
-            return metadataFile.exists();
-        } finally {
-            artifactGuard.unlockReading(artifactsDir);
-        }
+        return metadataCache.hasMetadata(build);
     }
 }
\ No newline at end of file
@@ -6,8 +6,11 @@
 --%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <%@ taglib prefix="bs" tagdir="/WEB-INF/tags" %>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions" %>
 
 <jsp:useBean id="artifacts" type="java.util.List" scope="request"/>
+<jsp:useBean id="buildId" type="java.lang.Long" scope="request"/>
+<jsp:useBean id="componentsUrl" type="java.lang.String" scope="request"/>
 
 <style>
     .summary-label {
@@ -23,7 +26,7 @@
 </style>
 
 <div>
-    <c:forEach var="artifact" items="${artifacts}">
+    <c:forEach var="artifact" items="${artifacts}" varStatus="status">
 
         <div class="artifact">
             <h1 class="artifact-name">${artifact.fileName}</h1>
@@ -42,41 +45,125 @@
                         <td class="summary-label">File Path</td>
                         <td class="summary-value">${artifact.filePath}</td>
                     </tr>
+                    <c:if test="${not empty artifact.downloadUrl}">
+                    <tr>
+                        <td class="summary-label">Download URL</td>
+                        <td class="summary-value"><a href="${artifact.downloadUrl}">${artifact.downloadUrl}</a></td>
+                    </tr>
+                    </c:if>
 
                     <tr>
                         <td class="summary-label">SHA 1</td>
                         <td class="summary-value">${artifact.sha1}</td>
                     </tr>
+                    <c:if test="${not empty artifact.sha256}">
+                    <tr>
+                        <td class="summary-label">SHA 256</td>
+                        <td class="summary-value">${artifact.sha256}</td>
+                    </tr>
+                    </c:if>
+                    <c:if test="${not empty artifact.md5}">
+                    <tr>
+                        <td class="summary-label">MD5</td>
+                        <td class="summary-value">${artifact.md5}</td>
+                    </tr>
+                    </c:if>
                 </table>
             </div>
 
             <div class="artifact-components">
                 <h2>Components</h2>
-                <c:forEach var="component" items="${artifact.components}">
-                    <div class="component">
-                        <div class="component-summary">
-                            <table>
-                                <tr>
-                                    <td class="summary-label">Name</td>
-                                    <td class="summary-value">${component.name}</a></td>
-                                </tr>
-                                <tr>
-                                    <td class="summary-label">Group</td>
-                                    <td class="summary-value">${component.group}</td>
-                                </tr>
-                                <tr>
-                                    <td class="summary-label">Version</td>
-                                    <td class="summary-value">${component.version}</td>
-                                </tr>
-                                <tr>
-                                    <td class="summary-label">Format</td>
-                                    <td class="summary-value">${component.format}</td>
-                                </tr>
-                            </table>
-                        </div>
-                    </div>
-                </c:forEach>
+                <div id="nexusComponents_${status.index}"><div class="component">Loading...</div></div>
+                <div id="nexusNotFound_${status.index}" style="display: none;">
+                    <c:choose>
+                        <c:when test="${artifact.spooled and artifact.spoolExpired}">
+                            <div class="component">The artifact was not uploaded.  The agent stopped retrying its upload in the background after ${spoolMaxAgeDays} days, the reason is in the agent log.</div>
+                        </c:when>
+                        <c:when test="${artifact.spooled and artifact.detached}">
+                            <div class="component">The artifact is uploaded by the agent in the background after the build and has not reached Nexus yet.  Uploads that Nexus rejects are reported in the agent log.</div>
+                        </c:when>
+                        <c:when test="${artifact.spooled}">
+                            <div class="component">Nexus could not be reached during the build.  The artifact was spooled on the agent and is uploaded in the background.  Uploads that Nexus rejects are reported in the agent log.</div>
+                        </c:when>
+                    </c:choose>
+                </div>
             </div>
         </div>
     </c:forEach>
-</div>
\ No newline at end of file
+</div>
+
+<script type="text/javascript">
+    (function() {
+        var url = '${componentsUrl}';
+        // Pending lookups are requested again with a growing delay, until a number of rounds in a row made no progress
+        var maxRounds = 10;
+        var initialDelay = 500;
+        var maxDelay = 10000;
+
+        function row(label, value) {
+            return $j('<tr/>')
+                .append($j('<td class="summary-label"/>').text(label))
+                .append($j('<td class="summary-value"/>').text(value == null ? '' : value));
+        }
+
+        function show(artifact) {
+            var container = $j('#nexusComponents_' + artifact.index).empty();
+            if (artifact.status == 'FOUND') {
+                $j.each(artifact.components, function(i, component) {
+                    container.append($j('<div class="component"/>').append($j('<div class="component-summary"/>').append($j('<table/>')
+                        .append(row('Name', component.name))
+                        .append(row('Group', component.group))
+                        .append(row('Version', component.version))
+                        .append(row('Format', component.format)))));
+                });
+            } else if (artifact.status == 'NOT_FOUND') {
+                container.html($j('#nexusNotFound_' + artifact.index).html());
+            } else {
+                container.append($j('<div class="component"/>').text('The component could not be looked up in Nexus.'));
+            }
+        }
+
+        function load(indexes, round) {
+            // The server answers once all lookups are done or its deadline passed; the rest are requested again
+            $j.ajax({
+                url: url,
+                data: $j.param({buildId: '${buildId}', artifact: indexes}, true),
+                dataType: 'json',
+                cache: false,
+                success: function(response) {
+                    var pending = [];
+                    $j.each(response.artifacts, function(i, artifact) {
+                        if (artifact.status == 'PENDING') {
+                            pending.push(artifact.index);
+                        } else {
+                            show(artifact);
+                        }
+                    });
+                    var next = pending.length < indexes.length ? 0 : round + 1;
+                    if (pending.length > 0 && next < maxRounds) {
+                        setTimeout(function() {
+                            load(pending, next);
+                        }, Math.min(maxDelay, initialDelay * Math.pow(2, next)));
+                    } else {
+                        $j.each(pending, function(i, index) {
+                            show({index: index, status: 'FAILED'});
+                        });
+                    }
+                },
+                error: function() {
+                    $j.each(indexes, function(i, index) {
+                        show({index: index, status: 'FAILED'});
+                    });
+                }
+            });
+        }
+
+        var indexes = [];
+        for (var i = 0; i < ${fn:length(artifacts)}; i++) {
+            indexes.push(i);
+        }
+        if (indexes.length > 0) {
+            load(indexes, 0);
+        }
+    })();
+</script>
\ No newline at end of file
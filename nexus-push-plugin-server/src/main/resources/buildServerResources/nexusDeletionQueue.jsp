@@ -0,0 +1,156 @@
+<%--
+* Copyright (c) 2018-Present Michael Poindexter.
+* 
+* This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+* which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+--%>
+
+<%@include file="/include.jsp" %>
+
+<jsp:useBean id="deletionQueue" type="com.github.mpoindexter.teamcity.nexuspushplugin.cleanup.DeletionQueue"
+             scope="request"/>
+
+<jsp:useBean id="referencedArtifacts" type="java.lang.Integer"
+             scope="request"/>
+
+<jsp:useBean id="referenceIndexComplete" type="java.lang.Boolean"
+             scope="request"/>
+
+<style type="text/css">
+    .summary-label {
+        font-weight: bold;
+        padding-right: 1em;
+    }
+</style>
+
+<c:url var="controllerUrl" value="/admin/nexus/nexusDeletionQueue.html"/>
+
+<script type="text/javascript">
+    var DeletionQueue = {
+        run: function(action, params) {
+            if (action == 'discard' && !confirm('The components of discarded deletions stay in Nexus. Are you sure?')) return false;
+            BS.ajaxRequest('${controllerUrl}', {
+                parameters: 'action=' + action + '&' + params,
+                onComplete: function() {
+                    $('deletionQueue').refresh();
+                }
+            });
+            return false;
+        }
+    };
+</script>
+<div>
+    <bs:refreshable containerId="deletionQueue" pageUrl="${pageUrl}">
+
+        <table border="0" style="width: 80%;">
+            <bs:messages key="deletionRetried"/>
+            <bs:messages key="deletionDiscarded"/>
+        </table>
+
+        <p>
+            Nexus components of builds removed by TeamCity cleanup are deleted in the background.
+            <a href="#" onclick="$('deletionQueue').refresh(); return false">Refresh</a>
+        </p>
+
+        <table>
+            <tr>
+                <td class="summary-label">Queued</td>
+                <td>${deletionQueue.pendingCount}</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Running</td>
+                <td>${deletionQueue.inProgressCount}</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Failed</td>
+                <td>${deletionQueue.deadCount}</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Waiting for other builds</td>
+                <td>${deletionQueue.deferredCount} (deleted once no build uses them anymore)</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Deleted since server start</td>
+                <td>${deletionQueue.deletedCount} (${deletionQueue.skippedCount} not found or not unique)</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Throughput</td>
+                <td><fmt:formatNumber value="${deletionQueue.deletesPerMinute}" maxFractionDigits="1"/> deletes per minute</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Failed attempts since server start</td>
+                <td>${deletionQueue.failedAttemptCount}</td>
+            </tr>
+            <tr>
+                <td class="summary-label">Artifacts referenced by builds</td>
+                <td>${referencedArtifacts}<c:if test="${not referenceIndexComplete}"> (still adding existing builds, components are deleted once all builds are added)</c:if></td>
+            </tr>
+        </table>
+
+        <h2>Failed</h2>
+        <c:choose>
+            <c:when test="${deletionQueue.deadCount == 0}">
+                <p>No failed deletions.</p>
+            </c:when>
+            <c:otherwise>
+                <p>
+                    <a href="#" onclick="return DeletionQueue.run('retry', 'all=true')">Retry all</a> |
+                    <a href="#" onclick="return DeletionQueue.run('discard', 'all=true')">Discard all</a>
+                </p>
+                <l:tableWithHighlighting className="settings" style="width: 80%;">
+                    <tr>
+                        <th>Component</th>
+                        <th>Repository</th>
+                        <th>Builds</th>
+                        <th>Attempts</th>
+                        <th>Error</th>
+                        <th colspan="2">Actions</th>
+                    </tr>
+                    <c:forEach var="task" items="${deletionQueue.deadTasks}">
+                        <tr>
+                            <td><c:out value="${not empty task.componentId ? task.componentId : not empty task.assetPath ? task.assetPath : task.checksum}"/></td>
+                            <td><c:out value="${task.repository}"/></td>
+                            <td><c:out value="${task.buildIds}"/></td>
+                            <td>${task.attempts}</td>
+                            <td><c:out value="${task.lastError}"/></td>
+                            <td class="edit"><a href="#" onclick="return DeletionQueue.run('retry', 'id=${task.id}')">retry</a></td>
+                            <td class="edit"><a href="#" onclick="return DeletionQueue.run('discard', 'id=${task.id}')">discard</a></td>
+                        </tr>
+                    </c:forEach>
+                </l:tableWithHighlighting>
+            </c:otherwise>
+        </c:choose>
+
+        <h2>Queued</h2>
+        <c:choose>
+            <c:when test="${deletionQueue.pendingCount == 0}">
+                <p>The queue is empty.</p>
+            </c:when>
+            <c:otherwise>
+                <l:tableWithHighlighting className="settings" style="width: 80%;">
+                    <tr>
+                        <th>Component</th>
+                        <th>Repository</th>
+                        <th>Builds</th>
+                        <th>Next attempt</th>
+                        <th>Attempts</th>
+                        <th>Last error</th>
+                    </tr>
+                    <c:forEach var="task" items="${deletionQueue.pendingTasks}" end="99">
+                        <tr>
+                            <td><c:out value="${not empty task.componentId ? task.componentId : not empty task.assetPath ? task.assetPath : task.checksum}"/></td>
+                            <td><c:out value="${task.repository}"/></td>
+                            <td><c:out value="${task.buildIds}"/></td>
+                            <td><fmt:formatDate value="${task.nextAttemptDate}" pattern="yyyy-MM-dd HH:mm:ss"/></td>
+                            <td>${task.attempts}</td>
+                            <td><c:out value="${task.lastError}"/></td>
+                        </tr>
+                    </c:forEach>
+                </l:tableWithHighlighting>
+                <c:if test="${deletionQueue.pendingCount > 100}">
+                    <p>Showing the next 100 of ${deletionQueue.pendingCount} queued deletions.</p>
+                </c:if>
+            </c:otherwise>
+        </c:choose>
+    </bs:refreshable>
+</div>
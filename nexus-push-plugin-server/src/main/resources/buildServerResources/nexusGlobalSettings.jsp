@@ -16,6 +16,12 @@
 <jsp:useBean id="random" type="java.lang.String"
              scope="request"/>
 
+<jsp:useBean id="circuitBreakers" type="java.util.Map"
+             scope="request"/>
+
+<jsp:useBean id="componentCache" type="com.github.mpoindexter.teamcity.nexuspushplugin.ComponentCache"
+             scope="request"/>
+
 <style type="text/css">
     .editObjectFormDialog label {
         display: inline-block;
@@ -68,14 +74,18 @@
                     $('errorUrl').innerHTML = '';
                     this.formElement().username.value = '';
                     this.formElement().password.value = '';
+                    this.setServerSettings({maxConcurrentUploads: '4', retryMaxAttempts: '3', retryInitialDelay: '1000',
+                        connectTimeout: '60', readTimeout: '60', writeTimeout: '60', maxIdleConnections: '5', keepAlive: '300',
+                        maxRequestsPerHost: '5', http2: 'true', proxyHost: '', proxyPort: ''});
                     this.formElement().editMode.value = 'add';
                     this.showCentered();
                 },
-                showEditDialog: function(id, url, username, password, randomPass, publicKey) {
+                showEditDialog: function(id, url, settings, username, password, randomPass, publicKey) {
                     ConfigTabDialog.enable();
                     this.formElement().id.value = id;
                     this.formElement().url.value = url;
                     $('errorUrl').innerHTML = '';
+                    this.setServerSettings(settings);
                     if (ConfigTabDialog.isValueNotBlank(username)) {
                         this.formElement().username.value = username;
                     }
@@ -85,6 +95,20 @@
                     this.formElement().editMode.value = 'edit';
                     this.showCentered();
                 },
+                setServerSettings: function(settings) {
+                    for (var name in settings) {
+                        var field = this.formElement()[name];
+                        if (field.type == 'checkbox') {
+                            field.checked = settings[name] == 'true';
+                        } else {
+                            field.value = settings[name];
+                        }
+                        var error = $('error' + name.charAt(0).toUpperCase() + name.substring(1));
+                        if (error) {
+                            error.innerHTML = '';
+                        }
+                    }
+                },
                 setPasswordValue: function(passwordField, encryptedPassword, randomPass, publicKey) {
                     var passwordValue = '';
                     if (ConfigTabDialog.isValueNotBlank(encryptedPassword)) {
@@ -112,6 +136,36 @@
                         errorUrl : function(elem) {
                             $('errorUrl').innerHTML = elem.firstChild.nodeValue;
                         },
+                        errorMaxConcurrentUploads : function(elem) {
+                            $('errorMaxConcurrentUploads').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorRetryMaxAttempts : function(elem) {
+                            $('errorRetryMaxAttempts').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorRetryInitialDelay : function(elem) {
+                            $('errorRetryInitialDelay').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorConnectTimeout : function(elem) {
+                            $('errorConnectTimeout').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorReadTimeout : function(elem) {
+                            $('errorReadTimeout').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorWriteTimeout : function(elem) {
+                            $('errorWriteTimeout').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorMaxIdleConnections : function(elem) {
+                            $('errorMaxIdleConnections').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorKeepAlive : function(elem) {
+                            $('errorKeepAlive').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorMaxRequestsPerHost : function(elem) {
+                            $('errorMaxRequestsPerHost').innerHTML = elem.firstChild.nodeValue;
+                        },
+                        errorProxyPort : function(elem) {
+                            $('errorProxyPort').innerHTML = elem.firstChild.nodeValue;
+                        },
                         errorTimeout : function(elem) {
                             $('errorTimeout').innerHTML = elem.firstChild.nodeValue;
                         },
@@ -166,11 +220,19 @@
         <l:tableWithHighlighting className="settings" highlightImmediately="true" style="width: 80%;">
             <tr>
                 <th>Nexus Server URL</th>
+                <th>Status</th>
                 <th colspan="2">Actions</th>
             </tr>
             <c:forEach var="server" items="${globalSettings.allServers}">
                 <c:set var="onclick">
                     ConfigTabDialog.showEditDialog('${server.id}', '${server.url}',
+                    {maxConcurrentUploads: '${server.maxConcurrentUploads}', retryMaxAttempts: '${server.retryMaxAttempts}',
+                    retryInitialDelay: '${server.retryInitialDelay}',
+                    connectTimeout: '${server.httpClientSettings.connectTimeout}', readTimeout: '${server.httpClientSettings.readTimeout}',
+                    writeTimeout: '${server.httpClientSettings.writeTimeout}', maxIdleConnections: '${server.httpClientSettings.maxIdleConnections}',
+                    keepAlive: '${server.httpClientSettings.keepAlive}', maxRequestsPerHost: '${server.httpClientSettings.maxRequestsPerHost}',
+                    http2: '${server.httpClientSettings.http2}', proxyHost: '${server.httpClientSettings.proxyHost}',
+                    proxyPort: '${server.httpClientSettings.proxyPort > 0 ? server.httpClientSettings.proxyPort : ""}'},
                     '${server.credentials.username}',
                     '${server.credentials.encryptedPassword}',
                     '${hexEncodedPublicKey}',
@@ -180,6 +242,25 @@
                     <td class="highlight" onclick="${onclick}">
                         <c:out value="${server.url}"/>
                     </td>
+                    <c:set var="circuitBreaker" value="${circuitBreakers[server.id]}"/>
+                    <td class="highlight" onclick="${onclick}">
+                        <c:choose>
+                            <c:when test="${circuitBreaker.state == 'OPEN'}">
+                                <span class="error" style="margin-left: 0;">Unavailable</span>, calls fail until
+                                <fmt:formatDate value="${circuitBreaker.retryAt}" pattern="HH:mm:ss"/>
+                                (<c:out value="${circuitBreaker.lastFailure}"/>)
+                            </c:when>
+                            <c:when test="${circuitBreaker.state == 'HALF_OPEN'}">
+                                Recovering, probing the server
+                            </c:when>
+                            <c:otherwise>
+                                Available
+                                <c:if test="${circuitBreaker.failureRate > 0 or circuitBreaker.slowCallRate > 0}">
+                                    (${circuitBreaker.failureRate}% failed, ${circuitBreaker.slowCallRate}% slow calls)
+                                </c:if>
+                            </c:otherwise>
+                        </c:choose>
+                    </td>
                     <td class="edit highlight">
                         <a href="#" onclick="${onclick}; return false">edit</a>
                     </td>
@@ -189,6 +270,11 @@
                 </tr>
             </c:forEach>
         </l:tableWithHighlighting>
+
+        <p class="grayNote">
+            Artifact report lookups cached: ${componentCache.size}, ${componentCache.hits} hits,
+            ${componentCache.misses} misses, ${componentCache.evictions} evicted.
+        </p>
     </bs:refreshable>
 
     <p>
@@ -240,6 +326,188 @@
                     <forms:passwordField name="password"/>
                 </td>
             </tr>
+            <tr>
+                <td>
+                    <label for="maxConcurrentUploads">Max concurrent uploads:
+                        <bs:helpIcon
+                                iconTitle="Maximum number of uploads a build agent runs against this server at the same time."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="maxConcurrentUploads" value="4"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorMaxConcurrentUploads" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="retryMaxAttempts">Upload attempts:
+                        <bs:helpIcon
+                                iconTitle="Number of times an upload is attempted when the server is unavailable or returns a transient error (408, 429, 502, 503, 504)."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="retryMaxAttempts" value="3"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorRetryMaxAttempts" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="retryInitialDelay">Initial retry delay (ms):
+                        <bs:helpIcon
+                                iconTitle="Delay before the first retry.  The delay doubles with each attempt and is randomized; a Retry-After header from the server takes precedence."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="retryInitialDelay" value="1000"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorRetryInitialDelay" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="connectTimeout">Connect timeout (s):
+                        <bs:helpIcon
+                                iconTitle="Timeout for establishing a connection to the server, 0 for no timeout."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="connectTimeout" value="60"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorConnectTimeout" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="readTimeout">Read timeout (s):
+                        <bs:helpIcon
+                                iconTitle="Timeout for reading from an established connection, 0 for no timeout."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="readTimeout" value="60"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorReadTimeout" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="writeTimeout">Write timeout (s):
+                        <bs:helpIcon
+                                iconTitle="Timeout for writing to an established connection, 0 for no timeout."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="writeTimeout" value="60"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorWriteTimeout" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="maxIdleConnections">Max idle connections:
+                        <bs:helpIcon
+                                iconTitle="Maximum number of idle connections kept open to the server."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="maxIdleConnections" value="5"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorMaxIdleConnections" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="keepAlive">Keep-alive (s):
+                        <bs:helpIcon
+                                iconTitle="Time an idle connection is kept open before it is closed."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="keepAlive" value="300"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorKeepAlive" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="maxRequestsPerHost">Max requests per host:
+                        <bs:helpIcon
+                                iconTitle="Maximum number of requests run against the server at the same time by the TeamCity server and by each agent."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="maxRequestsPerHost" value="5"/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorMaxRequestsPerHost" style="margin-left: 0;"></span>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="http2">Use HTTP/2:
+                        <bs:helpIcon
+                                iconTitle="Negotiate HTTP/2 with servers that support it.  Uncheck to always use HTTP/1.1."/>
+                    </label>
+                </td>
+                <td>
+                    <input type="checkbox" id="http2" name="http2" value="true" checked="checked"/>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="proxyHost">Proxy host:
+                        <bs:helpIcon
+                                iconTitle="HTTP proxy used to reach the server.  Leave empty to connect directly."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="proxyHost" value=""/>
+                </td>
+            </tr>
+            <tr>
+                <td>
+                    <label for="proxyPort">Proxy port:
+                        <bs:helpIcon
+                                iconTitle="Port of the HTTP proxy."/>
+                    </label>
+                </td>
+                <td>
+                    <forms:textField name="proxyPort" value=""/>
+                </td>
+            </tr>
+            <tr>
+                <td colspan="2">
+                    <span class="error" id="errorProxyPort" style="margin-left: 0;"></span>
+                </td>
+            </tr>
         </table>
         <div class="saveButtonsBlock">
             <a href="#" onclick="ConfigTabDialog.close(); return false" class="btn cancel">Cancel</a>
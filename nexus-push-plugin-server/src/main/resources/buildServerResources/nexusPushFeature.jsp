@@ -28,6 +28,21 @@
     <span class="smallNote">Specify Nexus repository ID</span>
   </td>
 </tr>
+<tr>
+  <th>Upload mode:</th>
+  <td>
+    <props:selectProperty name="uploadMode">
+      <props:option value="components">Components API</props:option>
+      <props:option value="put">Direct PUT (raw and Maven hosted repositories)</props:option>
+    </props:selectProperty>
+    <span class="error" id="error_uploadMode"></span>
+    <span class="smallNote">
+      Components API uploads all files of the feature as a single component.
+      Direct PUT uploads each file to /repository/&lt;repository&gt;/&lt;path&gt; separately, several files at a time,
+      without buffering the files; specify the parameters as repository_path=@&lt;artifact_path&gt;, a path ending with / uploads the file into that directory
+    </span>
+  </td>
+</tr>
 <tr>
   <th>Artifact Upload Parameters:<l:star/></th>
   <td>
@@ -44,6 +59,50 @@
     </span>
   </td>
 </tr>
+<tr>
+  <th>Upload each matched file:</th>
+  <td>
+    <props:checkboxProperty name="fanOut" uncheckedValue="false" />
+    <span class="error" id="error_fanOut"></span>
+    <span class="smallNote">
+      If checked the first @&lt;artifact_path&gt; pattern may match any number of files, and each file is uploaded separately, several at a time.
+      Parameter names and values may refer to the file as &#36;{fileName}, &#36;{baseName}, &#36;{extension}, &#36;{relativePath} and &#36;{relativeDir}.
+      For example:
+      <pre>
+      raw.directory=bin/&#36;{relativeDir}
+      raw.asset1=@out/**/*.exe
+      raw.asset1.filename=&#36;{fileName}
+      </pre>
+    </span>
+  </td>
+</tr>
+<tr>
+  <th>Combine matched files:</th>
+  <td>
+    <props:checkboxProperty name="batchAssets" uncheckedValue="false" />
+    <span class="error" id="error_batchAssets"></span>
+    <span class="smallNote">
+      If checked files matched with "Upload each matched file" that have the same component parameters are uploaded together as one component,
+      renumbering their &lt;format&gt;.assetN parameters.  Only applies to Components API uploads
+    </span>
+  </td>
+</tr>
+<tr>
+  <th>Max assets per upload:</th>
+  <td>
+    <props:textProperty name="batchMaxAssets" className="longField"/>
+    <span class="error" id="error_batchMaxAssets"></span>
+    <span class="smallNote">Maximum number of assets combined into one upload.  Leave empty for the default of 50</span>
+  </td>
+</tr>
+<tr>
+  <th>Max upload size (MB):</th>
+  <td>
+    <props:textProperty name="batchMaxSize" className="longField"/>
+    <span class="error" id="error_batchMaxSize"></span>
+    <span class="smallNote">Maximum total size of the files combined into one upload.  Leave empty for the default of 512 MB</span>
+  </td>
+</tr>
 <tr>
   <th>Delete artifacts on cleanup:<l:star/></th>
   <td>
@@ -52,6 +111,54 @@
     <span class="smallNote">If checked artifacts will be deleted from Nexus when the corresponding build is removed from TeamCity</span>
   </td>
 </tr>
+<tr>
+  <th>Skip existing artifacts:</th>
+  <td>
+    <props:checkboxProperty name="skipExistingArtifacts" uncheckedValue="false" />
+    <span class="error" id="error_skipExistingArtifacts"></span>
+    <span class="smallNote">If checked artifacts are not uploaded when they already exist in the repository with the same SHA-1 checksums at the same path, or for formats such as npm that take the coordinates from the package, in one component.  Maven uploads need explicit non-snapshot coordinates, raw uploads a filename.  The existing component is recorded for the build but is never deleted on cleanup of this build</span>
+  </td>
+</tr>
+<tr>
+  <th>Additional checksums:</th>
+  <td>
+    <props:textProperty name="additionalChecksums" className="longField"/>
+    <span class="error" id="error_additionalChecksums"></span>
+    <span class="smallNote">Comma separated list of checksums to record in addition to SHA-1, e.g. SHA-256, MD5</span>
+  </td>
+</tr>
+<tr>
+  <th>Upload eagerly:</th>
+  <td>
+    <props:checkboxProperty name="uploadEagerly" uncheckedValue="false" />
+    <span class="error" id="error_uploadEagerly"></span>
+    <span class="smallNote">If checked the upload starts in the background as soon as every artifact pattern matches a single file that is unchanged between two build steps, instead of when the build finishes.  Artifacts must not be modified by later build steps</span>
+  </td>
+</tr>
+<tr>
+  <th>Upload attempts:</th>
+  <td>
+    <props:textProperty name="uploadMaxAttempts" className="longField"/>
+    <span class="error" id="error_uploadMaxAttempts"></span>
+    <span class="smallNote">Number of times to attempt the upload on transient failures.  Leave empty to use the Nexus server setting</span>
+  </td>
+</tr>
+<tr>
+  <th>Upload after the build:</th>
+  <td>
+    <props:checkboxProperty name="uploadDetached" uncheckedValue="false" />
+    <span class="error" id="error_uploadDetached"></span>
+    <span class="smallNote">If checked the build only takes a snapshot of the artifacts and finishes without waiting for Nexus; the agent uploads them in the background while it runs other builds.  Cannot be combined with failing the build if publishing fails, and existing artifacts are not skipped</span>
+  </td>
+</tr>
+<tr>
+  <th>Spool failed uploads:</th>
+  <td>
+    <props:checkboxProperty name="spoolFailedUploads" uncheckedValue="false" />
+    <span class="error" id="error_spoolFailedUploads"></span>
+    <span class="smallNote">If checked uploads that fail because Nexus is unreachable are kept on the agent and retried in the background after the build, instead of failing.  Spooled artifacts are marked as such in the Nexus Artifacts tab until they appear in Nexus</span>
+  </td>
+</tr>
 <tr>
   <th>Fail build if publishing fails:<l:star/></th>
   <td>
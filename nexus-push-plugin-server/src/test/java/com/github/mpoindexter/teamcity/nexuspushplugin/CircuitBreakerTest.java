@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test
+public class CircuitBreakerTest {
+    private static final long OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+    private static final long SLOW_CALL = TimeUnit.SECONDS.toMillis(10);
+
+    private AtomicLong clock;
+    private CircuitBreaker breaker;
+
+    @BeforeMethod
+    public void setUp() {
+        clock = new AtomicLong(1000000);
+        breaker = new CircuitBreaker("nexus", clock::get);
+    }
+
+    public void testStaysClosedBelowMinimumCalls() throws Exception {
+        record(9, 0, "HTTP 500");
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        breaker.acquirePermission();
+    }
+
+    public void testOpensWhenHalfOfTheCallsFail() throws Exception {
+        record(5, 0, null);
+        record(4, 0, "HTTP 500");
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        record(1, 0, "HTTP 502");
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        assertEquals(breaker.getFailureRate(), 50);
+        assertEquals(breaker.getLastFailure(), "HTTP 502");
+        assertRejected();
+    }
+
+    public void testOpensWhenMostCallsAreSlow() throws Exception {
+        record(2, 0, null);
+        record(7, SLOW_CALL, null);
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        record(1, SLOW_CALL, null);
+        assertTrue(breaker.isOpen());
+        assertEquals(breaker.getSlowCallRate(), 80);
+        assertEquals(breaker.getFailureRate(), 0);
+    }
+
+    public void testOnlyTheLastCallsCount() throws Exception {
+        record(30, 0, null);
+        record(9, 0, "HTTP 500");
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        assertEquals(breaker.getFailureRate(), 45);
+        // 10 of the last 20 calls failed, although only a quarter of all calls did
+        record(1, 0, "HTTP 500");
+        assertTrue(breaker.isOpen());
+    }
+
+    public void testHalfOpensAfterOpenDuration() throws Exception {
+        open();
+        clock.addAndGet(OPEN_DURATION - 1);
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        assertRejected();
+        clock.addAndGet(1);
+        assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        assertFalse(breaker.isOpen());
+    }
+
+    public void testSuccessfulProbeCloses() throws Exception {
+        open();
+        clock.addAndGet(OPEN_DURATION);
+        breaker.acquirePermission();
+        breaker.onResult(0, null);
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        assertEquals(breaker.getFailureRate(), 0);
+        breaker.acquirePermission();
+    }
+
+    public void testFailedProbeReopens() throws Exception {
+        open();
+        clock.addAndGet(OPEN_DURATION);
+        breaker.acquirePermission();
+        breaker.onResult(0, "connect timed out");
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        assertEquals(breaker.getRetryAt().getTime(), clock.get() + OPEN_DURATION);
+        assertRejected();
+    }
+
+    public void testSlowProbeReopens() throws Exception {
+        open();
+        clock.addAndGet(OPEN_DURATION);
+        breaker.acquirePermission();
+        breaker.onResult(SLOW_CALL, null);
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    public void testOnlyOneProbeAtATime() throws Exception {
+        open();
+        clock.addAndGet(OPEN_DURATION);
+        breaker.acquirePermission();
+        assertRejected();
+        breaker.onResult(0, null);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+    }
+
+    public void testIgnoresCallsStartedBeforeOpening() throws Exception {
+        open();
+        breaker.onResult(0, null);
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    public void testReset() throws Exception {
+        open();
+        breaker.reset();
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        breaker.acquirePermission();
+        record(9, 0, "HTTP 500");
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    private void open() {
+        record(10, 0, "HTTP 503");
+        assertTrue(breaker.isOpen());
+    }
+
+    private void record(int count, long duration, String failure) {
+        for (int i = 0; i < count; i++) {
+            breaker.onResult(duration, failure);
+        }
+    }
+
+    private void assertRejected() {
+        try {
+            breaker.acquirePermission();
+            fail("Expected the breaker to reject the call");
+        } catch (CircuitBreaker.CircuitOpenException e) {
+            assertTrue(e.getMessage().contains("nexus"), e.getMessage());
+        }
+    }
+}
\ No newline at end of file
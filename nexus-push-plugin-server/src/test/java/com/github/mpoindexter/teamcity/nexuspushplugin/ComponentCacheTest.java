@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.nexus.ComponentBean;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class ComponentCacheTest {
+    private static final String KEY = ComponentCache.key("nexus", "releases", "sha1", "AAF4C61DDCC5E8A2DABEDE0F3B482CD9AEA9434D");
+
+    private AtomicLong clock;
+    private ComponentCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        clock = new AtomicLong(1000000);
+        cache = new ComponentCache(clock::get);
+    }
+
+    public void testKeyIgnoresChecksumCase() {
+        assertEquals(KEY, ComponentCache.key("nexus", "releases", "sha1", "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d"));
+    }
+
+    public void testHitsAndMisses() {
+        assertNull(cache.get(KEY));
+        List<ComponentBean> components = Arrays.asList(component("c1"));
+        cache.put(KEY, "nexus", components);
+        assertEquals(cache.get(KEY), components);
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    public void testEntriesExpire() {
+        cache.put(KEY, "nexus", Arrays.asList(component("c1")));
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(10) - 1);
+        assertNotNull(cache.get(KEY));
+        clock.addAndGet(1);
+        assertNull(cache.get(KEY));
+        assertEquals(cache.getSize(), 0);
+    }
+
+    public void testMissingArtifactsExpireSooner() {
+        cache.put(KEY, "nexus", Collections.emptyList());
+        assertEquals(cache.get(KEY), Collections.emptyList());
+        clock.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        assertNull(cache.get(KEY));
+
+        cache.put(KEY, "nexus", null);
+        assertEquals(cache.get(KEY), Collections.emptyList());
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        for (int i = 0; i < 2000; i++) {
+            cache.put("key" + i, "nexus", Arrays.asList(component("c" + i)));
+        }
+        assertNotNull(cache.get("key0"));
+        cache.put("key2000", "nexus", Arrays.asList(component("c2000")));
+        assertEquals(cache.getSize(), 2000);
+        assertEquals(cache.getEvictions(), 1);
+        assertNotNull(cache.get("key0"));
+        assertNull(cache.get("key1"));
+    }
+
+    public void testInvalidate() {
+        cache.put(KEY, "nexus", Arrays.asList(component("c1")));
+        cache.invalidate(KEY);
+        assertNull(cache.get(KEY));
+    }
+
+    public void testInvalidateComponent() {
+        cache.put("jar", "nexus", Arrays.asList(component("c1")));
+        cache.put("pom", "nexus", Arrays.asList(component("c2"), component("c1")));
+        cache.put("other", "nexus", Arrays.asList(component("c2")));
+        cache.put("otherServer", "other", Arrays.asList(component("c1")));
+        cache.put("missing", "nexus", Collections.emptyList());
+        cache.invalidateComponent("nexus", "c1");
+        assertNull(cache.get("jar"));
+        assertNull(cache.get("pom"));
+        assertNotNull(cache.get("other"));
+        assertNotNull(cache.get("otherServer"));
+        assertTrue(cache.get("missing").isEmpty());
+    }
+
+    private static ComponentBean component(String id) {
+        ComponentBean component = new ComponentBean();
+        component.setId(id);
+        return component;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.fail;
+
+@Test
+public class TokenBucketTest {
+    private AtomicLong nanoTime;
+
+    @BeforeMethod
+    public void setUp() {
+        nanoTime = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    }
+
+    public void testAllowsBurstUpToCapacity() throws IOException {
+        TokenBucket bucket = new TokenBucket(1, 3, 0, TimeUnit.SECONDS, nanoTime::get);
+        acquire(bucket, 3);
+        assertLimited(bucket);
+    }
+
+    public void testRefillsOverTime() throws IOException {
+        TokenBucket bucket = new TokenBucket(2, 2, 0, TimeUnit.SECONDS, nanoTime::get);
+        acquire(bucket, 2);
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        acquire(bucket, 1);
+        assertLimited(bucket);
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        acquire(bucket, 2);
+        assertLimited(bucket);
+    }
+
+    public void testRefillIsCappedAtCapacity() throws IOException {
+        TokenBucket bucket = new TokenBucket(10, 3, 0, TimeUnit.SECONDS, nanoTime::get);
+        acquire(bucket, 3);
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        acquire(bucket, 3);
+        assertLimited(bucket);
+    }
+
+    public void testWaitsUpToMaxWait() throws IOException {
+        // One token a millisecond, so waiting calls reserve a token each and wait a millisecond longer than the last
+        TokenBucket bucket = new TokenBucket(1000, 1, 3, TimeUnit.MILLISECONDS, nanoTime::get);
+        acquire(bucket, 4);
+        assertLimited(bucket);
+    }
+
+    public void testCapacityIsAtLeastOne() throws IOException {
+        TokenBucket bucket = new TokenBucket(1, 0, 0, TimeUnit.SECONDS, nanoTime::get);
+        acquire(bucket, 1);
+        assertLimited(bucket);
+    }
+
+    private static void acquire(TokenBucket bucket, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            bucket.acquire();
+        }
+    }
+
+    private static void assertLimited(TokenBucket bucket) {
+        try {
+            bucket.acquire();
+            fail("Expected the rate limit to be exceeded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
\ No newline at end of file
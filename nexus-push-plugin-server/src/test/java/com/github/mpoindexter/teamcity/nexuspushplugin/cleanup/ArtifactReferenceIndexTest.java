@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018-Present Michael Poindexter.
+ * 
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ */
+
+package com.github.mpoindexter.teamcity.nexuspushplugin.cleanup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.github.mpoindexter.teamcity.nexuspushplugin.ArtifactMetadata;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jetbrains.buildServer.util.FileUtil;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class ArtifactReferenceIndexTest {
+    private static final String SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+    private static final String APP = ArtifactReferenceIndex.key("nexus", "releases", "sha1", SHA1, "app/1.0/app.jar");
+    private static final String COPY = ArtifactReferenceIndex.key("nexus", "releases", "sha1", SHA1, "/copy/1.0/copy.jar");
+    private static final String UNKNOWN_PATH = ArtifactReferenceIndex.key("nexus", "releases", "sha1", SHA1, null);
+
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("reference-index").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtil.delete(directory);
+    }
+
+    public void testKeys() {
+        assertEquals(APP, "nexus\treleases\tsha1\t" + SHA1 + "\tapp/1.0/app.jar");
+        assertEquals(COPY, "nexus\treleases\tsha1\t" + SHA1 + "\tcopy/1.0/copy.jar");
+        assertEquals(ArtifactReferenceIndex.key("nexus", "releases", "sha1", SHA1.toUpperCase(), " "), UNKNOWN_PATH);
+        assertEquals(ArtifactReferenceIndex.digestKey(APP), UNKNOWN_PATH);
+        assertEquals(ArtifactReferenceIndex.key(artifact("app/1.0/app.jar")), APP);
+        assertEquals(ArtifactReferenceIndex.key(new ArtifactMetadata().setAttribute(ArtifactMetadata.SERVER_ID, "nexus")), null);
+    }
+
+    public void testTellsAssetPathsApart() {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        index.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        index.addBuild(2, Arrays.asList(artifact("copy/1.0/copy.jar")), false);
+        assertEquals(index.getReferences(APP), set(1L));
+        assertEquals(index.getReferences(COPY), set(2L));
+        assertEquals(index.size(), 2);
+    }
+
+    public void testUnknownAssetPathReferencesAllPaths() {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        index.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        index.addBuild(2, Arrays.asList(artifact("copy/1.0/copy.jar")), false);
+        index.addBuild(3, Arrays.asList(artifact(null)), false);
+        assertEquals(index.getReferences(UNKNOWN_PATH), set(1L, 2L, 3L));
+        assertEquals(index.getReferences(APP), set(1L, 3L));
+        assertEquals(index.getReferences(ArtifactReferenceIndex.key("nexus", "snapshots", "sha1", SHA1, null)), set());
+    }
+
+    public void testLoadsJournalAfterRestart() {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        index.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar"), artifact(null)), false);
+        index.addBuild(2, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        index.removeBuild(1, set(APP));
+
+        ArtifactReferenceIndex reloaded = new ArtifactReferenceIndex(directory);
+        assertEquals(reloaded.getReferences(APP), set(1L, 2L));
+        assertEquals(reloaded.getReferences(COPY), set(1L));
+        assertEquals(reloaded.size(), 2);
+        reloaded.removeBuild(1, set(UNKNOWN_PATH));
+        assertEquals(new ArtifactReferenceIndex(directory).getReferences(COPY), set());
+    }
+
+    public void testSkipsTruncatedJournalLines() throws IOException {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        index.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        Files.write(journal().toPath(), "+\tnexus\treleases\tsh".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(new ArtifactReferenceIndex(directory).getReferences(APP), set(1L));
+    }
+
+    public void testCompactsJournalOnStartup() throws IOException {
+        writeCompleteFile();
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        for (long buildId = 1; buildId <= 10; buildId++) {
+            index.addBuild(buildId, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        }
+        for (long buildId = 1; buildId <= 8; buildId++) {
+            index.removeBuild(buildId, set(APP));
+        }
+        assertEquals(journalLines().size(), 18);
+
+        ArtifactReferenceIndex reloaded = new ArtifactReferenceIndex(directory);
+        assertEquals(reloaded.getReferences(APP), set(9L, 10L));
+        List<String> lines = journalLines();
+        Collections.sort(lines);
+        assertEquals(lines, Arrays.asList("+\t" + APP + "\t10", "+\t" + APP + "\t9"));
+    }
+
+    public void testCompactsJournalWhenItGrows() throws IOException {
+        writeCompleteFile();
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        index.addBuild(1, Arrays.asList(artifact("copy/1.0/copy.jar")), false);
+        for (int i = 0; i < 5001; i++) {
+            index.addBuild(2, Arrays.asList(artifact("app/1.0/app.jar")), false);
+            index.removeBuild(2, set(APP));
+        }
+        assertTrue(journalLines().size() < 10000, "journal has " + journalLines().size() + " lines");
+        assertEquals(new ArtifactReferenceIndex(directory).getReferences(COPY), set(1L));
+    }
+
+    public void testTellsListenersAboutRemovedReferences() {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        List<Set<String>> removed = new ArrayList<>();
+        index.addRemovalListener(removed::add);
+        index.addRemovalListener(keys -> {
+            throw new IllegalStateException("listener failure");
+        });
+        index.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        index.removeBuild(1, set(APP, COPY));
+        index.removeBuild(1, set(APP));
+        assertEquals(removed, Arrays.asList(set(APP)));
+    }
+
+    public void testDoesNotAddBackExistingBuildsRemovedWhileIndexing() {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        assertFalse(index.isComplete());
+        index.removeBuild(1, set(APP));
+        index.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), true);
+        assertEquals(index.getReferences(APP), set());
+
+        // Remembered across restarts until the index is complete
+        ArtifactReferenceIndex reloaded = new ArtifactReferenceIndex(directory);
+        reloaded.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), true);
+        assertEquals(reloaded.getReferences(APP), set());
+
+        // Builds finishing now are always added
+        reloaded.addBuild(1, Arrays.asList(artifact("app/1.0/app.jar")), false);
+        assertEquals(reloaded.getReferences(APP), set(1L));
+    }
+
+    public void testForgetsRemovedBuildsOnceComplete() throws IOException {
+        ArtifactReferenceIndex index = new ArtifactReferenceIndex(directory);
+        index.removeBuild(1, set(APP));
+        assertEquals(journalLines().size(), 1);
+
+        writeCompleteFile();
+        ArtifactReferenceIndex reloaded = new ArtifactReferenceIndex(directory);
+        assertTrue(reloaded.isComplete());
+        assertEquals(journalLines().size(), 0);
+        reloaded.removeBuild(2, set(APP));
+        assertEquals(journalLines().size(), 0);
+    }
+
+    private static ArtifactMetadata artifact(String assetPath) {
+        ArtifactMetadata artifact = new ArtifactMetadata()
+            .setAttribute(ArtifactMetadata.SERVER_ID, "nexus")
+            .setAttribute(ArtifactMetadata.REPOSITORY, "releases")
+            .setAttribute("sha1", SHA1);
+        if (assetPath != null) {
+            artifact.setAttribute(ArtifactMetadata.ASSET_PATH, assetPath);
+        }
+        return artifact;
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> set(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private File journal() {
+        return new File(directory, "nexus-push/artifact-references.log");
+    }
+
+    private List<String> journalLines() throws IOException {
+        return journal().exists() ? Files.readAllLines(journal().toPath(), StandardCharsets.UTF_8) : new ArrayList<>();
+    }
+
+    private void writeCompleteFile() throws IOException {
+        File file = new File(directory, "nexus-push/artifact-references.complete");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[0]);
+    }
+}
\ No newline at end of file